@@ -0,0 +1,87 @@
+package net.whydah.admin.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * CPU cost of compressing and decompressing responses, with the java.util.zip streams used by Jersey's GZipEncoder
+ * and DeflateEncoder (registered in JerseyApplication and UibClient).
+ *
+ * The bytes saved are printed once per payload in setUp, as "payload: identity=.. bytes, gzip=.. bytes (..%)".
+ * Compare the encode time with the time it takes to send the saved bytes on the link in question.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"user:10", "user:1000", "users:10", "users:500"})
+    public String payload;
+
+    @Param({"gzip", "deflate"})
+    public String encoding;
+
+    private boolean gzip;
+    private byte[] identity;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        gzip = "gzip".equals(encoding);
+        String[] kindAndSize = payload.split(":");
+        int size = Integer.parseInt(kindAndSize[1]);
+        String body = "user".equals(kindAndSize[0]) ? Payloads.userAggregate(size).toXML() : Payloads.usersJson(size);
+        identity = body.getBytes(StandardCharsets.UTF_8);
+        encoded = encode();
+        System.out.println();
+        System.out.println(payload + ": identity=" + identity.length + " bytes, " + encoding + "=" + encoded.length
+                + " bytes (" + (100 * encoded.length / identity.length) + "%)");
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(identity.length);
+        OutputStream out = gzip ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes);
+        out.write(identity);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int decode() throws IOException {
+        InputStream in = gzip ? new GZIPInputStream(new ByteArrayInputStream(encoded))
+                : new InflaterInputStream(new ByteArrayInputStream(encoded));
+        byte[] buffer = new byte[8192];
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        in.close();
+        return total;
+    }
+}
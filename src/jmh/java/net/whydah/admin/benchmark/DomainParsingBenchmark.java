@@ -0,0 +1,83 @@
+package net.whydah.admin.benchmark;
+
+import net.whydah.admin.application.Application;
+import net.whydah.admin.auth.WhydahLogonToken;
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.xml.XmlParsing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of the small payloads: identity, role, application and application token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DomainParsingBenchmark {
+
+    @Param({"STAX", "DOM"})
+    public String xmlParser;
+
+    private String userIdentityJson;
+    private String roleXml;
+    private String roleJson;
+    private Application application;
+    private String applicationXml;
+    private String logonTokenXml;
+
+    @Setup
+    public void setUp() {
+        XmlParsing.setMode(XmlParsing.Mode.valueOf(xmlParser));
+        userIdentityJson = Payloads.userIdentityJson();
+        roleXml = Payloads.roleXml();
+        roleJson = Payloads.roleJson();
+        application = Payloads.application(10);
+        applicationXml = application.toXML();
+        logonTokenXml = Payloads.logonTokenXml();
+    }
+
+    @Benchmark
+    public UserIdentity userIdentityFromJson() {
+        return UserIdentity.fromJson(userIdentityJson);
+    }
+
+    @Benchmark
+    public RoleRepresentationRequest roleFromXml() {
+        return RoleRepresentationRequest.fromXml(roleXml);
+    }
+
+    @Benchmark
+    public RoleRepresentationRequest roleFromJson() {
+        return RoleRepresentationRequest.fromJson(roleJson);
+    }
+
+    @Benchmark
+    public Application applicationFromXml() {
+        return Application.fromXml(applicationXml);
+    }
+
+    @Benchmark
+    public String applicationToXML() {
+        return application.toXML();
+    }
+
+    @Benchmark
+    public WhydahLogonToken logonTokenFromXml() {
+        return WhydahLogonToken.fromXml(logonTokenXml);
+    }
+}
@@ -0,0 +1,95 @@
+package net.whydah.admin.benchmark;
+
+import net.whydah.admin.application.Application;
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Representative payloads for the benchmarks. Users are generated with a given number of role rows.
+ */
+public final class Payloads {
+
+    private Payloads() {
+    }
+
+    public static UserIdentity userIdentity(int userNo) {
+        return new UserIdentity("uid" + userNo, "user" + userNo, "First" + userNo, "Last" + userNo, "ref" + userNo,
+                "user" + userNo + "@example.com", "9" + (1000000 + userNo), null);
+    }
+
+    public static UserAggregate userAggregate(int roleCount) {
+        return userAggregate(1, roleCount);
+    }
+
+    /**
+     * Role values are new Strings for every user, as when each user is parsed from its own UIB response.
+     */
+    public static UserAggregate userAggregate(int userNo, int roleCount) {
+        UserIdentity identity = userIdentity(userNo);
+        List<UserPropertyAndRole> roles = new ArrayList<>(roleCount);
+        for (int i = 0; i < roleCount; i++) {
+            roles.add(new UserPropertyAndRole("role" + i, identity.getUid(), "app" + (i % 20), "Application " + (i % 20),
+                    "Organization " + (i % 7), "role" + (i % 5), "value & <" + i + ">"));
+        }
+        return new UserAggregate(identity, roles);
+    }
+
+    public static String userIdentityJson() {
+        return userIdentity(1).toJson();
+    }
+
+    /**
+     * A users/find result from UIB with the given number of users.
+     */
+    public static String usersJson(int userCount) {
+        StringBuilder json = new StringBuilder("{\"rows\":\"" + userCount + "\",\"result\":[");
+        for (int i = 0; i < userCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(userIdentity(i).toJson());
+        }
+        return json.append("]}").toString();
+    }
+
+    public static String roleXml() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+                "<application>\n" +
+                "    <appId>app1</appId>\n" +
+                "    <applicationName>Application 1</applicationName>\n" +
+                "    <orgID>org1</orgID>\n" +
+                "    <orgName>Organization 1</orgName>\n" +
+                "    <roleName>member</roleName>\n" +
+                "    <roleValue>true</roleValue>\n" +
+                "</application>";
+    }
+
+    public static String roleJson() {
+        return "{\"applicationId\":\"app1\",\"applicationRoleName\":\"member\"," +
+                "\"applicationRoleValue\":\"true\",\"applicationName\":\"Application 1\",\"organizationName\":\"Organization 1\"}";
+    }
+
+    public static Application application(int orgIdCount) {
+        List<String> availableOrgIds = new ArrayList<>(orgIdCount);
+        for (int i = 0; i < orgIdCount; i++) {
+            availableOrgIds.add("org" + i);
+        }
+        return new Application("app1", "Application 1", "member", "org0", availableOrgIds);
+    }
+
+    public static String logonTokenXml() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+                "<applicationtoken>\n" +
+                "    <params>\n" +
+                "        <applicationtokenID>4b4e6f8a6c0e4f2a9d7a1c3e5b7d9f11</applicationtokenID>\n" +
+                "        <applicationid>99</applicationid>\n" +
+                "        <applicationname>UserAdminService</applicationname>\n" +
+                "        <expires>1420070400000</expires>\n" +
+                "    </params>\n" +
+                "</applicationtoken>";
+    }
+}
@@ -0,0 +1,60 @@
+package net.whydah.admin.benchmark;
+
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.xml.XmlParsing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of writing and reading a user, by number of role rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserAggregateBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int roleCount;
+
+    @Param({"STAX", "DOM"})
+    public String xmlParser;
+
+    private UserAggregate userAggregate;
+    private String userAggregateXml;
+
+    @Setup
+    public void setUp() {
+        XmlParsing.setMode(XmlParsing.Mode.valueOf(xmlParser));
+        userAggregate = Payloads.userAggregate(roleCount);
+        userAggregateXml = userAggregate.toXML();
+    }
+
+    @Benchmark
+    public String toXML() {
+        return userAggregate.toXML();
+    }
+
+    @Benchmark
+    public UserAggregate fromXML() {
+        return UserAggregate.fromXML(userAggregateXml);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return userAggregate.toJson();
+    }
+}
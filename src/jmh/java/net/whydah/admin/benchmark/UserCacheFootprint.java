@@ -0,0 +1,73 @@
+package net.whydah.admin.benchmark;
+
+import net.whydah.admin.user.UserAggregateSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heap retained per cached user, as UserAggregate beans and as UserAggregateSnapshot, by number of role rows.
+ * Not a JMH benchmark: retained size is measured as used heap after gc, with and without the cached users.
+ *
+ * Usage: UserCacheFootprint [users]
+ *
+ * Output of three runs with 10000 users, JDK 1.8.0_392, -Xmx1g, one CPU core:
+ * <pre>
+ *    roles        beans     snapshot
+ *        1         1096      345-348
+ *       10    4491-4550         1337
+ *      100        41907         8892
+ * </pre>
+ */
+public class UserCacheFootprint {
+    private static final int[] ROLE_COUNTS = {1, 10, 100};
+
+    public static void main(String[] args) {
+        int userCount = args.length > 0 && args[0].matches("\\d+") ? Integer.parseInt(args[0]) : 10000;
+        System.out.println("Bytes per cached user, " + userCount + " users");
+        System.out.printf("%8s %12s %12s%n", "roles", "beans", "snapshot");
+        for (int roleCount : ROLE_COUNTS) {
+            long beans = bytesPerUser(userCount, roleCount, false);
+            long snapshots = bytesPerUser(userCount, roleCount, true);
+            System.out.printf("%8d %12d %12d%n", roleCount, beans, snapshots);
+        }
+    }
+
+    private static long bytesPerUser(int userCount, int roleCount, boolean snapshot) {
+        long before = usedHeap();
+        List<Object> cached = new ArrayList<>(userCount);
+        for (int userNo = 0; userNo < userCount; userNo++) {
+            if (snapshot) {
+                cached.add(UserAggregateSnapshot.of(Payloads.userAggregate(userNo, roleCount)));
+            } else {
+                cached.add(Payloads.userAggregate(userNo, roleCount));
+            }
+        }
+        long after = usedHeap();
+        if (cached.size() != userCount) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / userCount;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Repeat until gc no longer frees anything, so only live objects are counted
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return used;
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,79 @@
+package net.whydah.admin;
+
+import net.whydah.admin.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Leaves small responses uncompressed.
+ *
+ * Jersey's EncodingFilter sets Content-Encoding from Accept-Encoding, and GZipEncoder/DeflateEncoder compress the
+ * entity when it is written. This filter runs after EncodingFilter and removes Content-Encoding again when the entity
+ * is a String or byte[] shorter than compression.minSizeBytes, as compressing a few hundred bytes costs more CPU than
+ * it saves on the wire. Streamed entities, where the size is not known up front, are always compressed.
+ *
+ * A compressed response gets its own ETag, the content-coding appended to the ETag of the uncompressed one, see
+ * EntityTags.
+ */
+@Provider
+@Priority(Priorities.HEADER_DECORATOR - 1)
+@Component
+public class CompressionThresholdFilter implements ContainerResponseFilter {
+    private static final Logger log = LoggerFactory.getLogger(CompressionThresholdFilter.class);
+    private static final int DEFAULT_MIN_SIZE_BYTES = 1024;
+
+    private final int minSizeBytes;
+
+    @Autowired
+    public CompressionThresholdFilter(AppConfig appConfig) {
+        this(appConfig.getIntProperty("compression.minSizeBytes", DEFAULT_MIN_SIZE_BYTES));
+        log.info("Responses compressed from compression.minSizeBytes={}", minSizeBytes);
+    }
+
+    CompressionThresholdFilter(int minSizeBytes) {
+        this.minSizeBytes = minSizeBytes;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if (!responseContext.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            return;
+        }
+        if (isBelow(responseContext.getEntity(), minSizeBytes)) {
+            responseContext.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+            return;
+        }
+        EntityTag entityTag = responseContext.getEntityTag();
+        if (entityTag != null) {
+            String contentCoding = String.valueOf(responseContext.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            responseContext.getHeaders().putSingle(HttpHeaders.ETAG, EntityTags.forCoding(entityTag, contentCoding));
+        }
+    }
+
+    /**
+     * @return true when the entity is known to be smaller than minSizeBytes, false when larger or not known.
+     */
+    static boolean isBelow(Object entity, int minSizeBytes) {
+        if (entity instanceof byte[]) {
+            return ((byte[]) entity).length < minSizeBytes;
+        }
+        if (entity instanceof String) {
+            String text = (String) entity;
+            // Every char is at least one byte in UTF-8, so long strings need not be encoded to know
+            return text.length() < minSizeBytes && text.getBytes(StandardCharsets.UTF_8).length < minSizeBytes;
+        }
+        return false;
+    }
+}
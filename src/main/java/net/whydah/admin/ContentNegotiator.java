@@ -0,0 +1,68 @@
+package net.whydah.admin;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Variant;
+import java.util.List;
+
+/**
+ * Chooses the response media type from the Accept header, for resources that can answer in more than one type.
+ *
+ * The variant list is built once, and the choice made by Request.selectVariant is remembered per distinct Accept
+ * header, so a request with an Accept header seen before costs one map lookup. The first media type is used when
+ * the client accepts anything. Vary: Accept is added to the response by VaryAcceptFilter.
+ */
+public final class ContentNegotiator {
+    private static final int MAX_ACCEPT_HEADERS = 500;
+
+    /**
+     * Users and applications, xml unless the client prefers json.
+     */
+    public static final ContentNegotiator XML_OR_JSON = new ContentNegotiator(MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_JSON_TYPE);
+
+    /**
+     * User lists, UIB only gives us json.
+     */
+    public static final ContentNegotiator JSON = new ContentNegotiator(MediaType.APPLICATION_JSON_TYPE);
+
+    private final List<Variant> variants;
+    private final Cache<String, Optional<MediaType>> selectedByAccept;
+
+    ContentNegotiator(MediaType... mediaTypes) {
+        variants = Variant.mediaTypes(mediaTypes).add().build();
+        selectedByAccept = CacheBuilder.newBuilder()
+                .maximumSize(MAX_ACCEPT_HEADERS)
+                .build();
+    }
+
+    /**
+     * @param accept the Accept header of the request, null when not sent.
+     * @return the media type to respond with, null when the client accepts none of them. Respond with notAcceptable().
+     */
+    public MediaType select(Request request, String accept) {
+        String key = accept != null ? accept : "";
+        Optional<MediaType> selected = selectedByAccept.getIfPresent(key);
+        if (selected == null) {
+            Variant variant = request.selectVariant(variants);
+            selected = variant != null ? Optional.of(variant.getMediaType()) : Optional.<MediaType>absent();
+            selectedByAccept.put(key, selected);
+        }
+        return selected.orNull();
+    }
+
+    /**
+     * @return 406 listing the media types we can respond with.
+     */
+    public Response notAcceptable() {
+        return Response.notAcceptable(variants).build();
+    }
+
+    public List<Variant> getVariants() {
+        return variants;
+    }
+}
@@ -2,17 +2,41 @@ package net.whydah.admin;
 
 import org.springframework.stereotype.Repository;
 
+import javax.ws.rs.ServiceUnavailableException;
+
 /**
+ * Holds the application token id of UserAdminService, used on every call to UIB.
+ *
+ * Written by ApplicationSessionManager when the session is renewed, read by request threads without locking.
+ *
  * @author <a href="bard.lind@gmail.com">Bard Lind</a>
  */
 @Repository
 public class CredentialStore {
-    private String userAdminServiceTokenId;
+    private static final long NO_SESSION_RETRY_AFTER_SECONDS = 10;
+
+    private volatile String userAdminServiceTokenId;
 
+    /**
+     * @return current token id, null until UserAdminService has logged on to STS.
+     */
     public String getUserAdminServiceTokenId() {
         return userAdminServiceTokenId;
     }
 
+    /**
+     * Token id for a call to UIB. Without a session every UIB url would get "null" as its token, so the request is
+     * answered with 503 instead.
+     * @throws ServiceUnavailableException before UserAdminService has logged on to STS.
+     */
+    public String requireUserAdminServiceTokenId() {
+        String tokenId = userAdminServiceTokenId;
+        if (tokenId == null) {
+            throw new ServiceUnavailableException(NO_SESSION_RETRY_AFTER_SECONDS);
+        }
+        return tokenId;
+    }
+
     public void setUserAdminServiceTokenId(String userAdminServiceTokenId) {
         this.userAdminServiceTokenId = userAdminServiceTokenId;
     }
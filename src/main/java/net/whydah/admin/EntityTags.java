@@ -0,0 +1,77 @@
+package net.whydah.admin;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strong ETags for conditional requests, a murmur3 hash of the exact body that is sent.
+ *
+ * A compressed response has other bytes than the uncompressed one, so CompressionThresholdFilter appends the
+ * content-coding to its ETag, "hash-gzip". notModified() and preconditionFailed() accept the ETag of any coding.
+ * Use notModified() with If-None-Match on reads and preconditionFailed() with If-Match on writes.
+ */
+public final class EntityTags {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final String[] CONTENT_CODINGS = {"gzip", "deflate"};
+
+    private EntityTags() {
+    }
+
+    public static EntityTag of(String body) {
+        return new EntityTag(HASH.hashString(body, StandardCharsets.UTF_8).toString());
+    }
+
+    /**
+     * @return the ETag of the representation sent with Content-Encoding contentCoding.
+     */
+    public static EntityTag forCoding(EntityTag entityTag, String contentCoding) {
+        return new EntityTag(entityTag.getValue() + "-" + contentCoding, entityTag.isWeak());
+    }
+
+    private static List<EntityTag> allCodings(EntityTag entityTag) {
+        List<EntityTag> entityTags = new ArrayList<>(CONTENT_CODINGS.length + 1);
+        entityTags.add(entityTag);
+        for (String contentCoding : CONTENT_CODINGS) {
+            entityTags.add(forCoding(entityTag, contentCoding));
+        }
+        return entityTags;
+    }
+
+    /**
+     * @return 304 with the ETag when If-None-Match matches the current representation, null when the body must be sent.
+     */
+    public static Response notModified(Request request, EntityTag entityTag) {
+        for (EntityTag codedEntityTag : allCodings(entityTag)) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(codedEntityTag);
+            if (notModified != null) {
+                return notModified.tag(codedEntityTag).build();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * If-Match on a write. The client may hold the ETag of any representation of the resource, so the write may
+     * proceed when one of them matches.
+     * @return 412 when If-Match matches none of the current ETags, null when the write may proceed.
+     */
+    public static Response preconditionFailed(Request request, EntityTag... currentEntityTags) {
+        Response.ResponseBuilder failed = null;
+        for (EntityTag currentEntityTag : currentEntityTags) {
+            for (EntityTag entityTag : allCodings(currentEntityTag)) {
+                failed = request.evaluatePreconditions(entityTag);
+                if (failed == null) {
+                    return null;
+                }
+            }
+        }
+        return failed == null ? null : failed.build();
+    }
+}
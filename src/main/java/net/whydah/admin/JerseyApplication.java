@@ -5,12 +5,19 @@ import net.whydah.admin.application.ApplicationService;
 import net.whydah.admin.application.UibApplicationConnection;
 import net.whydah.admin.auth.LogonController;
 import net.whydah.admin.auth.PasswordController;
+import net.whydah.admin.auth.TokenValidationFilter;
 import net.whydah.admin.config.AppConfig;
 import net.whydah.admin.createlogon.CreateLogonUserController;
+import net.whydah.admin.logging.LoggerResource;
+import net.whydah.admin.metrics.ResourceMetricsFilter;
+import net.whydah.admin.trace.TraceFilter;
 import net.whydah.admin.user.UserResource;
 import net.whydah.admin.user.UserService;
 import net.whydah.admin.users.UsersResource;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.filter.EncodingFilter;
 import org.glassfish.jersey.server.spring.scope.RequestContextFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +35,15 @@ public class JerseyApplication extends ResourceConfig {
 
         register(RequestContextFilter.class);
         register(AppConfig.class);
+        register(TraceFilter.class);
+        register(ResourceMetricsFilter.class);
+        register(TokenValidationFilter.class);
+        // gzip/deflate by Accept-Encoding, small responses are left as they are by CompressionThresholdFilter
+        register(EncodingFilter.class);
+        register(GZipEncoder.class);
+        register(DeflateEncoder.class);
+        register(CompressionThresholdFilter.class);
+        register(VaryAcceptFilter.class);
         register(UibApplicationConnection.class);
 
         register(ApplicationService.class);
@@ -38,6 +54,8 @@ public class JerseyApplication extends ResourceConfig {
         register(LogonController.class);
         register(CreateLogonUserController.class);
         register(PasswordController.class);
+        register(StatusResource.class);
+        register(LoggerResource.class);
         //register(SpringRequestResource.class);
         //register(CustomExceptionMapper.class);
         //https://java.net/jira/browse/JERSEY-2175
@@ -1,7 +1,14 @@
 package net.whydah.admin;
 
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.config.ExecutionMode;
+import net.whydah.admin.metrics.MetricsHandler;
+import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +38,8 @@ public class MainWithJetty {
         SLF4JBridgeHandler.install();
         LogManager.getLogManager().getLogger("").setLevel(Level.FINEST);
 
-        MainWithJetty main = new MainWithJetty(DEFAULT_PORT_NO);
+        ExecutionMode executionMode = new AppConfig().getExecutionMode();
+        MainWithJetty main = new MainWithJetty(DEFAULT_PORT_NO, executionMode);
         main.start();
         main.join();
     }
@@ -40,8 +48,23 @@ public class MainWithJetty {
      * http://wiki.eclipse.org/Jetty/Tutorial/Embedding_Jetty#Setting_a_ServletContext
      */
     public MainWithJetty(int jettyPort) {
+        this(jettyPort, ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * @param executionMode VIRTUAL serves every request on its own virtual thread instead of the QueuedThreadPool.
+     */
+    public MainWithJetty(int jettyPort, ExecutionMode executionMode) {
         this.jettyPort = jettyPort;
-        server = new Server(jettyPort);
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            server = new Server(new ExecutorThreadPool(ExecutionMode.newVirtualThreadExecutor()));
+            ServerConnector connector = new ServerConnector(server);
+            connector.setPort(jettyPort);
+            server.addConnector(connector);
+        } else {
+            server = new Server(jettyPort);
+        }
+        log.info("Jetty execution mode {}", executionMode);
 
         URL url = ClassLoader.getSystemResource("webapp/WEB-INF/web.xml");
         resourceBase = url.toExternalForm().replace("/WEB-INF/web.xml", "");
@@ -55,11 +78,17 @@ public class MainWithJetty {
         context.setResourceBase(resourceBase);
         context.setContextPath(CONTEXT_PATH);
         context.setParentLoaderPriority(true);
-        server.setHandler(context);
+
+        // Scraped without going through the web application
+        ContextHandler metrics = new ContextHandler(MetricsHandler.PATH);
+        metrics.setHandler(new MetricsHandler());
+        HandlerList handlers = new HandlerList();
+        handlers.setHandlers(new Handler[]{metrics, context});
+        server.setHandler(handlers);
 
         server.start();
         int localPort = getPortNumber();
-        log.info("Jetty server started on port {}, context path {}", localPort, CONTEXT_PATH);
+        log.info("Jetty server started on port {}, context path {}, metrics on {}", localPort, CONTEXT_PATH, MetricsHandler.PATH);
     }
 
     public void stop() throws Exception {
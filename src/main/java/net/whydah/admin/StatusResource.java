@@ -0,0 +1,150 @@
+package net.whydah.admin;
+
+import net.whydah.admin.application.ApplicationCatalogue;
+import net.whydah.admin.uib.Bulkhead;
+import net.whydah.admin.uib.CircuitBreaker;
+import net.whydah.admin.uib.SingleFlight;
+import net.whydah.admin.uib.UibClient;
+import net.whydah.admin.uib.UibGuard;
+import net.whydah.admin.uib.UibOperation;
+import net.whydah.admin.user.UserAggregateCache;
+import net.whydah.admin.users.UserSearchIndex;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Runtime statistics for operations.
+ */
+@Path("/status")
+@Component
+public class StatusResource {
+
+    private final UibClient uibClient;
+    private final UserAggregateCache userAggregateCache;
+    private final UibGuard uibGuard;
+    private final SingleFlight singleFlight;
+    private final UserSearchIndex userSearchIndex;
+    private final ApplicationCatalogue applicationCatalogue;
+
+    @Autowired
+    public StatusResource(UibClient uibClient, UserAggregateCache userAggregateCache, UibGuard uibGuard, SingleFlight singleFlight,
+                          UserSearchIndex userSearchIndex, ApplicationCatalogue applicationCatalogue) {
+        this.uibClient = uibClient;
+        this.userAggregateCache = userAggregateCache;
+        this.uibGuard = uibGuard;
+        this.singleFlight = singleFlight;
+        this.userSearchIndex = userSearchIndex;
+        this.applicationCatalogue = applicationCatalogue;
+    }
+
+    /**
+     * Connection pool towards UserIdentityBackend.
+     * {"leased":2,"available":8,"pending":0,"max":200}
+     */
+    @GET
+    @Path("/uib")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response uibConnectionPool() {
+        PoolStats poolStats = uibClient.getPoolStats();
+        String statsJson = "{\"leased\":" + poolStats.getLeased() +
+                ",\"available\":" + poolStats.getAvailable() +
+                ",\"pending\":" + poolStats.getPending() +
+                ",\"max\":" + poolStats.getMax() + "}";
+        return Response.ok(statsJson).build();
+    }
+
+    /**
+     * UserAggregate cache.
+     * {"size":120,"hits":5321,"misses":480,"evictions":12}
+     */
+    @GET
+    @Path("/usercache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response userCache() {
+        String statsJson = "{\"size\":" + userAggregateCache.size() +
+                ",\"hits\":" + userAggregateCache.getHitCount() +
+                ",\"misses\":" + userAggregateCache.getMissCount() +
+                ",\"evictions\":" + userAggregateCache.getEvictionCount() + "}";
+        return Response.ok(statsJson).build();
+    }
+
+    /**
+     * Circuit breaker and bulkhead per UIB operation.
+     * {"USER_READ":{"state":"CLOSED","consecutiveFailures":0,"opened":1,"rejectedOpen":12,"rejectedBulkhead":0,"inFlight":3,"max":40},...}
+     */
+    @GET
+    @Path("/uib/breakers")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response uibBreakers() {
+        StringBuilder statsJson = new StringBuilder("{");
+        for (UibOperation operation : UibOperation.values()) {
+            CircuitBreaker circuitBreaker = uibGuard.getCircuitBreaker(operation);
+            Bulkhead bulkhead = uibGuard.getBulkhead(operation);
+            if (statsJson.length() > 1) {
+                statsJson.append(",");
+            }
+            statsJson.append("\"").append(operation).append("\":{")
+                    .append("\"state\":\"").append(circuitBreaker.getState()).append("\"")
+                    .append(",\"consecutiveFailures\":").append(circuitBreaker.getConsecutiveFailures())
+                    .append(",\"opened\":").append(circuitBreaker.getOpenedCount())
+                    .append(",\"rejectedOpen\":").append(circuitBreaker.getRejectedCount())
+                    .append(",\"rejectedBulkhead\":").append(bulkhead.getRejectedCount())
+                    .append(",\"inFlight\":").append(bulkhead.getInFlight())
+                    .append(",\"max\":").append(bulkhead.getMaxConcurrentCalls())
+                    .append("}");
+        }
+        statsJson.append("}");
+        return Response.ok(statsJson.toString()).build();
+    }
+
+    /**
+     * Coalescing of identical concurrent UIB reads.
+     * {"calls":5210,"collapsed":1873,"inFlight":4}
+     */
+    @GET
+    @Path("/uib/singleflight")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response uibSingleFlight() {
+        String statsJson = "{\"calls\":" + singleFlight.getCallCount() +
+                ",\"collapsed\":" + singleFlight.getCollapsedCount() +
+                ",\"inFlight\":" + singleFlight.getInFlightCount() + "}";
+        return Response.ok(statsJson).build();
+    }
+
+    /**
+     * Local user search index.
+     * {"ready":true,"users":52000,"terms":181000,"lastRefresh":1413290000000}
+     */
+    @GET
+    @Path("/userindex")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response userIndex() {
+        String statsJson = "{\"ready\":" + userSearchIndex.isReady() +
+                ",\"users\":" + userSearchIndex.size() +
+                ",\"terms\":" + userSearchIndex.termCount() +
+                ",\"lastRefresh\":" + userSearchIndex.getLastRefreshMillis() + "}";
+        return Response.ok(statsJson).build();
+    }
+
+    /**
+     * Applications held by ApplicationCatalogue.
+     * {"loaded":true,"applications":35,"loadFailures":0,"lastRefresh":1413290000000}
+     */
+    @GET
+    @Path("/applications")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response applicationCatalogue() {
+        String statsJson = "{\"loaded\":" + applicationCatalogue.isLoaded() +
+                ",\"applications\":" + applicationCatalogue.size() +
+                ",\"loadFailures\":" + applicationCatalogue.getLoadFailures() +
+                ",\"lastRefresh\":" + applicationCatalogue.getLastLoadMillis() + "}";
+        return Response.ok(statsJson).build();
+    }
+}
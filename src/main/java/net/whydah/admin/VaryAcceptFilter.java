@@ -0,0 +1,44 @@
+package net.whydah.admin;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Adds Vary: Accept to responses of resource methods producing more than one media type, so caches keep the xml and
+ * json responses apart. ContentNegotiator does not call Request.selectVariant for an Accept header it has seen
+ * before, so Jersey does not add it on its own.
+ */
+@Provider
+public class VaryAcceptFilter implements ContainerResponseFilter {
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Method method = resourceInfo.getResourceMethod();
+        if (method == null || !isNegotiated(method)) {
+            return;
+        }
+        List<String> vary = responseContext.getStringHeaders().get(HttpHeaders.VARY);
+        if (vary == null || !vary.contains(HttpHeaders.ACCEPT)) {
+            responseContext.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+    }
+
+    static boolean isNegotiated(Method method) {
+        Produces produces = method.getAnnotation(Produces.class);
+        if (produces == null) {
+            produces = method.getDeclaringClass().getAnnotation(Produces.class);
+        }
+        return produces != null && produces.value().length > 1;
+    }
+}
@@ -1,9 +1,16 @@
 package net.whydah.admin.application;
 
 import com.google.common.base.Joiner;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.metrics.LatencyHistogram;
+import net.whydah.admin.metrics.Metrics;
+import net.whydah.admin.xml.DomainXmlWriter;
+import net.whydah.admin.xml.StaxXmlDocument;
+import net.whydah.admin.xml.XmlParsing;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -38,6 +45,10 @@ import java.util.List;
  */
 public class Application {
     private static final Logger log = LoggerFactory.getLogger(Application.class);
+    private static final LatencyHistogram FROM_JSON_TIME = Metrics.codec("Application.fromJson");
+    private static final LatencyHistogram FROM_JSON_LIST_TIME = Metrics.codec("Application.fromJsonList");
+    private static final LatencyHistogram TO_JSON_TIME = Metrics.codec("Application.toJson");
+    private static final LatencyHistogram FROM_XML_TIME = Metrics.codec("Application.fromXml");
     private String id;
     private String name;
     private String defaultRole;
@@ -80,11 +91,10 @@ public class Application {
      * @return
      */
     public static Application fromJson(String applicationJson) {
-        try {
+        try (LatencyHistogram.Timer timer = FROM_JSON_TIME.time()) {
             Application application;
 
-            ObjectMapper mapper = new ObjectMapper();
-            application = mapper.readValue(applicationJson, Application.class);
+            application = JsonCodec.reader(Application.class).readValue(applicationJson);
 
             return application;
         } catch (JsonMappingException e) {
@@ -96,11 +106,21 @@ public class Application {
         }
     }
 
+    /**
+     * A json array of applications, as listed by UIB.
+     */
+    public static List<Application> fromJsonList(String applicationsJson) {
+        try (LatencyHistogram.Timer timer = FROM_JSON_LIST_TIME.time()) {
+            return JsonCodec.mapper().readValue(applicationsJson, new TypeReference<List<Application>>() {});
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Error reading json list of applications", e);
+        }
+    }
+
     public String toJson() {
         String applicationJson = null;
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            applicationJson =  mapper.writeValueAsString(this);
+        try (LatencyHistogram.Timer timer = TO_JSON_TIME.time()) {
+            applicationJson =  JsonCodec.writer(getClass()).writeValueAsString(this);
         } catch (IOException e) {
             log.info("Could not create json from this object {}", toString(), e);
         }
@@ -108,28 +128,40 @@ public class Application {
     }
 
     public String toXML() {
-        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?> \n " +
-                " <application>\n" +
-                "   <applicationid>" + id + "</applicationid>\n" +
-                "   <applicationname>" + name + "</applicationname>\n" +
-                "   <defaultrole>" + defaultRole + "</defaultrole>\n" +
-                "   <defaultorgid>" + defaultOrgid + "</defaultorgid>\n" +
-                "  " + buildAvailableOrgIsXml() + "\n" +
-                " </application>\n";
+        return DomainXmlWriter.toXml(this);
+    }
+
+    public static Application fromXml(String applicationXml) {
+        try (LatencyHistogram.Timer timer = FROM_XML_TIME.time()) {
+            log.debug("Build application from xml {}", PayloadLog.of(applicationXml));
+            if (XmlParsing.useStax()) {
+                return fromXmlStax(applicationXml);
+            }
+            return fromXmlDom(applicationXml);
+        }
     }
 
-    private String buildAvailableOrgIsXml() {
-        StringBuilder availableXml = new StringBuilder("<availableOrgIds>\n");
+    private static Application fromXmlStax(String applicationXml) {
+        Application application = null;
+        try {
+            StaxXmlDocument doc = StaxXmlDocument.parse(applicationXml);
+            String id = doc.evaluate("/application/applicationid");
+            String name = doc.evaluate("/application/applicationname");
+            String defaultrole = doc.evaluate("/application/defaultrole");
+            String defaultorgid = doc.evaluate("/application/defaultorgid");
 
-        for (String availableOrgId : availableOrgIds) {
-            availableXml.append("<orgId>" + availableOrgId + "</orgId>\n");
+            application = new Application(id,name,defaultrole, defaultorgid);
+            for (String orgId : doc.evaluateAll("/application/availableOrgIds/orgId")) {
+                log.debug("orgId {}", orgId);
+                application.addAvailableOrgId(orgId);
+            }
+        } catch (Exception e) {
+            log.warn("Could not create an Application from this xml {}", PayloadLog.of(applicationXml), e);
         }
-        availableXml.append("</availableOrgIds>");
-        return availableXml.toString();
+        return application;
     }
 
-    public static Application fromXml(String applicationXml) {
-        log.debug("Build application from xml {}", applicationXml);
+    private static Application fromXmlDom(String applicationXml) {
         Application application = null;
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         try {
@@ -153,7 +185,7 @@ public class Application {
                 }
             }
         } catch (Exception e) {
-            log.warn("Could not create an Application from this xml {}", applicationXml, e);
+            log.warn("Could not create an Application from this xml {}", PayloadLog.of(applicationXml), e);
         }
         return application;
 
@@ -226,5 +258,13 @@ public class Application {
         this.id = id;
     }
 
+    /**
+     * @return copy, which may be modified without affecting this application.
+     */
+    public Application copy() {
+        return new Application(id, name, defaultRole, defaultOrgid,
+                availableOrgIds == null ? null : new ArrayList<>(availableOrgIds));
+    }
+
 
 }
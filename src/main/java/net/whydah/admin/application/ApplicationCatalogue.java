@@ -0,0 +1,335 @@
+package net.whydah.admin.application;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.whydah.admin.AuthenticationFailedException;
+import net.whydah.admin.CredentialStore;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * All applications in UIB, held in memory so getApplication and the applicationName of roles need no UIB call.
+ *
+ * Listing applications in UIB needs a user token, so the catalogue is loaded with the userTokenId of a caller: a
+ * caller the catalogue is not served to reads from UIB and requests a load with its own userTokenId. The catalogue is
+ * reloaded with the last userTokenId that loaded it every application.catalogue.refreshSeconds, and loads wait for
+ * the UAS session and are retried every application.catalogue.retrySeconds. A load replaces the catalogue in one
+ * write, so readers never see a half-loaded list. createApplication adds the new application and requests a load.
+ *
+ * get only serves callers whose userTokenId has loaded the catalogue within application.catalogue.tokenTtlMinutes,
+ * and only while the last load returned the same applications. A catalogue older than
+ * application.catalogue.maxAgeSeconds, because every reload has failed since, is not used at all. get returns a copy
+ * the caller may modify. Only application names are filled into roles without a caller check, as the roles were
+ * already returned to the caller by UIB.
+ */
+@Component
+public class ApplicationCatalogue {
+    private static final Logger log = LoggerFactory.getLogger(ApplicationCatalogue.class);
+    private static final int DEFAULT_REFRESH_SECONDS = 300;
+    private static final int DEFAULT_RETRY_SECONDS = 30;
+    private static final int DEFAULT_MAX_AGE_SECONDS = 900;
+    private static final int DEFAULT_TOKEN_TTL_MINUTES = 60;
+    private static final HashFunction ID_HASH = Hashing.murmur3_128();
+
+    private final UibApplicationConnection uibApplicationConnection;
+    private final CredentialStore credentialStore;
+    private final long refreshMillis;
+    private final long maxAgeMillis;
+    /** userTokenIds the loaded applications were returned to. */
+    private final Cache<String, Boolean> authorizedTokens;
+    private final AtomicReference<String> lastAuthorizedToken = new AtomicReference<>();
+    private final AtomicReference<String> requestedToken = new AtomicReference<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong loadFailures = new AtomicLong();
+
+    private volatile Map<String, Application> applications = ImmutableMap.of();
+    private volatile boolean loaded;
+    private volatile long lastLoadMillis;
+    /** Hash of the application ids of the last load, to tell whether a load with another userTokenId returned the same. */
+    private long loadedIds;
+
+    @Autowired
+    public ApplicationCatalogue(UibApplicationConnection uibApplicationConnection, CredentialStore credentialStore, AppConfig appConfig) {
+        this.uibApplicationConnection = uibApplicationConnection;
+        this.credentialStore = credentialStore;
+        int refreshSeconds = appConfig.getIntProperty("application.catalogue.refreshSeconds", DEFAULT_REFRESH_SECONDS);
+        int retrySeconds = appConfig.getIntProperty("application.catalogue.retrySeconds", DEFAULT_RETRY_SECONDS);
+        this.refreshMillis = TimeUnit.SECONDS.toMillis(refreshSeconds);
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(appConfig.getIntProperty("application.catalogue.maxAgeSeconds", DEFAULT_MAX_AGE_SECONDS));
+        this.authorizedTokens = CacheBuilder.newBuilder()
+                .expireAfterWrite(appConfig.getIntProperty("application.catalogue.tokenTtlMinutes", DEFAULT_TOKEN_TTL_MINUTES), TimeUnit.MINUTES)
+                .build();
+        if (refreshSeconds <= 0) {
+            log.info("Application catalogue disabled, applications are read from UIB");
+            scheduler = null;
+            return;
+        }
+        log.info("Application catalogue refresh every {} seconds, retry every {} seconds", refreshSeconds, retrySeconds);
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("application-catalogue-refresh").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                loadIfDue();
+            }
+        }, retrySeconds, retrySeconds, TimeUnit.SECONDS);
+    }
+
+    ApplicationCatalogue(UibApplicationConnection uibApplicationConnection, CredentialStore credentialStore,
+                         long maxAgeSeconds, long tokenTtlMinutes) {
+        this.uibApplicationConnection = uibApplicationConnection;
+        this.credentialStore = credentialStore;
+        this.refreshMillis = 0;
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+        this.authorizedTokens = CacheBuilder.newBuilder().expireAfterWrite(tokenTtlMinutes, TimeUnit.MINUTES).build();
+        this.scheduler = null;
+    }
+
+    private void requestLoad(String userTokenId) {
+        if (scheduler != null && requestedToken.compareAndSet(null, userTokenId)) {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    loadIfDue();
+                }
+            });
+        }
+    }
+
+    /**
+     * Load with the requested userTokenId, or reload with the last authorized one when the catalogue is older than
+     * application.catalogue.refreshSeconds.
+     */
+    private void loadIfDue() {
+        String userTokenId = requestedToken.get();
+        if (userTokenId == null) {
+            userTokenId = lastAuthorizedToken.get();
+            if (userTokenId == null || System.currentTimeMillis() - lastLoadMillis < refreshMillis) {
+                return;
+            }
+        }
+        try {
+            if (load(userTokenId)) {
+                requestedToken.compareAndSet(userTokenId, null);
+            }
+        } catch (AuthenticationFailedException e) {
+            requestedToken.compareAndSet(userTokenId, null);
+        }
+    }
+
+    /**
+     * Load every application UIB returns to userTokenId and replace the catalogue.
+     * @return false when the load failed and the old catalogue is kept.
+     * @throws AuthenticationFailedException when UIB refused userTokenId, which is no longer served the catalogue.
+     */
+    boolean load(String userTokenId) {
+        String userAdminServiceTokenId = credentialStore.getUserAdminServiceTokenId();
+        if (userAdminServiceTokenId == null) {
+            log.debug("No UserAdminService session yet, application catalogue not loaded");
+            return false;
+        }
+        List<Application> all;
+        try {
+            all = uibApplicationConnection.listApplications(userAdminServiceTokenId, userTokenId);
+        } catch (AuthenticationFailedException e) {
+            log.info("Application catalogue not loaded, UIB refused the userTokenId: {}", e.getMessage());
+            authorizedTokens.invalidate(userTokenId);
+            lastAuthorizedToken.compareAndSet(userTokenId, null);
+            throw e;
+        } catch (RuntimeException e) {
+            loadFailures.incrementAndGet();
+            log.warn("Application catalogue load failed, keeping {} applications. {}", applications.size(), e.getMessage());
+            return false;
+        }
+        Map<String, Application> byId = new HashMap<>();
+        long ids = 0;
+        for (Application application : all) {
+            if (application.getId() != null && byId.put(application.getId(), application) == null) {
+                ids += ID_HASH.hashString(application.getId(), Charsets.UTF_8).asLong();
+            }
+        }
+        synchronized (this) {
+            if (ids != loadedIds) {
+                // Other callers were authorized for a different list of applications
+                authorizedTokens.invalidateAll();
+                loadedIds = ids;
+            }
+            applications = ImmutableMap.copyOf(byId);
+            lastLoadMillis = System.currentTimeMillis();
+            loaded = true;
+        }
+        authorizedTokens.put(userTokenId, Boolean.TRUE);
+        lastAuthorizedToken.set(userTokenId);
+        log.debug("Application catalogue loaded {} applications", byId.size());
+        return true;
+    }
+
+    private boolean isFresh() {
+        return System.currentTimeMillis() - lastLoadMillis <= maxAgeMillis;
+    }
+
+    /**
+     * @return the applications, or none when the catalogue has not been loaded within application.catalogue.maxAgeSeconds.
+     */
+    private Map<String, Application> current() {
+        return isFresh() ? applications : ImmutableMap.<String, Application>of();
+    }
+
+    /**
+     * @return a copy of the application, or null when it is not in the catalogue or the catalogue is not served to
+     * userTokenId. A load with userTokenId is then requested, and the caller should read from UIB.
+     */
+    public Application get(String applicationId, String userTokenId) {
+        if (applicationId == null || userTokenId == null) {
+            return null;
+        }
+        if (authorizedTokens.getIfPresent(userTokenId) == null || !isFresh()) {
+            requestLoad(userTokenId);
+            return null;
+        }
+        Application application = current().get(applicationId);
+        return application == null ? null : application.copy();
+    }
+
+    /**
+     * @return name of the application, or null when not known.
+     */
+    public String getName(String applicationId) {
+        Application application = applicationId == null ? null : current().get(applicationId);
+        return application == null ? null : application.getName();
+    }
+
+    /**
+     * Called after userTokenId created an application through UAS: add it, and reload the catalogue with userTokenId.
+     */
+    public void invalidate(Application created, String userTokenId) {
+        if (scheduler == null) {
+            return;
+        }
+        if (created != null && created.getId() != null) {
+            synchronized (this) {
+                Map<String, Application> withCreated = new HashMap<>(applications);
+                withCreated.put(created.getId(), created.copy());
+                applications = ImmutableMap.copyOf(withCreated);
+            }
+        }
+        if (userTokenId != null) {
+            requestedToken.set(userTokenId);
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    loadIfDue();
+                }
+            });
+        }
+    }
+
+    /**
+     * Set applicationName of roles that have none, from applicationId.
+     */
+    public void fillApplicationNames(List<UserPropertyAndRole> roles) {
+        if (roles == null) {
+            return;
+        }
+        for (UserPropertyAndRole role : roles) {
+            if (role.getApplicationName().isEmpty()) {
+                String name = getName(role.getApplicationId());
+                if (name != null) {
+                    role.setApplicationName(name);
+                }
+            }
+        }
+    }
+
+    public void fillApplicationName(RoleRepresentationRequest role) {
+        if (role != null && (role.getApplicationName() == null || role.getApplicationName().isEmpty())) {
+            String name = getName(role.getApplicationId());
+            if (name != null) {
+                role.setApplicationName(name);
+            }
+        }
+    }
+
+    /**
+     * Set applicationName in a json array of roles from UIB.
+     * @return the roles with names filled in, or rolesJson as it is when there is nothing to fill or it is not an array.
+     */
+    public String fillApplicationNames(String rolesJson) {
+        if (rolesJson == null || current().isEmpty()) {
+            return rolesJson;
+        }
+        JsonNode roles;
+        try {
+            roles = JsonCodec.mapper().readTree(rolesJson);
+        } catch (IOException e) {
+            log.debug("Roles are not json, applicationName not filled in. {}", e.getMessage());
+            return rolesJson;
+        }
+        if (roles == null || !roles.isArray()) {
+            return rolesJson;
+        }
+        boolean filled = false;
+        for (JsonNode role : roles) {
+            JsonNode applicationName = role.get("applicationName");
+            if (role.isObject() && (applicationName == null || applicationName.isNull() || applicationName.asText().isEmpty())) {
+                JsonNode applicationId = role.get("applicationId");
+                String name = applicationId == null ? null : getName(applicationId.asText());
+                if (name != null) {
+                    ((ObjectNode) role).put("applicationName", name);
+                    filled = true;
+                }
+            }
+        }
+        return filled ? roles.toString() : rolesJson;
+    }
+
+    /**
+     * @return true when the catalogue has been loaded within application.catalogue.maxAgeSeconds.
+     */
+    public boolean isLoaded() {
+        return loaded && isFresh();
+    }
+
+    public int size() {
+        return applications.size();
+    }
+
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
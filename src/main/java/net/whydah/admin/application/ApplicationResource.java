@@ -1,13 +1,28 @@
 package net.whydah.admin.application;
 
-import org.codehaus.jackson.map.ObjectMapper;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.ContentNegotiator;
+import net.whydah.admin.EntityTags;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.uib.UibAsync;
+import net.whydah.admin.xml.DomainXmlWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 
@@ -19,12 +34,13 @@ import java.io.IOException;
 public class ApplicationResource {
     private static final Logger log = LoggerFactory.getLogger(ApplicationResource.class);
     ApplicationService applicationService;
-    ObjectMapper mapper = new ObjectMapper();
+    private final UibAsync uibAsync;
 
 
     @Autowired
-    public ApplicationResource(ApplicationService applicationService) {
+    public ApplicationResource(ApplicationService applicationService, UibAsync uibAsync) {
         this.applicationService = applicationService;
+        this.uibAsync = uibAsync;
     }
 
     /**
@@ -39,25 +55,26 @@ public class ApplicationResource {
     @Consumes(MediaType.APPLICATION_XML)
     @Produces(MediaType.APPLICATION_XML)
     public Response createApplication(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId, String applicationXml) {
-        log.trace("createApplication is called with applicationXml={}", applicationXml);
+        log.trace("createApplication is called with applicationXml={}", PayloadLog.of(applicationXml));
         Application application;
         try {
             application = applicationService.createApplicationFromXml(applicationTokenId, userTokenId, applicationXml);
 
         } catch (IllegalArgumentException iae) {
-            log.error("createApplication: Invalid xml={}", applicationXml, iae);
+            log.error("createApplication: Invalid xml={}", PayloadLog.of(applicationXml), iae);
             return Response.status(Response.Status.BAD_REQUEST).build();
         } catch (IllegalStateException ise) {
             log.error(ise.getMessage());
             return Response.status(Response.Status.CONFLICT).build();
+        } catch (ServiceUnavailableException e) {
+            return e.getResponse();
         } catch (RuntimeException e) {
             log.error("", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
         }
 
         if (application != null) {
-            String applicationCreatedXml = application.toXML();
-            return Response.ok(applicationCreatedXml).build();
+            return Response.ok(DomainXmlWriter.streaming(application)).build();
         } else {
             return Response.status(Response.Status.NO_CONTENT).build();
         }
@@ -65,24 +82,74 @@ public class ApplicationResource {
 
     @GET
     @Path("/{applicationId}")
-    @Produces(MediaType.APPLICATION_XML)
-    public Response getApplication(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
-                                   @PathParam("applicationId") String applicationId) {
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public void getApplication(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
+                               @PathParam("applicationId") final String applicationId, @HeaderParam(HttpHeaders.ACCEPT) String accept,
+                               @Context final Request req, @Suspended final AsyncResponse asyncResponse) {
         log.trace("getApplication is called with applicationId={}", applicationId);
+        final MediaType responseMediaType = ContentNegotiator.XML_OR_JSON.select(req, accept);
+        if (responseMediaType == null) {
+            asyncResponse.resume(ContentNegotiator.XML_OR_JSON.notAcceptable());
+            return;
+        }
+        uibAsync.suspend(asyncResponse);
         try {
-            Application application = applicationService.getApplication(applicationTokenId, userTokenId,applicationId);
-            String applicationCreatedXml = buildApplicationXml(application);
-            return Response.ok(applicationCreatedXml).build();
-        } catch (IllegalArgumentException iae) {
-            log.error("createApplication: Invalid xml={}", applicationId, iae);
+            ListenableFuture<Application> application = applicationService.getApplicationAsync(applicationTokenId, userTokenId, applicationId);
+            Futures.addCallback(application, new FutureCallback<Application>() {
+                @Override
+                public void onSuccess(Application application) {
+                    if (application == null) {
+                        asyncResponse.resume(Response.ok().build());
+                    } else {
+                        asyncResponse.resume(buildApplicationResponse(application, responseMediaType, req));
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    asyncResponse.resume(getApplicationFailed(applicationId, t));
+                }
+            });
+        } catch (RuntimeException e) {
+            asyncResponse.resume(getApplicationFailed(applicationId, e));
+        }
+    }
+
+    /**
+     * @return the application with its ETag, or 304 when If-None-Match has the current ETag.
+     */
+    private Response buildApplicationResponse(Application application, MediaType responseMediaType, Request req) {
+        if (responseMediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+            String applicationJson = buildApplicationJson(application);
+            if (applicationJson == null) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+            }
+            EntityTag entityTag = EntityTags.of(applicationJson);
+            Response notModified = EntityTags.notModified(req, entityTag);
+            return notModified != null ? notModified : Response.ok(applicationJson, responseMediaType).tag(entityTag).build();
+        }
+        String applicationXml = DomainXmlWriter.toXml(application);
+        EntityTag entityTag = EntityTags.of(applicationXml);
+        Response notModified = EntityTags.notModified(req, entityTag);
+        return notModified != null ? notModified : Response.ok(applicationXml, responseMediaType).tag(entityTag).build();
+    }
+
+    private Response getApplicationFailed(String applicationId, Throwable t) {
+        if (t instanceof ServiceUnavailableException) {
+            return ((ServiceUnavailableException) t).getResponse();
+        }
+        if (t instanceof IllegalArgumentException) {
+            log.error("createApplication: Invalid xml={}", applicationId, t);
             return Response.status(Response.Status.BAD_REQUEST).build();
-        } catch (IllegalStateException ise) {
-            log.error(ise.getMessage());
+        } else if (t instanceof IllegalStateException) {
+            log.error(t.getMessage());
             return Response.status(Response.Status.CONFLICT).build();
-        } catch (RuntimeException e) {
-            log.error("", e);
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        } else if (t instanceof ConnectionFailedException) {
+            log.warn("getApplication: UIB request failed for applicationId {}", applicationId, t);
+            return UibAsync.unavailable((ConnectionFailedException) t);
         }
+        log.error("", t);
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
     }
 
     /**
@@ -97,7 +164,7 @@ public class ApplicationResource {
     @Consumes(MediaType.APPLICATION_XML)
     @Produces(MediaType.APPLICATION_XML)
     public Response authenticateApplication(@PathParam("applicationtokenid") String applicationTokenId,  String applicationXml) {
-        log.trace("authenticateApplication is called with applicationXml={} from applicationtokenid={}", applicationXml,applicationTokenId);
+        log.trace("authenticateApplication is called with applicationXml={} from applicationtokenid={}", PayloadLog.of(applicationXml),applicationTokenId);
 
         // FIXME verify that the request come from STS, which is the only application who has access to auth
         // FIXME ask UIB for to verify applicationSecret
@@ -123,7 +190,7 @@ public class ApplicationResource {
     protected String buildApplicationJson(Application application) {
         String applicationCreatedJson = null;
         try {
-            applicationCreatedJson = mapper.writeValueAsString(application);
+            applicationCreatedJson = JsonCodec.writer(Application.class).writeValueAsString(application);
         } catch (IOException e) {
             log.warn("Could not convert application to Json {}", application.toString());
         }
@@ -1,5 +1,7 @@
 package net.whydah.admin.application;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import net.whydah.admin.CredentialStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,18 +19,21 @@ public class ApplicationService {
     private static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy.MM.dd hh:mm");
     private final UibApplicationConnection uibApplicationConnection;
     private final CredentialStore credentialStore;
+    private final ApplicationCatalogue applicationCatalogue;
 
 
     @Autowired
-    public ApplicationService(UibApplicationConnection uibApplicationConnection, CredentialStore credentialStore) {
+    public ApplicationService(UibApplicationConnection uibApplicationConnection, CredentialStore credentialStore, ApplicationCatalogue applicationCatalogue) {
         this.uibApplicationConnection = uibApplicationConnection;
         this.credentialStore = credentialStore;
+        this.applicationCatalogue = applicationCatalogue;
     }
 
     public Application createApplication(String applicationTokenId, String userTokenId,String applicationJson) {
         Application application = null;
         if (hasAccess(applicationTokenId, userTokenId)) {
-            application = uibApplicationConnection.addApplication(credentialStore.getUserAdminServiceTokenId(), userTokenId, applicationJson);
+            application = uibApplicationConnection.addApplication(credentialStore.requireUserAdminServiceTokenId(), userTokenId, applicationJson);
+            applicationCatalogue.invalidate(application, userTokenId);
         } else {
             //FIXME handle no access to this method.
         }
@@ -44,16 +49,36 @@ public class ApplicationService {
         return createdApplication;
     }
 
+    /**
+     * Served from ApplicationCatalogue when it is loaded for userTokenId and has the application, else read from UIB.
+     */
     public Application getApplication(String applicationTokenId, String userTokenId, String applicationId) {
         Application application = null;
         if (hasAccess(applicationTokenId, userTokenId)) {
-            application = uibApplicationConnection.getApplication(credentialStore.getUserAdminServiceTokenId(), userTokenId, applicationId);
+            application = applicationCatalogue.get(applicationId, userTokenId);
+            if (application != null) {
+                return application;
+            }
+            application = uibApplicationConnection.getApplication(credentialStore.requireUserAdminServiceTokenId(), userTokenId, applicationId);
         } else {
             //FIXME handle no access to this method.
         }
         return application;
     }
 
+    public ListenableFuture<Application> getApplicationAsync(String applicationTokenId, String userTokenId, String applicationId) {
+        if (hasAccess(applicationTokenId, userTokenId)) {
+            Application application = applicationCatalogue.get(applicationId, userTokenId);
+            if (application != null) {
+                return Futures.immediateFuture(application);
+            }
+            return uibApplicationConnection.getApplicationAsync(credentialStore.requireUserAdminServiceTokenId(), userTokenId, applicationId);
+        } else {
+            //FIXME handle no access to this method.
+            return Futures.immediateFuture(null);
+        }
+    }
+
 
     boolean hasAccess(String applicationTokenId, String userTokenId) {
         //FIXME validate user and applciation trying to create a new application.
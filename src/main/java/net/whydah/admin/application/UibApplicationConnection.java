@@ -1,19 +1,26 @@
 package net.whydah.admin.application;
 
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import net.whydah.admin.AuthenticationFailedException;
-import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.uib.SingleFlight;
+import net.whydah.admin.uib.UibClient;
+import net.whydah.admin.uib.UibGuard;
+import net.whydah.admin.uib.UibOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.ws.rs.BadRequestException;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.util.List;
 
 /**
  * @author <a href="bard.lind@gmail.com">Bard Lind</a>
@@ -23,25 +30,29 @@ public class UibApplicationConnection {
     private static final Logger log = LoggerFactory.getLogger(UibApplicationConnection.class);
     private static final int STATUS_BAD_REQUEST = 400; //Response.Status.BAD_REQUEST.getStatusCode();
     private static final int STATUS_OK = 200; //Response.Status.OK.getStatusCode();
+    private static final Function<Application, Application> COPY = new Function<Application, Application>() {
+        @Override
+        public Application apply(Application application) {
+            return application.copy();
+        }
+    };
 
 
     private final WebTarget uib;
-    private final String userIdentityBackendUri = "http://localhost:9995/uib";
+    private final UibGuard uibGuard;
+    private final SingleFlight singleFlight;
 
     @Autowired
-    public UibApplicationConnection(AppConfig appConfig) {
-        Client client = ClientBuilder.newClient();
-//        URI useridbackendUri = URI.create(appConfig.getProperty("useridentitybackend"));
-       // uib = client.target(userIdentityBackendUri);
-        String uibUrl = appConfig.getProperty("useridentitybackend");
-        log.info("Connection to UserIdentityBackend on {}" , uibUrl);
-        uib = client.target(uibUrl);
+    public UibApplicationConnection(UibClient uibClient, UibGuard uibGuard, SingleFlight singleFlight) {
+        uib = uibClient.target();
+        this.uibGuard = uibGuard;
+        this.singleFlight = singleFlight;
     }
 
     public Application addApplication(String userAdminServiceTokenId, String userTokenId, String applicationJson) {
         WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + userTokenId + "/application");
         Application application = null;
-        Response response = webResource.request(MediaType.APPLICATION_JSON).post(Entity.entity(applicationJson,MediaType.APPLICATION_JSON));
+        Response response = uibGuard.execute(UibOperation.APPLICATION, "addApplication", webResource.request(MediaType.APPLICATION_JSON).buildPost(Entity.entity(applicationJson,MediaType.APPLICATION_JSON)));
         int statusCode = response.getStatus();
         switch (statusCode) {
             case STATUS_OK:
@@ -59,14 +70,63 @@ public class UibApplicationConnection {
     }
 
     private Application buildApplication(String applicationJson) {
-        log.debug("build json from {}", applicationJson);
+        log.debug("build json from {}", PayloadLog.of(applicationJson));
         return Application.fromJson(applicationJson);
     }
 
+    /**
+     * Concurrent calls for the same application and userTokenId share one UIB call, see SingleFlight.
+     */
     public Application getApplication(String userAdminServiceTokenId, String userTokenId, String applicationId) {
-        WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + userTokenId + "/application/" + applicationId);
+        final WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + userTokenId + "/application/" + applicationId);
+        return singleFlight.call(SingleFlight.key("getApplication", applicationId, userTokenId), new Supplier<Application>() {
+            @Override
+            public Application get() {
+                Response response = uibGuard.execute(UibOperation.APPLICATION, "getApplication", webResource.request(MediaType.APPLICATION_JSON).buildGet());
+                return findApplication(response);
+            }
+        }, COPY);
+    }
+
+    /**
+     * Non-blocking getApplication, see UibAsync. Shares the UIB call with concurrent getApplication calls.
+     */
+    public ListenableFuture<Application> getApplicationAsync(String userAdminServiceTokenId, String userTokenId, String applicationId) {
+        final WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + userTokenId + "/application/" + applicationId);
+        return singleFlight.callAsync(SingleFlight.key("getApplication", applicationId, userTokenId), new Supplier<ListenableFuture<Application>>() {
+            @Override
+            public ListenableFuture<Application> get() {
+                return Futures.transform(uibGuard.executeAsync(UibOperation.APPLICATION, "getApplicationAsync", webResource.request(MediaType.APPLICATION_JSON)), new Function<Response, Application>() {
+                    @Override
+                    public Application apply(Response response) {
+                        return findApplication(response);
+                    }
+                });
+            }
+        }, COPY);
+    }
+
+    /**
+     * All applications in UIB, for ApplicationCatalogue.
+     */
+    public List<Application> listApplications(String userAdminServiceTokenId, String userTokenId) {
+        WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + userTokenId + "/applications");
+        Response response = uibGuard.execute(UibOperation.APPLICATION, "listApplications", webResource.request(MediaType.APPLICATION_JSON).buildGet());
+        int statusCode = response.getStatus();
+        switch (statusCode) {
+            case STATUS_OK:
+                return Application.fromJsonList(response.readEntity(String.class));
+            case STATUS_BAD_REQUEST:
+                log.error("Response from UIB: {}: {}", response.getStatus(), response.readEntity(String.class));
+                throw new BadRequestException("BadRequest listing applications,  Status code " + response.getStatus());
+            default:
+                log.error("Response from UIB: {}: {}", response.getStatus(), response.readEntity(String.class));
+                throw new AuthenticationFailedException("Authentication failed. Status code " + response.getStatus());
+        }
+    }
+
+    private Application findApplication(Response response) {
         Application application = null;
-        Response response = webResource.request(MediaType.APPLICATION_JSON).get();
         int statusCode = response.getStatus();
         switch (statusCode) {
             case STATUS_OK:
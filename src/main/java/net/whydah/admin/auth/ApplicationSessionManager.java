@@ -0,0 +1,127 @@
+package net.whydah.admin.auth;
+
+import net.whydah.admin.CredentialStore;
+import net.whydah.admin.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the UserAdminService application session with STS alive, and its token id in CredentialStore.
+ *
+ * UAS logs on with applicationid and applicationsecret at startup, and logs on again in the background
+ * renewBeforeSeconds before the session expires. The new token id replaces the old one in one write, so request
+ * threads never wait for a logon. When a logon fails, the current token id is kept and logon is retried every
+ * retrySeconds. Until the first logon succeeds, requests that call UIB are answered with 503, see CredentialStore.
+ */
+@Component
+public class ApplicationSessionManager {
+    private static final Logger log = LoggerFactory.getLogger(ApplicationSessionManager.class);
+    private static final int DEFAULT_RENEW_BEFORE_SECONDS = 120;
+    private static final int DEFAULT_RETRY_SECONDS = 10;
+    private static final long MIN_RENEW_DELAY_MS = 1000;
+
+    private final CredentialStore credentialStore;
+    private final TokenServiceConnection tokenServiceConnection;
+    private final String applicationId;
+    private final String applicationName;
+    private final String applicationSecret;
+    private final long renewBeforeMillis;
+    private final long retryMillis;
+    private final ScheduledExecutorService renewal;
+
+    private volatile Date expires;
+    private volatile long lastLogonMillis;
+
+    @Autowired
+    public ApplicationSessionManager(CredentialStore credentialStore, TokenServiceConnection tokenServiceConnection,
+                                     AppConfig appConfig) {
+        this(credentialStore, tokenServiceConnection, appConfig.getProperty("applicationid"),
+                appConfig.getProperty("applicationname"), appConfig.getProperty("applicationsecret"),
+                appConfig.getIntProperty("session.renewBeforeSeconds", DEFAULT_RENEW_BEFORE_SECONDS),
+                appConfig.getIntProperty("session.retrySeconds", DEFAULT_RETRY_SECONDS));
+        if (tokenServiceConnection.isConfigured()) {
+            scheduleLogon(0);
+        } else {
+            log.error("securitytokenservice is not set. UserAdminService cannot log on to STS, and every request that calls UIB is answered with 503");
+        }
+    }
+
+    ApplicationSessionManager(CredentialStore credentialStore, TokenServiceConnection tokenServiceConnection,
+                              String applicationId, String applicationName, String applicationSecret,
+                              long renewBeforeSeconds, long retrySeconds) {
+        this.credentialStore = credentialStore;
+        this.tokenServiceConnection = tokenServiceConnection;
+        this.applicationId = applicationId;
+        this.applicationName = applicationName;
+        this.applicationSecret = applicationSecret;
+        this.renewBeforeMillis = TimeUnit.SECONDS.toMillis(renewBeforeSeconds);
+        this.retryMillis = TimeUnit.SECONDS.toMillis(retrySeconds);
+        renewal = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "uas-session-renewal");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private void scheduleLogon(long delayMillis) {
+        renewal.schedule(new Runnable() {
+            @Override
+            public void run() {
+                scheduleLogon(logon());
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Log on to STS and publish the new token id.
+     * @return milliseconds until the next logon.
+     */
+    long logon() {
+        WhydahLogonToken token;
+        try {
+            token = WhydahLogonToken.fromXml(tokenServiceConnection.logonApplication(applicationId, applicationName, applicationSecret));
+        } catch (RuntimeException e) {
+            log.warn("Logon of applicationid={} to STS failed, retry in {} ms. {}", applicationId, retryMillis, e.getMessage());
+            return retryMillis;
+        }
+        String tokenId = token.getApplicationtokenID();
+        if (tokenId == null || tokenId.isEmpty() || token.isExpired()) {
+            log.warn("STS logon of applicationid={} returned no valid applicationtoken, retry in {} ms", applicationId, retryMillis);
+            return retryMillis;
+        }
+        credentialStore.setUserAdminServiceTokenId(tokenId);
+        expires = token.getExpires();
+        lastLogonMillis = System.currentTimeMillis();
+        long renewIn = Math.max(MIN_RENEW_DELAY_MS, expires.getTime() - lastLogonMillis - renewBeforeMillis);
+        log.info("Logged on to STS as applicationid={}, session expires {}, renewing in {} ms", applicationId, expires, renewIn);
+        return renewIn;
+    }
+
+    /**
+     * @return expires of the current session, null before the first logon.
+     */
+    public Date getExpires() {
+        return expires;
+    }
+
+    public long getLastLogonMillis() {
+        return lastLogonMillis;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renewal.shutdownNow();
+    }
+}
@@ -1,11 +1,18 @@
 package net.whydah.admin.auth;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.uib.UibAsync;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -18,10 +25,12 @@ public class LogonController {
     private static final Logger log = LoggerFactory.getLogger(LogonController.class);
 
     private final UibAuthConnection uibAuthConnection;
+    private final UibAsync uibAsync;
 
     @Autowired
-    public LogonController(UibAuthConnection uibAuthConnection) {
+    public LogonController(UibAuthConnection uibAuthConnection, UibAsync uibAsync) {
         this.uibAuthConnection = uibAuthConnection;
+        this.uibAsync = uibAsync;
     }
 
     @POST
@@ -29,7 +38,7 @@ public class LogonController {
     @Consumes(MediaType.APPLICATION_XML)
     @Produces(MediaType.APPLICATION_XML)
     public Response logon(@PathParam("applicationtokenid") String applicationTokenId, String usercredentialsXml) {
-        log.trace("logon is called with usercredentialsXml={}", usercredentialsXml);
+        log.trace("logon is called with usercredentialsXml={}", PayloadLog.of(usercredentialsXml));
         String userToken = bulidStubUserToken();
             return Response.ok(userToken).build();
         //FIXME real implementation to UIB.
@@ -39,17 +48,34 @@ public class LogonController {
     @Path("/logon/user")
     @Consumes(MediaType.APPLICATION_XML)
     @Produces(MediaType.APPLICATION_XML)
-    public Response logonUser(@PathParam("applicationtokenid") String applicationTokenId, String userCredentialsXml) {
-        log.trace("logon is called with usercredentialsXml={}", userCredentialsXml);
+    public void logonUser(@PathParam("applicationtokenid") String applicationTokenId, String userCredentialsXml,
+                          @Suspended final AsyncResponse asyncResponse) {
+        log.trace("logon is called with usercredentialsXml={}", PayloadLog.of(userCredentialsXml));
 
         // TODO This method should only be available for STS to use...
         if (!isSTS()) {
-            return Response.status(Response.Status.FORBIDDEN).build();
+            asyncResponse.resume(Response.status(Response.Status.FORBIDDEN).build());
+            return;
         }
 
+        uibAsync.suspend(asyncResponse);
+        Futures.addCallback(uibAuthConnection.logonUserAsync(applicationTokenId, userCredentialsXml), new FutureCallback<String>() {
+            @Override
+            public void onSuccess(String userXml) {
+                asyncResponse.resume(Response.ok(userXml).build());
+            }
 
-        String userXml = uibAuthConnection.logonUser(applicationTokenId, userCredentialsXml);
-        return Response.ok(userXml).build();
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof ConnectionFailedException) {
+                    log.warn("logonUser: UIB request failed", t);
+                    asyncResponse.resume(UibAsync.unavailable((ConnectionFailedException) t));
+                } else {
+                    // Same as an exception thrown from a synchronous resource method
+                    asyncResponse.resume(t);
+                }
+            }
+        });
     }
 
 
@@ -0,0 +1,136 @@
+package net.whydah.admin.auth;
+
+import com.google.common.xml.XmlEscapers;
+import net.whydah.admin.AuthenticationFailedException;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.uib.UibClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Logon of UAS to SecurityTokenService, and validation of application and user tokens.
+ *
+ * Calls go through the pooled http client of UibClient. Use TokenValidationCache rather than validating directly,
+ * and ApplicationSessionManager rather than logging on directly.
+ */
+@Component
+public class TokenServiceConnection {
+    private static final Logger log = LoggerFactory.getLogger(TokenServiceConnection.class);
+    private static final int STATUS_OK = 200;
+
+    private final WebTarget sts;
+
+    @Autowired
+    public TokenServiceConnection(UibClient uibClient, AppConfig appConfig) {
+        String stsUrl = appConfig.getProperty("securitytokenservice");
+        sts = stsUrl == null || stsUrl.trim().isEmpty() ? null : uibClient.getClient().target(stsUrl.trim());
+        log.info("Token validation against SecurityTokenService on {}", stsUrl);
+    }
+
+    public boolean isConfigured() {
+        return sts != null;
+    }
+
+    /**
+     * POST {sts}/logon, log this application on to STS.
+     * @return the applicationtoken xml.
+     * @throws AuthenticationFailedException when STS did not accept the credential.
+     * @throws ConnectionFailedException when STS could not be reached, or answered with 5xx.
+     */
+    public String logonApplication(String applicationId, String applicationName, String applicationSecret) {
+        String applicationCredential = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+                "<applicationcredential><params>" +
+                "<applicationID>" + escape(applicationId) + "</applicationID>" +
+                "<applicationName>" + escape(applicationName) + "</applicationName>" +
+                "<applicationSecret>" + escape(applicationSecret) + "</applicationSecret>" +
+                "</params></applicationcredential>";
+        Form form = new Form("applicationcredential", applicationCredential);
+        Response response;
+        try {
+            response = sts.path("logon").request(MediaType.APPLICATION_XML)
+                    .post(Entity.form(form));
+        } catch (ProcessingException e) {
+            throw new ConnectionFailedException("Logon to SecurityTokenService failed", e);
+        }
+        String body = response.readEntity(String.class);
+        int status = response.getStatus();
+        if (status == STATUS_OK) {
+            return body;
+        }
+        log.warn("Logon response from STS: {}: {}", status, body);
+        if (status >= 500) {
+            throw new ConnectionFailedException("Logon to SecurityTokenService failed. Status code " + status);
+        }
+        throw new AuthenticationFailedException("Application logon not accepted by STS. Status code " + status);
+    }
+
+    /**
+     * GET {sts}/{applicationtokenid}/validate
+     * @return the token when valid, carrying expires if STS answered with the applicationtoken xml. Null when invalid.
+     * @throws ConnectionFailedException when STS could not be reached, or answered with 5xx.
+     */
+    public WhydahLogonToken validateApplicationToken(String applicationTokenId) {
+        WebTarget validate = sts.path(applicationTokenId).path("validate");
+        String body = get(validate);
+        if (body == null) {
+            return null;
+        }
+        String trimmed = body.trim();
+        if (trimmed.startsWith("<")) {
+            WhydahLogonToken token = WhydahLogonToken.fromXml(trimmed);
+            return applicationTokenId.equals(token.getApplicationtokenID()) ? token : null;
+        }
+        return isTrue(trimmed) ? WhydahLogonToken.withoutExpiry(applicationTokenId) : null;
+    }
+
+    /**
+     * GET {sts}/user/{applicationtokenid}/validate_usertokenid/{usertokenid}
+     * @throws ConnectionFailedException when STS could not be reached, or answered with 5xx.
+     */
+    public boolean validateUserToken(String applicationTokenId, String userTokenId) {
+        WebTarget validate = sts.path("user").path(applicationTokenId).path("validate_usertokenid").path(userTokenId);
+        String body = get(validate);
+        return body != null && isTrue(body);
+    }
+
+    /**
+     * @return the response body on 200, null on other 4xx responses.
+     */
+    private String get(WebTarget target) {
+        Response response;
+        try {
+            response = target.request().get();
+        } catch (ProcessingException e) {
+            throw new ConnectionFailedException("Request to SecurityTokenService failed", e);
+        }
+        String body = response.readEntity(String.class);
+        int status = response.getStatus();
+        if (status == STATUS_OK) {
+            return body;
+        }
+        if (status >= 500) {
+            log.warn("Response from STS: {}: {}", status, body);
+            throw new ConnectionFailedException("SecurityTokenService failed. Status code " + status);
+        }
+        log.trace("Token not valid, response from STS: {}: {}", status, body);
+        return null;
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : XmlEscapers.xmlContentEscaper().escape(value);
+    }
+
+    private static boolean isTrue(String body) {
+        return body.replace(" ", "").contains("\"result\":\"true\"") || "true".equalsIgnoreCase(body.trim());
+    }
+}
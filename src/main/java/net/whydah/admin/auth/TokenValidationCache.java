@@ -0,0 +1,187 @@
+package net.whydah.admin.auth;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import net.whydah.admin.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of token validations, so a request costs a call to STS only the first time a token is seen.
+ *
+ * A valid application token is cached until the expires time in its WhydahLogonToken, at most maxTtlSeconds. A valid
+ * user token is cached at most userTokenTtlSeconds, and never longer than the application token it was checked
+ * with. Invalid tokens are cached negativeTtlSeconds. Concurrent lookups of the same token wait for one STS call.
+ * STS errors are not cached.
+ */
+@Component
+public class TokenValidationCache {
+    private static final Logger log = LoggerFactory.getLogger(TokenValidationCache.class);
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final int DEFAULT_MAX_TTL_SECONDS = 3600;
+    private static final int DEFAULT_USER_TOKEN_TTL_SECONDS = 300;
+    private static final int DEFAULT_NEGATIVE_TTL_SECONDS = 10;
+
+    /**
+     * Wall clock, as expires in WhydahLogonToken is wall clock time.
+     */
+    private static final Ticker WALL_CLOCK = new Ticker() {
+        @Override
+        public long read() {
+            return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        }
+    };
+
+    private final TokenServiceConnection tokenServiceConnection;
+    private final Ticker ticker;
+    private final long maxTtlMillis;
+    private final long userTokenTtlMillis;
+    private final long negativeTtlMillis;
+    private final Cache<String, Validation> cache;
+
+    @Autowired
+    public TokenValidationCache(TokenServiceConnection tokenServiceConnection, AppConfig appConfig) {
+        this(tokenServiceConnection, WALL_CLOCK,
+                appConfig.getIntProperty("token.cache.maxSize", DEFAULT_MAX_SIZE),
+                appConfig.getIntProperty("token.cache.maxTtlSeconds", DEFAULT_MAX_TTL_SECONDS),
+                appConfig.getIntProperty("token.cache.userTokenTtlSeconds", DEFAULT_USER_TOKEN_TTL_SECONDS),
+                appConfig.getIntProperty("token.cache.negativeTtlSeconds", DEFAULT_NEGATIVE_TTL_SECONDS));
+    }
+
+    TokenValidationCache(TokenServiceConnection tokenServiceConnection, Ticker ticker, long maxSize, long maxTtlSeconds,
+                         long userTokenTtlSeconds, long negativeTtlSeconds) {
+        log.info("Token validation cache maxSize={}, maxTtlSeconds={}, userTokenTtlSeconds={}, negativeTtlSeconds={}",
+                maxSize, maxTtlSeconds, userTokenTtlSeconds, negativeTtlSeconds);
+        this.tokenServiceConnection = tokenServiceConnection;
+        this.ticker = ticker;
+        this.maxTtlMillis = TimeUnit.SECONDS.toMillis(maxTtlSeconds);
+        this.userTokenTtlMillis = TimeUnit.SECONDS.toMillis(userTokenTtlSeconds);
+        this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(negativeTtlSeconds);
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxTtlSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @throws net.whydah.admin.ConnectionFailedException when the token is not cached and STS could not be reached.
+     */
+    public boolean isValidApplicationToken(String applicationTokenId) {
+        return applicationTokenValidation(applicationTokenId).isValid();
+    }
+
+    /**
+     * @return the applicationid of a valid application token, null when the token is not valid.
+     * @throws net.whydah.admin.ConnectionFailedException when the token is not cached and STS could not be reached.
+     */
+    public String applicationIdOf(String applicationTokenId) {
+        Validation validation = applicationTokenValidation(applicationTokenId);
+        return validation.isValid() ? validation.applicationId : null;
+    }
+
+    /**
+     * The user token is validated in the context of the application token, so the application token must be valid too.
+     * @throws net.whydah.admin.ConnectionFailedException when the token is not cached and STS could not be reached.
+     */
+    public boolean isValidUserToken(final String applicationTokenId, final String userTokenId) {
+        final Validation applicationToken = applicationTokenValidation(applicationTokenId);
+        if (!applicationToken.isValid()) {
+            return false;
+        }
+        return lookup("user:" + applicationTokenId + "/" + userTokenId, new Callable<Validation>() {
+            @Override
+            public Validation call() {
+                if (!tokenServiceConnection.validateUserToken(applicationTokenId, userTokenId)) {
+                    return invalid();
+                }
+                return new Validation(true, Math.min(applicationToken.expiresAtMillis, now() + userTokenTtlMillis));
+            }
+        }).isValid();
+    }
+
+    private Validation applicationTokenValidation(final String applicationTokenId) {
+        return lookup("app:" + applicationTokenId, new Callable<Validation>() {
+            @Override
+            public Validation call() {
+                WhydahLogonToken token = tokenServiceConnection.validateApplicationToken(applicationTokenId);
+                if (token == null) {
+                    return invalid();
+                }
+                long maxExpiresAt = now() + maxTtlMillis;
+                long expiresAt = token.getExpires().getTime();
+                if (expiresAt <= 0 || expiresAt > maxExpiresAt) {
+                    expiresAt = maxExpiresAt;
+                }
+                return expiresAt > now() ? new Validation(true, expiresAt, token.getApplicationid()) : invalid();
+            }
+        });
+    }
+
+    private Validation lookup(String key, Callable<Validation> validator) {
+        Validation validation = cache.getIfPresent(key);
+        if (validation != null && validation.expiresAtMillis <= now()) {
+            // Expired before maxTtl, at the expires time of the token
+            cache.asMap().remove(key, validation);
+        }
+        try {
+            return cache.get(key, validator);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Token validation failed", e.getCause());
+        }
+    }
+
+    private Validation invalid() {
+        return new Validation(false, now() + negativeTtlMillis);
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static class Validation {
+        private final boolean valid;
+        private final long expiresAtMillis;
+        /** Of an application token, null for user tokens. */
+        private final String applicationId;
+
+        Validation(boolean valid, long expiresAtMillis) {
+            this(valid, expiresAtMillis, null);
+        }
+
+        Validation(boolean valid, long expiresAtMillis, String applicationId) {
+            this.valid = valid;
+            this.expiresAtMillis = expiresAtMillis;
+            this.applicationId = applicationId;
+        }
+
+        boolean isValid() {
+            return valid;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package net.whydah.admin.auth;
+
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.MisconfigurationExeption;
+import net.whydah.admin.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Rejects requests with an invalid {applicationtokenid}, or an invalid {userTokenId}, before they reach a resource.
+ *
+ * Runs after matching, so the tokens are read from the path parameters of the matched resource. Requests without
+ * an applicationtokenid, like /status, pass. Invalid tokens are answered with 401, and 503 when STS could not be
+ * reached to validate a token that was not cached.
+ *
+ * Only checks that the tokens are valid. Whether the user may do the operation is still up to the hasAccess methods
+ * of the services, which allow everything so far.
+ *
+ * Enable with token.validation.enabled=true, securitytokenservice must then be set. Disabled in all profiles.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION)
+@Component
+public class TokenValidationFilter implements ContainerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(TokenValidationFilter.class);
+    static final String APPLICATION_TOKEN_ID = "applicationtokenid";
+    static final String USER_TOKEN_ID = "userTokenId";
+
+    private final TokenValidationCache tokenValidationCache;
+    private final boolean enabled;
+
+    @Autowired
+    public TokenValidationFilter(TokenValidationCache tokenValidationCache, TokenServiceConnection tokenServiceConnection,
+                                 AppConfig appConfig) {
+        this(tokenValidationCache, Boolean.parseBoolean(appConfig.getProperty("token.validation.enabled", "false")));
+        if (enabled && !tokenServiceConnection.isConfigured()) {
+            throw new MisconfigurationExeption("token.validation.enabled=true needs securitytokenservice to be set");
+        }
+        log.info("Token validation enabled={}", enabled);
+    }
+
+    TokenValidationFilter(TokenValidationCache tokenValidationCache, boolean enabled) {
+        this.tokenValidationCache = tokenValidationCache;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        if (!enabled) {
+            return;
+        }
+        MultivaluedMap<String, String> pathParameters = requestContext.getUriInfo().getPathParameters();
+        String applicationTokenId = pathParameters.getFirst(APPLICATION_TOKEN_ID);
+        if (applicationTokenId == null) {
+            return;
+        }
+        String userTokenId = pathParameters.getFirst(USER_TOKEN_ID);
+        try {
+            boolean valid = userTokenId == null
+                    ? tokenValidationCache.isValidApplicationToken(applicationTokenId)
+                    : tokenValidationCache.isValidUserToken(applicationTokenId, userTokenId);
+            if (!valid) {
+                log.debug("Invalid token, rejected {} {}", requestContext.getMethod(), requestContext.getUriInfo().getPath());
+                requestContext.abortWith(Response.status(Response.Status.UNAUTHORIZED).build());
+            }
+        } catch (ConnectionFailedException e) {
+            log.warn("Could not validate token, {}", e.getMessage());
+            requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+        }
+    }
+}
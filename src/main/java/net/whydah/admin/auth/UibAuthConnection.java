@@ -1,7 +1,12 @@
 package net.whydah.admin.auth;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import net.whydah.admin.AuthenticationFailedException;
-import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.uib.UibClient;
+import net.whydah.admin.uib.UibGuard;
+import net.whydah.admin.uib.UibOperation;
 import org.glassfish.jersey.client.ClientResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,8 +14,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.ws.rs.BadRequestException;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
@@ -28,18 +31,34 @@ public class UibAuthConnection {
     private static final int STATUS_OK = 200; //Response.Status.OK.getStatusCode();
 
     private final WebTarget uib;
+    private final UibGuard uibGuard;
 
     @Autowired
-    public UibAuthConnection(AppConfig appConfig) {
-        Client client = ClientBuilder.newClient();
-        String uibUrl = appConfig.getProperty("useridentitybackend");
-        log.info("Connection to UserIdentityBackend on {}" , uibUrl);
-        uib = client.target(uibUrl);
+    public UibAuthConnection(UibClient uibClient, UibGuard uibGuard) {
+        uib = uibClient.target();
+        this.uibGuard = uibGuard;
     }
 
     public String logonUser(String userAdminServiceTokenId, String userCredentialsXml) {
         WebTarget logonUserResource = uib.path("/" + userAdminServiceTokenId).path("authenticate/user");
-        Response response = logonUserResource.request(MediaType.APPLICATION_XML).get();
+        Response response = uibGuard.execute(UibOperation.AUTH, "logonUser", logonUserResource.request(MediaType.APPLICATION_XML).buildGet());
+        return findUserXml(response);
+    }
+
+    /**
+     * Non-blocking logonUser, see UibAsync.
+     */
+    public ListenableFuture<String> logonUserAsync(String userAdminServiceTokenId, String userCredentialsXml) {
+        WebTarget logonUserResource = uib.path("/" + userAdminServiceTokenId).path("authenticate/user");
+        return Futures.transform(uibGuard.executeAsync(UibOperation.AUTH, "logonUserAsync", logonUserResource.request(MediaType.APPLICATION_XML)), new Function<Response, String>() {
+            @Override
+            public String apply(Response response) {
+                return findUserXml(response);
+            }
+        });
+    }
+
+    private String findUserXml(Response response) {
         int statusCode = response.getStatus();
         String userXml = null;
         switch (statusCode) {
@@ -61,7 +80,7 @@ public class UibAuthConnection {
 
     public String resetPassword(String userAdminServiceTokenId, String username) {
         WebTarget resetPasswordResource = uib.path("password").path(userAdminServiceTokenId).path("reset/username").path(username);
-        Response response = resetPasswordResource.request(MediaType.APPLICATION_XML).post(Entity.entity("",MediaType.APPLICATION_XML_TYPE));
+        Response response = uibGuard.execute(UibOperation.AUTH, "resetPassword", resetPasswordResource.request(MediaType.APPLICATION_XML).buildPost(Entity.entity("",MediaType.APPLICATION_XML_TYPE)));
         int statusCode = response.getStatus();
         String output = response.readEntity(String.class);
         switch (statusCode) {
@@ -82,7 +101,7 @@ public class UibAuthConnection {
     public String setPasswordByToken(String userAdminServiceTokenId, String username,String passwordToken,String password) {
         WebTarget resetPasswordResource = uib.path("password").path(userAdminServiceTokenId).path("reset/username").path(username).path("newpassword").path(passwordToken);
 
-        Response response = resetPasswordResource.request(MediaType.APPLICATION_XML).post(Entity.entity("{\"newpassword\":\"" + password + "\"}",MediaType.MULTIPART_FORM_DATA));
+        Response response = uibGuard.execute(UibOperation.AUTH, "setPasswordByToken", resetPasswordResource.request(MediaType.APPLICATION_XML).buildPost(Entity.entity("{\"newpassword\":\"" + password + "\"}",MediaType.MULTIPART_FORM_DATA)));
         int statusCode = response.getStatus();
         String output = response.readEntity(String.class);
         switch (statusCode) {
@@ -1,5 +1,10 @@
 package net.whydah.admin.auth;
 
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.metrics.LatencyHistogram;
+import net.whydah.admin.metrics.Metrics;
+import net.whydah.admin.xml.StaxXmlDocument;
+import net.whydah.admin.xml.XmlParsing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -23,6 +28,7 @@ import java.util.Date;
 @XmlRootElement(name = "applicationtoken")
 public class WhydahLogonToken {
     private static final Logger log = LoggerFactory.getLogger(WhydahLogonToken.class);
+    private static final LatencyHistogram FROM_XML_TIME = Metrics.codec("WhydahLogonToken.fromXml");
 
 	private WhydahTokenParams params;
 
@@ -66,9 +72,43 @@ public class WhydahLogonToken {
 		return params == null ? true : params.expires == null ? true : params.expires.before(new Date());
 	}
 
+    /**
+     * A valid token where STS did not tell when it expires, getExpires() returns new Date(0).
+     */
+    static WhydahLogonToken withoutExpiry(String applicationTokenId) {
+        WhydahLogonToken logonToken = new WhydahLogonToken();
+        logonToken.getParams().setApplicationtokenID(applicationTokenId);
+        return logonToken;
+    }
+
     public static WhydahLogonToken fromXml(String logonResult) {
-        log.trace("Try to build xml from {}", logonResult);
+        try (LatencyHistogram.Timer timer = FROM_XML_TIME.time()) {
+            log.trace("Try to build xml from {}", PayloadLog.of(logonResult));
+            if (XmlParsing.useStax()) {
+                return fromXmlStax(logonResult);
+            }
+            return fromXmlDom(logonResult);
+        }
+    }
+
+    private static WhydahLogonToken fromXmlStax(String logonResult) {
+        WhydahLogonToken logonToken = new WhydahLogonToken();
+        try {
+            StaxXmlDocument doc = StaxXmlDocument.parse(logonResult);
+            logonToken.getParams().setApplicationtokenID(doc.evaluate("/applicationtoken/params/applicationtokenID"));
+            logonToken.getParams().setApplicationid(doc.evaluate("/applicationtoken/params/applicationid"));
+            logonToken.getParams().setApplicationname(doc.evaluate("/applicationtoken/params/applicationname"));
+            String expires = doc.evaluate("/applicationtoken/params/expires");
+            if (expires != null && !expires.isEmpty()) {
+                logonToken.getParams().setExpires(new Date(Long.parseLong(expires)));
+            }
+        } catch (Exception e) {
+            log.warn("Could not create an WhydahLogonToken from this xml {}", PayloadLog.of(logonResult), e);
+        }
+        return logonToken;
+    }
 
+    private static WhydahLogonToken fromXmlDom(String logonResult) {
         WhydahLogonToken logonToken = new WhydahLogonToken();
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         try {
@@ -101,7 +141,7 @@ public class WhydahLogonToken {
 
 
         } catch (Exception e) {
-            log.warn("Could not create an WhydahLogonToken from this xml {}", logonResult, e);
+            log.warn("Could not create an WhydahLogonToken from this xml {}", PayloadLog.of(logonResult), e);
         }
         return logonToken;
     }
@@ -24,6 +24,30 @@ public class AppConfig {
         return properties.getProperty(key);
     }
 
+    public String getProperty(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    public int getIntProperty(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Property {}={} is not a number, using default {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return configured execution.mode, PLATFORM when not set or not supported by this JVM.
+     */
+    public ExecutionMode getExecutionMode() {
+        return ExecutionMode.fromProperty(properties.getProperty(ExecutionMode.EXECUTION_MODE_KEY));
+    }
+
     public AppConfig() {
         try {
             properties = readProperties(ApplicationMode.getApplicationMode());
@@ -0,0 +1,68 @@
+package net.whydah.admin.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Which threads serve requests and run blocking UIB calls.
+ *
+ * PLATFORM - Jetty QueuedThreadPool and the Jersey client async pool (default).
+ * VIRTUAL - one virtual thread per task. Needs Java 21 or newer, otherwise PLATFORM is used.
+ *
+ * Select with execution.mode=platform|virtual in useradminservice.*.properties.
+ */
+public enum ExecutionMode {
+    PLATFORM, VIRTUAL;
+
+    public static final String EXECUTION_MODE_KEY = "execution.mode";
+    private static final Logger log = LoggerFactory.getLogger(ExecutionMode.class);
+
+    static ExecutionMode fromProperty(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return PLATFORM;
+        }
+        ExecutionMode mode;
+        try {
+            mode = valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown {}={}, using {}", EXECUTION_MODE_KEY, value, PLATFORM);
+            return PLATFORM;
+        }
+        if (mode == VIRTUAL && !virtualThreadsAvailable()) {
+            log.warn("{}={} needs Java 21 or newer, running on Java {}. Using {}", EXECUTION_MODE_KEY, value,
+                    System.getProperty("java.version"), PLATFORM);
+            return PLATFORM;
+        }
+        return mode;
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A new executor starting a virtual thread per task. The caller owns it and shuts it down.
+     * @return null when virtual threads are not available in this JVM.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // Reflection, so we still compile and run on Java 7 and 8
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            log.warn("Could not create virtual thread executor", e);
+            return null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package net.whydah.admin.createlogon;
 
 import net.whydah.admin.AuthenticationFailedException;
+import net.whydah.admin.logging.PayloadLog;
 import net.whydah.admin.user.uib.UserAggregate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,14 +61,14 @@ public class CreateLogonUserController {
     @Consumes({MediaType.APPLICATION_XML})
     @Produces({MediaType.APPLICATION_XML})
     public Response createAndLogonUser(@PathParam("applicationtokenid") String applicationtokenid, @PathParam("usertokenid") String userTokenId, String fbUserXml ) {
-        log.trace("Try to create user from facebookUserXml {}", fbUserXml);
+        log.trace("Try to create user from facebookUserXml {}", PayloadLog.of(fbUserXml));
         Response response = null;
         String userCreatedXml = null;
         try {
             userCreatedXml = uibConnection.createUser(applicationtokenid, fbUserXml);
             response = Response.ok(userCreatedXml).build();
         } catch (AuthenticationFailedException e) {
-            log.trace("Failed to create user with applicationtokenid {}, facebookUserXml: {}", applicationtokenid, fbUserXml);
+            log.trace("Failed to create user with applicationtokenid {}, facebookUserXml: {}", applicationtokenid, PayloadLog.of(fbUserXml));
             response = Response.serverError().build();
         }
         return response;
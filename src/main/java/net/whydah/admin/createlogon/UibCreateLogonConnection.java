@@ -1,14 +1,14 @@
 package net.whydah.admin.createlogon;
 
 import net.whydah.admin.ConnectionFailedException;
-import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.uib.UibClient;
+import net.whydah.admin.uib.UibGuard;
+import net.whydah.admin.uib.UibOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
@@ -27,26 +27,27 @@ public class UibCreateLogonConnection {
 
 
     private final WebTarget uibService;
+    private final UibGuard uibGuard;
 
     @Autowired
-    public UibCreateLogonConnection(AppConfig appConfig) {
-        Client client = ClientBuilder.newClient();
-        String uibUrl = appConfig.getProperty("useridentitybackend");
-        log.info("Connection to UserIdentityBackend on {}" , uibUrl);
-        uibService = client.target(uibUrl);
+    public UibCreateLogonConnection(UibClient uibClient, UibGuard uibGuard) {
+        uibService = uibClient.target();
+        this.uibGuard = uibGuard;
     }
 
     public String createUser(String applicationTokenId, String fbUserXml) {
 
         WebTarget webResource = uibService.path("/" + applicationTokenId).path(USER_AUTHENTICATION_PATH).path(CREATE_AND_LOGON_OPERATION);
         log.debug("URI to use {}",webResource.getUri());
-        Response response = webResource.request(MediaType.APPLICATION_XML).post(Entity.entity(fbUserXml, MediaType.APPLICATION_XML));
+        Response response = uibGuard.execute(UibOperation.AUTH, "createUser", webResource.request(MediaType.APPLICATION_XML).buildPost(Entity.entity(fbUserXml, MediaType.APPLICATION_XML)));
         int statusCode = response.getStatus();
+        // Always read the entity, so the pooled connection is released.
+        String responseBody = response.readEntity(String.class);
         if (statusCode != 200) {
-            log.info("Request to UIB failed status {}, response {}", statusCode, response.getEntity());
-            throw new ConnectionFailedException("Error creating user based on facebookUserXml {" + fbUserXml + "}, Response: {"+response.getEntity() +"}, Status {"+ statusCode +"}");
+            log.info("Request to UIB failed status {}, response {}", statusCode, responseBody);
+            throw new ConnectionFailedException("Error creating user based on facebookUserXml {" + fbUserXml + "}, Response: {"+ responseBody +"}, Status {"+ statusCode +"}");
         }
-        return response.getEntity().toString();
+        return responseBody;
 
     }
 }
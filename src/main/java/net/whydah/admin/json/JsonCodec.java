@@ -0,0 +1,55 @@
+package net.whydah.admin.json;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.ObjectWriter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One shared, pre-configured Jackson mapper for the whole service.
+ *
+ * ObjectReader and ObjectWriter are immutable and thread safe, so one instance per type is created on first use
+ * and reused. Serializer and deserializer caches then stay warm instead of being rebuilt by every new ObjectMapper.
+ * The shared mapper must not be reconfigured after startup.
+ */
+public final class JsonCodec {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private JsonCodec() {
+    }
+
+    public static ObjectReader reader(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = mapper.reader(type);
+            ObjectReader existing = readers.putIfAbsent(type, reader);
+            if (existing != null) {
+                reader = existing;
+            }
+        }
+        return reader;
+    }
+
+    public static ObjectWriter writer(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        if (writer == null) {
+            writer = mapper.writerWithType(type);
+            ObjectWriter existing = writers.putIfAbsent(type, writer);
+            if (existing != null) {
+                writer = existing;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * For code that needs the tree model or streaming parsers. Do not change its configuration.
+     */
+    public static ObjectMapper mapper() {
+        return mapper;
+    }
+}
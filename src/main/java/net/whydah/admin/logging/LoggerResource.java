@@ -0,0 +1,213 @@
+package net.whydah.admin.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.auth.TokenServiceConnection;
+import net.whydah.admin.auth.TokenValidationCache;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.json.JsonCodec;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Change logger levels without a restart, to turn on tracing in PROD for a while.
+ *
+ * PUT /{applicationtokenid}/loggers/net.whydah.admin.user?level=TRACE&seconds=300 sets the level, and puts the
+ * previous level back after the given seconds (default 600, 0 to keep the new level). level=INHERITED clears the
+ * level of the logger, except for ROOT, which must have a level.
+ *
+ * Only applications listed in logging.admin.applicationIds may read or change levels. The application token is
+ * validated against SecurityTokenService here, whether TokenValidationFilter is enabled or not, so the endpoint is
+ * closed when securitytokenservice is not set.
+ */
+@Path("/{applicationtokenid}/loggers")
+@Component
+public class LoggerResource {
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(LoggerResource.class);
+    private static final String INHERITED = "INHERITED";
+
+    private final TokenValidationCache tokenValidationCache;
+    private final Set<String> adminApplicationIds;
+
+    /** Pending reverts by logger name, guarded by itself. */
+    private final Map<String, Revert> reverts = new HashMap<>();
+    private final ScheduledExecutorService revertExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "logger-level-revert");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @Autowired
+    public LoggerResource(TokenValidationCache tokenValidationCache, TokenServiceConnection tokenServiceConnection, AppConfig appConfig) {
+        this(tokenServiceConnection.isConfigured() ? tokenValidationCache : null,
+                Splitter.on(',').trimResults().omitEmptyStrings().split(appConfig.getProperty("logging.admin.applicationIds", "")));
+        if (this.tokenValidationCache == null || adminApplicationIds.isEmpty()) {
+            log.info("Logger levels can not be changed, needs securitytokenservice and logging.admin.applicationIds");
+        } else {
+            log.info("Logger levels can be changed by applications {}", adminApplicationIds);
+        }
+    }
+
+    /**
+     * @param tokenValidationCache null to refuse every request.
+     */
+    LoggerResource(TokenValidationCache tokenValidationCache, Iterable<String> adminApplicationIds) {
+        this.tokenValidationCache = tokenValidationCache;
+        this.adminApplicationIds = ImmutableSet.copyOf(adminApplicationIds);
+    }
+
+    /**
+     * Loggers with a level set.
+     * {"ROOT":"INFO","net.whydah":"DEBUG"}
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getLevels(@PathParam("applicationtokenid") String applicationTokenId) {
+        Response forbidden = checkAdminApplication(applicationTokenId);
+        if (forbidden != null) {
+            return forbidden;
+        }
+        LoggerContext loggerContext = loggerContext();
+        if (loggerContext == null) {
+            return Response.status(Response.Status.NOT_IMPLEMENTED).build();
+        }
+        Map<String, String> levels = new LinkedHashMap<>();
+        for (Logger logger : loggerContext.getLoggerList()) {
+            if (logger.getLevel() != null) {
+                levels.put(logger.getName(), logger.getLevel().toString());
+            }
+        }
+        return json(levels);
+    }
+
+    @PUT
+    @Path("/{logger}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response setLevel(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("logger") final String name,
+                             @QueryParam("level") String levelName, @QueryParam("seconds") @DefaultValue("600") int seconds) {
+        Response forbidden = checkAdminApplication(applicationTokenId);
+        if (forbidden != null) {
+            return forbidden;
+        }
+        LoggerContext loggerContext = loggerContext();
+        if (loggerContext == null) {
+            return Response.status(Response.Status.NOT_IMPLEMENTED).build();
+        }
+        Level level = null;
+        if (levelName == null || (!INHERITED.equalsIgnoreCase(levelName) && (level = Level.toLevel(levelName, null)) == null)) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("level must be TRACE, DEBUG, INFO, WARN, ERROR, OFF or INHERITED").build();
+        }
+        if (level == null && Logger.ROOT_LOGGER_NAME.equalsIgnoreCase(name)) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("ROOT can not be INHERITED").build();
+        }
+        final Logger logger = loggerContext.getLogger(name);
+        synchronized (reverts) {
+            // A level set while a revert is pending is reverted to the level from before the first change
+            Revert pending = reverts.remove(name);
+            Level original = logger.getLevel();
+            if (pending != null) {
+                pending.future.cancel(false);
+                original = pending.original;
+            }
+            logger.setLevel(level);
+            log.warn("Logger {} set to {}, was {}, reverted in {} seconds", name, level, original, seconds);
+            if (seconds > 0) {
+                final Revert revert = new Revert(original);
+                revert.future = revertExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (reverts) {
+                            if (reverts.get(name) == revert) {
+                                reverts.remove(name);
+                                logger.setLevel(revert.original);
+                                log.warn("Logger {} reverted to {}", name, revert.original);
+                            }
+                        }
+                    }
+                }, seconds, TimeUnit.SECONDS);
+                reverts.put(name, revert);
+            }
+        }
+        return json(Collections.singletonMap(name, logger.getEffectiveLevel().toString()));
+    }
+
+    /**
+     * @return 403 when applicationTokenId is not a valid token of an admin application, null when it is.
+     */
+    private Response checkAdminApplication(String applicationTokenId) {
+        if (tokenValidationCache == null || adminApplicationIds.isEmpty()) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+        String applicationId;
+        try {
+            applicationId = tokenValidationCache.applicationIdOf(applicationTokenId);
+        } catch (ConnectionFailedException e) {
+            log.warn("Could not validate application token: {}", e.getMessage());
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        if (applicationId == null || !adminApplicationIds.contains(applicationId)) {
+            log.warn("Logger levels refused for application {}", applicationId);
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+        return null;
+    }
+
+    private static Response json(Map<String, String> levels) {
+        try {
+            return Response.ok(JsonCodec.mapper().writeValueAsString(levels)).build();
+        } catch (IOException e) {
+            log.warn("Could not create json from {}", levels, e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    private static LoggerContext loggerContext() {
+        ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+        return loggerFactory instanceof LoggerContext ? (LoggerContext) loggerFactory : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        revertExecutor.shutdownNow();
+    }
+
+    private static final class Revert {
+        private final Level original;
+        private ScheduledFuture<?> future;
+
+        private Revert(Level original) {
+            this.original = original;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package net.whydah.admin.logging;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Xml and json payloads for log statements, with passwords, secrets and tokens redacted and long payloads truncated.
+ *
+ * log.trace("addRole is called with roleXml {}", PayloadLog.of(roleXml)) does no work unless trace is enabled,
+ * as the payload is only redacted when the logger formats the message.
+ */
+public final class PayloadLog {
+    static final int MAX_CHARS = 2000;
+    static final String REDACTED = "***";
+    private static final String SECRET_NAME = "[\\w:.-]*(?:password|secret|credential|token)[\\w.-]*";
+    private static final Pattern XML_SECRET = Pattern.compile(
+            "<(" + SECRET_NAME + ")(\\s[^>]*)?>[^<]*</\\1>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern JSON_SECRET = Pattern.compile(
+            "(\"" + SECRET_NAME + "\"\\s*:\\s*)\"(?:[^\"\\\\]|\\\\.)*\"", Pattern.CASE_INSENSITIVE);
+
+    private PayloadLog() {
+    }
+
+    /**
+     * @return an object whose toString() is the redacted payload.
+     */
+    public static Object of(final String payload) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return redact(payload);
+            }
+        };
+    }
+
+    static String redact(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        Matcher xml = XML_SECRET.matcher(payload);
+        String redacted = xml.find() ? xml.replaceAll("<$1$2>" + REDACTED + "</$1>") : payload;
+        Matcher json = JSON_SECRET.matcher(redacted);
+        redacted = json.find() ? json.replaceAll("$1\"" + REDACTED + "\"") : redacted;
+        if (redacted.length() > MAX_CHARS) {
+            return redacted.substring(0, MAX_CHARS) + "...(" + redacted.length() + " chars)";
+        }
+        return redacted;
+    }
+}
@@ -0,0 +1,190 @@
+package net.whydah.admin.metrics;
+
+import net.whydah.admin.trace.TraceContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with microsecond resolution, log-linear buckets as in HdrHistogram.
+ *
+ * Values below 16 us have a bucket each. Above that every power of two is split into 16 buckets, so a reported
+ * percentile is at most 1/16 (6.25%) above the true value. Values are recorded up to 2^40 us (about 12 days).
+ * Recording is a few atomic increments, and percentiles are read without stopping writers, so a snapshot taken
+ * while values are recorded may be off by the values in flight.
+ *
+ * Percentiles cover only recent values: buckets are counted per window of DEFAULT_WINDOW_MINUTES, and percentiles
+ * are read from the current and the previous window, so a regression shows within one to two windows. Count, sum
+ * and max cover every value since start.
+ *
+ * A histogram with a span name also adds every value as a span to the TraceContext of the current request.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    static final int DEFAULT_WINDOW_MINUTES = 5;
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+    private final String spanName;
+    private final long windowNanos;
+    private volatile Window current = new Window();
+    private volatile Window previous = new Window();
+    private volatile long windowStartNanos = System.nanoTime();
+
+    public LatencyHistogram() {
+        this(null);
+    }
+
+    LatencyHistogram(String spanName) {
+        this(spanName, TimeUnit.MINUTES.toMillis(DEFAULT_WINDOW_MINUTES));
+    }
+
+    LatencyHistogram(String spanName, long windowMillis) {
+        this.spanName = spanName;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    public void record(long durationNanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+        Window window = currentWindow();
+        window.counts.incrementAndGet(bucketOf(micros));
+        updateMax(window.maxMicros, micros);
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        updateMax(maxMicros, micros);
+        if (spanName != null) {
+            TraceContext.span(spanName, durationNanos);
+        }
+    }
+
+    private static void updateMax(AtomicLong maxMicros, long micros) {
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * @return the window to record in, after moving on to a new window when the current one is over.
+     */
+    private Window currentWindow() {
+        long now = System.nanoTime();
+        if (now - windowStartNanos >= windowNanos) {
+            synchronized (this) {
+                long elapsed = now - windowStartNanos;
+                if (elapsed >= windowNanos) {
+                    // After a whole window without values the current window is too old to keep
+                    previous = elapsed < 2 * windowNanos ? current : new Window();
+                    current = new Window();
+                    windowStartNanos = now;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Record the time since startNanos, as taken from System.nanoTime().
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Start timing a step, recorded when the Timer is closed:
+     * try (LatencyHistogram.Timer timer = HISTOGRAM.time()) { ... }
+     */
+    public Timer time() {
+        return new Timer(this);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value that falls in the bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @param quantile 0.5 for the median, 0.99 for p99.
+     * @return the value at the quantile in microseconds of the values recorded in the current and the previous
+     * window, 0 when there are none.
+     */
+    public long valueAtQuantile(double quantile) {
+        Window latest = currentWindow();
+        Window before = previous;
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = latest.counts.get(i) + before.counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long max = Math.max(latest.maxMicros.get(), before.maxMicros.get());
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSumMicros() {
+        return sumMicros.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    private static final class Window {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong maxMicros = new AtomicLong();
+    }
+
+    public static final class Timer implements AutoCloseable {
+        private final LatencyHistogram histogram;
+        private final long startNanos = System.nanoTime();
+
+        private Timer(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void close() {
+            histogram.recordSince(startNanos);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package net.whydah.admin.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide latency histograms and counters, written in the Prometheus text format by MetricsHandler.
+ *
+ * A series is a metric name plus label values. Look up series once and keep the reference where the labels are
+ * fixed, as for the parse and serialize steps; lookups with per-request labels are a map lookup.
+ *
+ * Histograms are exported as summaries with quantiles 0.5, 0.99 and 0.999, in seconds. The quantiles are of the
+ * last 5 to 10 minutes, see LatencyHistogram, and _sum and _count are totals since start as Prometheus expects.
+ */
+public final class Metrics {
+    public static final String RESOURCE_SECONDS = "uas_resource_seconds";
+    public static final String UIB_CALL_SECONDS = "uas_uib_call_seconds";
+    public static final String CODEC_SECONDS = "uas_codec_seconds";
+    public static final String UIB_REJECTED_TOTAL = "uas_uib_rejected_total";
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final Map<String, String> HELP = new TreeMap<>();
+
+    static {
+        HELP.put(RESOURCE_SECONDS, "Time from request matched to response, per resource method and status.");
+        HELP.put(UIB_CALL_SECONDS, "Time of calls to UserIdentityBackend, per connection method and status.");
+        HELP.put(CODEC_SECONDS, "Time of parse and serialize steps.");
+        HELP.put(UIB_REJECTED_TOTAL, "Calls to UserIdentityBackend rejected by the circuit breaker or bulkhead.");
+    }
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, ConcurrentMap<String, AtomicLong>> counters = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param labels name and value pairs, "method", "getUser", "status", "200"
+     */
+    public static LatencyHistogram histogram(String name, String... labels) {
+        return histogramWithSpan(name, null, labels);
+    }
+
+    private static LatencyHistogram histogramWithSpan(String name, String spanName, String... labels) {
+        ConcurrentMap<String, LatencyHistogram> series = family(histograms, name);
+        String key = labels(labels);
+        LatencyHistogram histogram = series.get(key);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram(spanName);
+            histogram = series.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    public static AtomicLong counter(String name, String... labels) {
+        ConcurrentMap<String, AtomicLong> series = family(counters, name);
+        String key = labels(labels);
+        AtomicLong counter = series.get(key);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = series.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * The histogram of a parse or serialize step, like "UserAggregate.fromXML", also timed as a span of the request.
+     */
+    public static LatencyHistogram codec(String step) {
+        return histogramWithSpan(CODEC_SECONDS, step, "step", step);
+    }
+
+    private static <T> ConcurrentMap<String, T> family(ConcurrentMap<String, ConcurrentMap<String, T>> families, String name) {
+        ConcurrentMap<String, T> family = families.get(name);
+        if (family == null) {
+            ConcurrentMap<String, T> created = new ConcurrentHashMap<>();
+            family = families.putIfAbsent(name, created);
+            if (family == null) {
+                family = created;
+            }
+        }
+        return family;
+    }
+
+    static String labels(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            key.append(key.length() == 0 ? "" : ",").append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return key.toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Write every series in the Prometheus text exposition format, version 0.0.4.
+     */
+    public static void writePrometheus(Writer writer) throws IOException {
+        for (Map.Entry<String, ConcurrentMap<String, LatencyHistogram>> family : new TreeMap<>(histograms).entrySet()) {
+            String name = family.getKey();
+            writeHeader(writer, name, "summary");
+            for (Map.Entry<String, LatencyHistogram> series : new TreeMap<>(family.getValue()).entrySet()) {
+                String labels = series.getKey();
+                LatencyHistogram histogram = series.getValue();
+                for (double quantile : QUANTILES) {
+                    String quantileLabels = (labels.isEmpty() ? "" : labels + ",") + "quantile=\"" + quantile + "\"";
+                    writeSample(writer, name, quantileLabels, seconds(histogram.valueAtQuantile(quantile)));
+                }
+                writeSample(writer, name + "_sum", labels, seconds(histogram.getSumMicros()));
+                writeSample(writer, name + "_count", labels, Long.toString(histogram.getCount()));
+            }
+        }
+        for (Map.Entry<String, ConcurrentMap<String, AtomicLong>> family : new TreeMap<>(counters).entrySet()) {
+            String name = family.getKey();
+            writeHeader(writer, name, "counter");
+            for (Map.Entry<String, AtomicLong> series : new TreeMap<>(family.getValue()).entrySet()) {
+                writeSample(writer, name, series.getKey(), Long.toString(series.getValue().get()));
+            }
+        }
+    }
+
+    private static void writeHeader(Writer writer, String name, String type) throws IOException {
+        String help = HELP.get(name);
+        if (help != null) {
+            writer.write("# HELP " + name + " " + help + "\n");
+        }
+        writer.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, String value) throws IOException {
+        writer.write(name);
+        if (!labels.isEmpty()) {
+            writer.write("{" + labels + "}");
+        }
+        writer.write(" " + value + "\n");
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1000000.0);
+    }
+}
@@ -0,0 +1,34 @@
+package net.whydah.admin.metrics;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Prometheus scrape endpoint, a plain Jetty handler outside the web application.
+ *
+ * Scrapes do not go through Jersey, Spring or the token filter, and are not counted in uas_resource_seconds.
+ */
+public class MetricsHandler extends AbstractHandler {
+    public static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!"GET".equals(request.getMethod())) {
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            baseRequest.setHandled(true);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(CONTENT_TYPE);
+        Writer writer = response.getWriter();
+        Metrics.writePrometheus(writer);
+        writer.flush();
+        baseRequest.setHandled(true);
+    }
+}
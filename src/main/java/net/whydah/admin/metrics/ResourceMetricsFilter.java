@@ -0,0 +1,44 @@
+package net.whydah.admin.metrics;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+
+/**
+ * Records the time of every resource method in uas_resource_seconds{resource="UserResource.getUser",status="200"}.
+ *
+ * Runs first among the request filters and last among the response filters, so token validation is included.
+ * Suspended requests are measured until they are resumed.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100)
+public class ResourceMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    private static final String START_NANOS = ResourceMetricsFilter.class.getName() + ".start";
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object start = requestContext.getProperty(START_NANOS);
+        Method method = resourceInfo.getResourceMethod();
+        if (start == null || method == null) {
+            return;
+        }
+        String resource = resourceInfo.getResourceClass().getSimpleName() + "." + method.getName();
+        Metrics.histogram(Metrics.RESOURCE_SECONDS, "resource", resource, "status", Integer.toString(responseContext.getStatus()))
+                .recordSince((Long) start);
+    }
+}
@@ -0,0 +1,21 @@
+package net.whydah.admin.trace;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+
+/**
+ * Sends X-Correlation-Id of the request being handled on calls to UIB and STS.
+ *
+ * Only works on the request thread. Async calls run their filters on other threads, so UibGuard sets the header on
+ * those itself.
+ */
+public class CorrelationIdClientFilter implements ClientRequestFilter {
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        TraceContext trace = TraceContext.current();
+        if (trace != null && !requestContext.getHeaders().containsKey(TraceContext.CORRELATION_ID_HEADER)) {
+            requestContext.getHeaders().putSingle(TraceContext.CORRELATION_ID_HEADER, trace.getCorrelationId());
+        }
+    }
+}
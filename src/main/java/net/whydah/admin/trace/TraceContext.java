@@ -0,0 +1,179 @@
+package net.whydah.admin.trace;
+
+import org.slf4j.MDC;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The correlation id and timed steps (spans) of the request being handled, created by TraceFilter.
+ *
+ * The context is bound to the request thread, and to the threads that complete UIB calls made for the request, see
+ * executor(). Spans are added from UibGuard and from the parse and serialize steps timed in Metrics, and are
+ * returned in the Server-Timing header and written to the slow request log.
+ */
+public final class TraceContext {
+    public static final String CORRELATION_ID_HEADER = "X-Correlation-Id";
+    public static final String MDC_KEY = "correlationId";
+    private static final int MAX_SPANS = 256;
+    private static final ThreadLocal<TraceContext> current = new ThreadLocal<>();
+
+    private final String correlationId;
+    private final long startNanos;
+    private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger spanCount = new AtomicInteger();
+    private volatile String request = "";
+    private volatile int status;
+
+    TraceContext(String correlationId, long startNanos) {
+        this.correlationId = correlationId;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * @return the context of the request handled by this thread, null outside of a request.
+     */
+    public static TraceContext current() {
+        return current.get();
+    }
+
+    /**
+     * Add a span that ended now to the context of this thread, if any.
+     */
+    public static void span(String name, long durationNanos) {
+        TraceContext trace = current.get();
+        if (trace != null) {
+            trace.addSpan(name, System.nanoTime() - durationNanos, durationNanos);
+        }
+    }
+
+    static TraceContext attach(TraceContext trace) {
+        TraceContext previous = current.get();
+        current.set(trace);
+        MDC.put(MDC_KEY, trace.correlationId);
+        return previous;
+    }
+
+    static void restore(TraceContext previous) {
+        if (previous == null) {
+            current.remove();
+            MDC.remove(MDC_KEY);
+        } else {
+            current.set(previous);
+            MDC.put(MDC_KEY, previous.correlationId);
+        }
+    }
+
+    /**
+     * At most MAX_SPANS are kept, the rest are only counted.
+     */
+    public void addSpan(String name, long spanStartNanos, long durationNanos) {
+        if (spanCount.incrementAndGet() <= MAX_SPANS) {
+            spans.add(new Span(name, spanStartNanos - startNanos, durationNanos));
+        }
+    }
+
+    /**
+     * Runs tasks in the calling thread with this context attached. Listeners added to a future transformed with this
+     * executor run in the context too, which is how spans of async UIB calls reach the request.
+     */
+    public Executor executor() {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                TraceContext previous = attach(TraceContext.this);
+                try {
+                    command.run();
+                } finally {
+                    restore(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Server-Timing header value, total;dur=12.1, uib.getUser;dur=10.4, UserAggregate.toJson;dur=0.2;desc="x2"
+     * with the spans of the same name added up.
+     */
+    public String serverTiming(long nowNanos) {
+        Map<String, long[]> byName = new LinkedHashMap<>();
+        for (Span span : spans) {
+            long[] durationAndCount = byName.get(span.name);
+            if (durationAndCount == null) {
+                durationAndCount = new long[2];
+                byName.put(span.name, durationAndCount);
+            }
+            durationAndCount[0] += span.durationNanos;
+            durationAndCount[1]++;
+        }
+        StringBuilder header = new StringBuilder("total;dur=").append(millis(nowNanos - startNanos));
+        for (Map.Entry<String, long[]> entry : byName.entrySet()) {
+            header.append(", ").append(entry.getKey()).append(";dur=").append(millis(entry.getValue()[0]));
+            if (entry.getValue()[1] > 1) {
+                header.append(";desc=\"x").append(entry.getValue()[1]).append('"');
+            }
+        }
+        return header.toString();
+    }
+
+    /**
+     * @return the request and every span with its offset from the start of the request, for the slow request log.
+     */
+    public String describe(long nowNanos) {
+        StringBuilder description = new StringBuilder()
+                .append(request).append(' ').append(status).append(' ').append(millis(nowNanos - startNanos)).append("ms")
+                .append(" correlationId=").append(correlationId)
+                .append(" spans=[");
+        String separator = "";
+        for (Span span : spans) {
+            description.append(separator).append(span.name)
+                    .append(" +").append(millis(span.offsetNanos)).append("ms ")
+                    .append(millis(span.durationNanos)).append("ms");
+            separator = ", ";
+        }
+        description.append(']');
+        int dropped = spanCount.get() - MAX_SPANS;
+        if (dropped > 0) {
+            description.append(" (").append(dropped).append(" more spans)");
+        }
+        return description.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    void setRequest(String method, String uri) {
+        this.request = method + " " + uri;
+    }
+
+    void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    private static final class Span {
+        private final String name;
+        private final long offsetNanos;
+        private final long durationNanos;
+
+        private Span(String name, long offsetNanos, long durationNanos) {
+            this.name = name;
+            this.offsetNanos = offsetNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+}
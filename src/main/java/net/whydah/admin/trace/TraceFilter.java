@@ -0,0 +1,135 @@
+package net.whydah.admin.trace;
+
+import net.whydah.admin.config.AppConfig;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the TraceContext of every request, and returns X-Correlation-Id and Server-Timing headers.
+ *
+ * The correlation id is taken from the X-Correlation-Id request header when it is a plain id of at most 64
+ * characters, otherwise a new one is made. It is in the log MDC as correlationId, and sent on to UIB and STS.
+ *
+ * Server-Timing covers the request up to the response headers. Requests slower than trace.slowRequestMillis,
+ * including the writing of the entity, are logged with all their spans to the "slowrequests" logger. The request is
+ * logged by the path template of the matched resource, as the path itself holds the application and user tokens.
+ */
+@Provider
+@PreMatching
+@Priority(Priorities.AUTHENTICATION - 200)
+@Component
+public class TraceFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(TraceFilter.class);
+    private static final Logger slowRequestLog = LoggerFactory.getLogger("slowrequests");
+    static final String SERVER_TIMING = "Server-Timing";
+    private static final String TRACE = TraceContext.class.getName();
+    private static final Pattern VALID_CORRELATION_ID = Pattern.compile("[A-Za-z0-9._:-]{1,64}");
+    private static final int DEFAULT_SLOW_REQUEST_MILLIS = 1000;
+    private static final String UNMATCHED = "(unmatched)";
+
+    private final long slowRequestNanos;
+
+    @Autowired
+    public TraceFilter(AppConfig appConfig) {
+        this(appConfig.getIntProperty("trace.slowRequestMillis", DEFAULT_SLOW_REQUEST_MILLIS));
+        log.info("Requests slower than {} ms are logged to slowrequests", TimeUnit.NANOSECONDS.toMillis(slowRequestNanos));
+    }
+
+    TraceFilter(long slowRequestMillis) {
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMillis);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        String correlationId = requestContext.getHeaderString(TraceContext.CORRELATION_ID_HEADER);
+        if (correlationId == null || !VALID_CORRELATION_ID.matcher(correlationId).matches()) {
+            correlationId = UUID.randomUUID().toString();
+        }
+        TraceContext trace = new TraceContext(correlationId, System.nanoTime());
+        trace.setRequest(requestContext.getMethod(), UNMATCHED);
+        requestContext.setProperty(TRACE, trace);
+        // A request thread left with the context of a suspended request gets the next one here
+        TraceContext.attach(trace);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        TraceContext trace = (TraceContext) requestContext.getProperty(TRACE);
+        if (trace == null) {
+            return;
+        }
+        trace.setStatus(responseContext.getStatus());
+        trace.setRequest(requestContext.getMethod(), pathTemplate(requestContext.getUriInfo()));
+        responseContext.getHeaders().putSingle(TraceContext.CORRELATION_ID_HEADER, trace.getCorrelationId());
+        responseContext.getHeaders().putSingle(SERVER_TIMING, trace.serverTiming(System.nanoTime()));
+        if (!responseContext.hasEntity()) {
+            finish(trace);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        TraceContext trace = (TraceContext) context.getProperty(TRACE);
+        if (trace == null) {
+            context.proceed();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            context.proceed();
+        } finally {
+            trace.addSpan("write", start, System.nanoTime() - start);
+            finish(trace);
+        }
+    }
+
+    /**
+     * @return the path template of the matched resource method, "/{applicationtokenid}/{userTokenId}/user/{userId}".
+     */
+    static String pathTemplate(UriInfo uriInfo) {
+        if (!(uriInfo instanceof ExtendedUriInfo)) {
+            return UNMATCHED;
+        }
+        List<UriTemplate> templates = ((ExtendedUriInfo) uriInfo).getMatchedTemplates();
+        if (templates == null || templates.isEmpty()) {
+            return UNMATCHED;
+        }
+        // Matched templates are listed from the resource method back to the root resource
+        StringBuilder path = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            path.append(templates.get(i).getTemplate());
+        }
+        return path.toString();
+    }
+
+    private void finish(TraceContext trace) {
+        long now = System.nanoTime();
+        if (now - trace.getStartNanos() >= slowRequestNanos) {
+            slowRequestLog.warn(trace.describe(now));
+        }
+        if (TraceContext.current() == trace) {
+            TraceContext.restore(null);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.whydah.admin.uib;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrent UIB calls of one operation. A call over the limit is rejected at once
+ * instead of waiting for a slow UIB.
+ */
+public class Bulkhead {
+    private final int maxConcurrentCalls;
+    private final Semaphore permits;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public Bulkhead(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    /**
+     * @return true when a permit was taken. It must be given back with release().
+     */
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int getInFlight() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
@@ -0,0 +1,119 @@
+package net.whydah.admin.uib;
+
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling UIB for a while after consecutive failures.
+ *
+ * CLOSED - calls are let through, failureThreshold consecutive failures open the circuit.
+ * OPEN - calls are rejected until openDuration has passed, then the circuit is HALF_OPEN.
+ * HALF_OPEN - a single probe call is let through. Success closes the circuit, failure opens it again.
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final Ticker ticker;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+    private long rejectedCount;
+    private long openedCount;
+
+    public CircuitBreaker(String name, int failureThreshold, long openDuration, TimeUnit unit) {
+        this(name, failureThreshold, openDuration, unit, Ticker.systemTicker());
+    }
+
+    CircuitBreaker(String name, int failureThreshold, long openDuration, TimeUnit unit, Ticker ticker) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = unit.toNanos(openDuration);
+        this.ticker = ticker;
+    }
+
+    /**
+     * @return true when the call may be made. The caller must then report onSuccess() or onFailure().
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (ticker.read() - openedAtNanos >= openDurationNanos) {
+                    log.info("Circuit {} half-open, probing UIB", name);
+                    state = State.HALF_OPEN;
+                    probeInFlight = true;
+                    return true;
+                }
+                break;
+            case HALF_OPEN:
+                if (!probeInFlight) {
+                    probeInFlight = true;
+                    return true;
+                }
+                break;
+        }
+        rejectedCount++;
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.OPEN) {
+            // A call started before the circuit opened, wait for the probe
+            return;
+        }
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            log.info("Circuit {} closed", name);
+            state = State.CLOSED;
+        }
+    }
+
+    public synchronized void onFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            log.warn("Circuit {} opened after {} consecutive failures", name, consecutiveFailures);
+            state = State.OPEN;
+            openedAtNanos = ticker.read();
+            openedCount++;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return seconds until an open circuit lets a probe through, at least 1.
+     */
+    public synchronized long getRetryAfterSeconds() {
+        long remainingNanos = openDurationNanos - (ticker.read() - openedAtNanos);
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remainingNanos));
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public synchronized long getOpenedCount() {
+        return openedCount;
+    }
+}
@@ -0,0 +1,194 @@
+package net.whydah.admin.uib;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.trace.TraceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses identical concurrent UIB reads into one call.
+ *
+ * The first caller for a key makes the call, callers arriving while it is in flight wait for its result, or its
+ * exception. A blocking caller waits at most the UIB read timeout. Results that callers may modify are handed out
+ * through a copy function, so every caller gets its own copy and the shared result is never modified. The key is
+ * removed when the call completes, so nothing is cached here; a caller arriving after completion makes a new call.
+ */
+@Component
+public class SingleFlight {
+    private static final int DEFAULT_WAIT_TIMEOUT_MS = 10000;
+
+    private final ConcurrentMap<String, SettableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong collapsedCount = new AtomicLong();
+    private final long waitTimeoutMs;
+
+    @Autowired
+    public SingleFlight(AppConfig appConfig) {
+        this(appConfig.getIntProperty("uib.client.readTimeoutMs", DEFAULT_WAIT_TIMEOUT_MS));
+    }
+
+    /**
+     * @param waitTimeoutMs how long a blocking caller waits for a call made by another caller.
+     */
+    public SingleFlight(long waitTimeoutMs) {
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    /**
+     * @return key for a read of targetId made on behalf of callerTokenId.
+     */
+    public static String key(String operation, String targetId, String callerTokenId) {
+        return operation + ":" + targetId + ":" + callerTokenId;
+    }
+
+    /**
+     * Blocking call of an immutable result, shared with concurrent callers of the same key.
+     */
+    public <T> T call(String key, Supplier<T> call) {
+        return call(key, call, Functions.<T>identity());
+    }
+
+    /**
+     * Blocking call, shared with concurrent callers of the same key. Every caller gets copy of the result.
+     * @throws ConnectionFailedException when the call of another caller did not complete within the UIB read timeout,
+     * or the wait was interrupted.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(String key, Supplier<T> call, Function<? super T, ? extends T> copy) {
+        SettableFuture<Object> future = SettableFuture.create();
+        SettableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            collapsedCount.incrementAndGet();
+            return copyOf((T) await(existing), copy);
+        }
+        callCount.incrementAndGet();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, future);
+            future.setException(e);
+            throw e;
+        }
+        inFlight.remove(key, future);
+        future.set(result);
+        return copyOf(result, copy);
+    }
+
+    /**
+     * Non-blocking call of an immutable result, shared with concurrent callers of the same key.
+     */
+    public <T> ListenableFuture<T> callAsync(String key, Supplier<ListenableFuture<T>> call) {
+        return callAsync(key, call, Functions.<T>identity());
+    }
+
+    /**
+     * Non-blocking call, shared with concurrent callers of the same key. Every caller gets copy of the result.
+     * Cancelling the returned future does not cancel the call for the other callers. Listeners of the returned
+     * future run with the TraceContext of the caller, not of the caller that made the call.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ListenableFuture<T> callAsync(final String key, Supplier<ListenableFuture<T>> call, Function<? super T, ? extends T> copy) {
+        TraceContext trace = TraceContext.current();
+        Executor executor = trace != null ? trace.executor() : MoreExecutors.directExecutor();
+        final SettableFuture<Object> future = SettableFuture.create();
+        SettableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            collapsedCount.incrementAndGet();
+            return copied((ListenableFuture<T>) Futures.nonCancellationPropagating(existing), copy, executor);
+        }
+        callCount.incrementAndGet();
+        ListenableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, future);
+            future.setException(e);
+            throw e;
+        }
+        Futures.addCallback(result, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                inFlight.remove(key, future);
+                future.set(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                inFlight.remove(key, future);
+                future.setException(t);
+            }
+        });
+        return copied((ListenableFuture<T>) Futures.nonCancellationPropagating(future), copy, executor);
+    }
+
+    private static <T> T copyOf(T result, Function<? super T, ? extends T> copy) {
+        return result == null ? null : copy.apply(result);
+    }
+
+    private static <T> ListenableFuture<T> copied(ListenableFuture<T> shared, final Function<? super T, ? extends T> copy,
+                                                  Executor executor) {
+        return Futures.transform(shared, new Function<T, T>() {
+            @Override
+            public T apply(T result) {
+                return copyOf(result, copy);
+            }
+        }, executor);
+    }
+
+    private Object await(SettableFuture<Object> future) {
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ConnectionFailedException("No result from the UIB call in flight within " + waitTimeoutMs + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionFailedException("Interrupted while waiting for the UIB call in flight", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new UncheckedExecutionException(cause);
+        }
+    }
+
+    /**
+     * @return calls made to UIB through this single-flight.
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * @return calls answered by sharing the result of a call already in flight.
+     */
+    public long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,136 @@
+package net.whydah.admin.uib;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.config.ExecutionMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Support for resources that call UIB without holding a Jetty thread.
+ *
+ * The resource suspends the request with suspend(), the connection classes start the UIB call with get(), and the
+ * request is resumed from the callback of the returned future. A request that is not resumed within the configured
+ * timeout is answered with 504 Gateway Timeout; a UIB call that could not be made is answered with 503.
+ */
+@Component
+public class UibAsync {
+    private static final Logger log = LoggerFactory.getLogger(UibAsync.class);
+    private static final int DEFAULT_TIMEOUT_MS = 15000;
+    private static final int STATUS_GATEWAY_TIMEOUT = 504;
+
+    private static final TimeoutHandler GATEWAY_TIMEOUT = new TimeoutHandler() {
+        @Override
+        public void handleTimeout(AsyncResponse asyncResponse) {
+            log.warn("Request to UIB timed out, responding with {}", STATUS_GATEWAY_TIMEOUT);
+            asyncResponse.resume(Response.status(STATUS_GATEWAY_TIMEOUT).build());
+        }
+    };
+
+    private final long timeoutMs;
+    /**
+     * Set in VIRTUAL execution mode: blocking UIB calls run here instead of on the Jersey client async pool.
+     */
+    private final ListeningExecutorService blockingCallExecutor;
+
+    @Autowired
+    public UibAsync(AppConfig appConfig) {
+        this(appConfig.getIntProperty("uib.async.timeoutMs", DEFAULT_TIMEOUT_MS), createBlockingCallExecutor(appConfig));
+    }
+
+    public UibAsync(long timeoutMs) {
+        this(timeoutMs, null);
+    }
+
+    UibAsync(long timeoutMs, ExecutorService blockingCallExecutor) {
+        this.timeoutMs = timeoutMs;
+        this.blockingCallExecutor = blockingCallExecutor == null ? null : MoreExecutors.listeningDecorator(blockingCallExecutor);
+    }
+
+    private static ExecutorService createBlockingCallExecutor(AppConfig appConfig) {
+        if (appConfig.getExecutionMode() != ExecutionMode.VIRTUAL) {
+            return null;
+        }
+        log.info("UIB calls run on virtual threads");
+        return ExecutionMode.newVirtualThreadExecutor();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (blockingCallExecutor != null) {
+            blockingCallExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Set the timeout for a suspended request. Must be called before the UIB call is started.
+     */
+    public void suspend(AsyncResponse asyncResponse) {
+        asyncResponse.setTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        asyncResponse.setTimeoutHandler(GATEWAY_TIMEOUT);
+    }
+
+    /**
+     * Start a GET without waiting for the response.
+     * @return future completed with the UIB response, or failed with ConnectionFailedException.
+     */
+    public ListenableFuture<Response> get(final Invocation.Builder request) {
+        if (blockingCallExecutor != null) {
+            return blockingCallExecutor.submit(new Callable<Response>() {
+                @Override
+                public Response call() {
+                    try {
+                        return request.get();
+                    } catch (ProcessingException e) {
+                        throw new ConnectionFailedException("Request to UIB failed", e);
+                    }
+                }
+            });
+        }
+        final SettableFuture<Response> future = SettableFuture.create();
+        request.async().get(new InvocationCallback<Response>() {
+            @Override
+            public void completed(Response response) {
+                future.set(response);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                future.setException(new ConnectionFailedException("Request to UIB failed", throwable));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return 504 when UIB did not answer in time, 503 when UIB could not be reached.
+     */
+    public static Response unavailable(ConnectionFailedException e) {
+        Throwable cause = e.getCause();
+        while (cause != null) {
+            if (cause instanceof SocketTimeoutException) {
+                return Response.status(STATUS_GATEWAY_TIMEOUT).build();
+            }
+            cause = cause.getCause();
+        }
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+    }
+}
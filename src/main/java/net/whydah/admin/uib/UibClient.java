@@ -0,0 +1,169 @@
+package net.whydah.admin.uib;
+
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.config.SSLTool;
+import net.whydah.admin.trace.CorrelationIdClientFilter;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one http client used for all calls to UserIdentityBackend.
+ *
+ * Connections are pooled and kept alive between requests, so we do not pay for a new TCP (and TLS) handshake
+ * on every UIB call. Idle and expired connections are evicted in the background.
+ */
+@Component
+public class UibClient {
+    private static final Logger log = LoggerFactory.getLogger(UibClient.class);
+
+    private static final int DEFAULT_MAX_TOTAL = 200;
+    private static final int DEFAULT_MAX_PER_ROUTE = 50;
+    private static final int DEFAULT_CONNECT_TIMEOUT_MS = 2000;
+    private static final int DEFAULT_READ_TIMEOUT_MS = 10000;
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 300;
+    private static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 30;
+    private static final int DEFAULT_ASYNC_THREADPOOL_SIZE = 50;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ScheduledExecutorService idleConnectionEvictor;
+    private final Client client;
+    private final WebTarget uib;
+
+    @Autowired
+    public UibClient(AppConfig appConfig) {
+        int maxTotal = positive(appConfig, "uib.client.maxTotal", DEFAULT_MAX_TOTAL);
+        int maxPerRoute = positive(appConfig, "uib.client.maxPerRoute", DEFAULT_MAX_PER_ROUTE);
+        int connectTimeoutMs = appConfig.getIntProperty("uib.client.connectTimeoutMs", DEFAULT_CONNECT_TIMEOUT_MS);
+        int readTimeoutMs = appConfig.getIntProperty("uib.client.readTimeoutMs", DEFAULT_READ_TIMEOUT_MS);
+        int keepAliveSeconds = appConfig.getIntProperty("uib.client.keepAliveSeconds", DEFAULT_KEEP_ALIVE_SECONDS);
+        final int idleTimeoutSeconds = appConfig.getIntProperty("uib.client.idleTimeoutSeconds", DEFAULT_IDLE_TIMEOUT_SECONDS);
+        int asyncThreadPoolSize = positive(appConfig, "uib.client.asyncThreadPoolSize", DEFAULT_ASYNC_THREADPOOL_SIZE);
+        boolean compression = Boolean.parseBoolean(appConfig.getProperty("uib.client.compression", "true"));
+
+        connectionManager = new PoolingHttpClientConnectionManager(buildSocketFactoryRegistry(appConfig), null, null, null,
+                keepAliveSeconds, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+        clientConfig.property(ClientProperties.CONNECT_TIMEOUT, connectTimeoutMs);
+        clientConfig.property(ClientProperties.READ_TIMEOUT, readTimeoutMs);
+        // Threads running async() requests, see UibAsync
+        clientConfig.property(ClientProperties.ASYNC_THREADPOOL_SIZE, asyncThreadPoolSize);
+        clientConfig.connectorProvider(new ApacheConnectorProvider());
+        clientConfig.register(CorrelationIdClientFilter.class);
+        if (compression) {
+            // Accept-Encoding: gzip, deflate on every request, compressed responses are decoded when read
+            clientConfig.register(EncodingFilter.class);
+            clientConfig.register(GZipEncoder.class);
+            clientConfig.register(DeflateEncoder.class);
+        }
+        client = ClientBuilder.newClient(clientConfig);
+
+        String uibUrl = appConfig.getProperty("useridentitybackend");
+        log.info("Connection to UserIdentityBackend on {}, maxTotal={}, maxPerRoute={}, connectTimeoutMs={}, readTimeoutMs={}, asyncThreadPoolSize={}, compression={}",
+                uibUrl, maxTotal, maxPerRoute, connectTimeoutMs, readTimeoutMs, asyncThreadPoolSize, compression);
+        uib = client.target(uibUrl);
+
+        if (idleTimeoutSeconds <= 0) {
+            // Expired connections are still closed by the pool when leased, after keepAliveSeconds
+            log.info("uib.client.idleTimeoutSeconds={}, idle UIB connections are not evicted", idleTimeoutSeconds);
+            idleConnectionEvictor = null;
+            return;
+        }
+        idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "uib-idle-connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        idleConnectionEvictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS);
+            }
+        }, idleTimeoutSeconds, idleTimeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    private static int positive(AppConfig appConfig, String key, int defaultValue) {
+        int value = appConfig.getIntProperty(key, defaultValue);
+        if (value <= 0) {
+            log.warn("Property {}={} must be positive, using default {}", key, value, defaultValue);
+            return defaultValue;
+        }
+        return value;
+    }
+
+    private static Registry<ConnectionSocketFactory> buildSocketFactoryRegistry(AppConfig appConfig) {
+        SSLConnectionSocketFactory sslSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
+        if ("disabled".equalsIgnoreCase(appConfig.getProperty("sslverification"))) {
+            try {
+                sslSocketFactory = new SSLConnectionSocketFactory(SSLTool.trustAllSslContext(), NoopHostnameVerifier.INSTANCE);
+            } catch (GeneralSecurityException e) {
+                log.warn("Could not disable ssl verification for UIB client, using default ssl settings.", e);
+            }
+        }
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+    }
+
+    /**
+     * @return target pointing at the configured UserIdentityBackend root.
+     */
+    public WebTarget target() {
+        return uib;
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * @return leased, available(idle) and pending connections for the whole pool.
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.shutdownNow();
+        }
+        client.close();
+        connectionManager.shutdown();
+    }
+}
@@ -0,0 +1,185 @@
+package net.whydah.admin.uib;
+
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.metrics.Metrics;
+import net.whydah.admin.trace.TraceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.Response;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker and bulkhead in front of every UIB call, one of each per UibOperation.
+ *
+ * A call is rejected with ServiceUnavailableException (503 with Retry-After) when the circuit of its operation is
+ * open, or when the operation already has its maximum number of calls in flight. Connection errors and 5xx
+ * responses from UIB count as failures.
+ *
+ * Every call is timed in uas_uib_call_seconds by operation, connection method and status, where the status is the
+ * HTTP status, "error" when UIB could not be reached, or "rejected". Rejections are also counted by reason in
+ * uas_uib_rejected_total. Calls are added as uib.{method} spans to the TraceContext of the request.
+ */
+@Component
+public class UibGuard {
+    private static final Logger log = LoggerFactory.getLogger(UibGuard.class);
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final int DEFAULT_OPEN_SECONDS = 30;
+    private static final int DEFAULT_MAX_CONCURRENT_CALLS = 40;
+    private static final long BULKHEAD_RETRY_AFTER_SECONDS = 1;
+
+    private final Map<UibOperation, CircuitBreaker> circuitBreakers = new EnumMap<>(UibOperation.class);
+    private final Map<UibOperation, Bulkhead> bulkheads = new EnumMap<>(UibOperation.class);
+    private final UibAsync uibAsync;
+
+    @Autowired
+    public UibGuard(AppConfig appConfig, UibAsync uibAsync) {
+        this.uibAsync = uibAsync;
+        int failureThreshold = appConfig.getIntProperty("uib.breaker.failureThreshold", DEFAULT_FAILURE_THRESHOLD);
+        int openSeconds = appConfig.getIntProperty("uib.breaker.openSeconds", DEFAULT_OPEN_SECONDS);
+        int maxConcurrentCalls = appConfig.getIntProperty("uib.bulkhead.maxConcurrentCalls", DEFAULT_MAX_CONCURRENT_CALLS);
+        for (UibOperation operation : UibOperation.values()) {
+            String key = "uib.bulkhead." + operation.name().toLowerCase() + ".maxConcurrentCalls";
+            int operationMaxConcurrentCalls = appConfig.getIntProperty(key, maxConcurrentCalls);
+            circuitBreakers.put(operation, new CircuitBreaker(operation.name(), failureThreshold, openSeconds, TimeUnit.SECONDS));
+            bulkheads.put(operation, new Bulkhead(operationMaxConcurrentCalls));
+        }
+        log.info("UIB circuit breaker failureThreshold={}, openSeconds={}, bulkhead maxConcurrentCalls={}",
+                failureThreshold, openSeconds, maxConcurrentCalls);
+    }
+
+    UibGuard(int failureThreshold, int openSeconds, int maxConcurrentCalls, UibAsync uibAsync) {
+        this.uibAsync = uibAsync;
+        for (UibOperation operation : UibOperation.values()) {
+            circuitBreakers.put(operation, new CircuitBreaker(operation.name(), failureThreshold, openSeconds, TimeUnit.SECONDS));
+            bulkheads.put(operation, new Bulkhead(maxConcurrentCalls));
+        }
+    }
+
+    /**
+     * Make a blocking UIB call.
+     * @param method the connection method making the call, for the metrics.
+     * @throws ServiceUnavailableException when rejected by the circuit breaker or bulkhead.
+     * @throws ConnectionFailedException when UIB could not be reached.
+     */
+    public Response execute(UibOperation operation, String method, Invocation invocation) {
+        TraceContext trace = TraceContext.current();
+        long start = System.nanoTime();
+        acquire(trace, operation, method, start);
+        Bulkhead bulkhead = bulkheads.get(operation);
+        String status = "error";
+        try {
+            Response response = invocation.invoke();
+            status = Integer.toString(response.getStatus());
+            record(operation, response);
+            return response;
+        } catch (ProcessingException e) {
+            circuitBreakers.get(operation).onFailure();
+            throw new ConnectionFailedException("Request to UIB failed, operation " + operation, e);
+        } catch (RuntimeException e) {
+            circuitBreakers.get(operation).onFailure();
+            throw e;
+        } finally {
+            bulkhead.release();
+            recordTime(trace, operation, method, status, start);
+        }
+    }
+
+    /**
+     * Make a non-blocking UIB GET, see UibAsync.
+     * @param method the connection method making the call, for the metrics.
+     * @return future failed with ServiceUnavailableException when rejected. Listeners run with the TraceContext of
+     * the calling request.
+     */
+    public ListenableFuture<Response> executeAsync(final UibOperation operation, final String method, Invocation.Builder request) {
+        final TraceContext trace = TraceContext.current();
+        final long start = System.nanoTime();
+        try {
+            acquire(trace, operation, method, start);
+        } catch (ServiceUnavailableException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        if (trace != null) {
+            // Client filters of async calls do not run on the request thread, see CorrelationIdClientFilter
+            request.header(TraceContext.CORRELATION_ID_HEADER, trace.getCorrelationId());
+        }
+        ListenableFuture<Response> response = uibAsync.get(request);
+        Futures.addCallback(response, new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                bulkheads.get(operation).release();
+                record(operation, response);
+                recordTime(trace, operation, method, Integer.toString(response.getStatus()), start);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                bulkheads.get(operation).release();
+                circuitBreakers.get(operation).onFailure();
+                recordTime(trace, operation, method, "error", start);
+            }
+        });
+        if (trace == null) {
+            return response;
+        }
+        return Futures.transform(response, Functions.<Response>identity(), trace.executor());
+    }
+
+    private void acquire(TraceContext trace, UibOperation operation, String method, long start) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(operation);
+        Bulkhead bulkhead = bulkheads.get(operation);
+        if (!bulkhead.tryAcquire()) {
+            log.warn("UIB {} rejected, {} calls in flight", operation, bulkhead.getInFlight());
+            reject(trace, operation, method, "bulkhead", start);
+            throw new ServiceUnavailableException(BULKHEAD_RETRY_AFTER_SECONDS);
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            bulkhead.release();
+            log.debug("UIB {} rejected, circuit {}", operation, circuitBreaker.getState());
+            reject(trace, operation, method, "circuit", start);
+            throw new ServiceUnavailableException(circuitBreaker.getRetryAfterSeconds());
+        }
+    }
+
+    private static void reject(TraceContext trace, UibOperation operation, String method, String reason, long start) {
+        Metrics.counter(Metrics.UIB_REJECTED_TOTAL, "operation", operation.name(), "reason", reason).incrementAndGet();
+        recordTime(trace, operation, method, "rejected", start);
+    }
+
+    private static void recordTime(TraceContext trace, UibOperation operation, String method, String status, long start) {
+        long duration = System.nanoTime() - start;
+        Metrics.histogram(Metrics.UIB_CALL_SECONDS, "operation", operation.name(), "method", method, "status", status)
+                .record(duration);
+        if (trace != null) {
+            trace.addSpan("uib." + method, start, duration);
+        }
+    }
+
+    private void record(UibOperation operation, Response response) {
+        if (response.getStatus() >= 500) {
+            circuitBreakers.get(operation).onFailure();
+        } else {
+            circuitBreakers.get(operation).onSuccess();
+        }
+    }
+
+    public CircuitBreaker getCircuitBreaker(UibOperation operation) {
+        return circuitBreakers.get(operation);
+    }
+
+    public Bulkhead getBulkhead(UibOperation operation) {
+        return bulkheads.get(operation);
+    }
+}
@@ -0,0 +1,9 @@
+package net.whydah.admin.uib;
+
+/**
+ * Groups of UIB calls that get their own circuit breaker and bulkhead, so a failing or slow group of UIB
+ * operations does not take the others down with it.
+ */
+public enum UibOperation {
+    USER_READ, USER_WRITE, FIND, AUTH, APPLICATION
+}
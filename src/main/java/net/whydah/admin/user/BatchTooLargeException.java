@@ -0,0 +1,12 @@
+package net.whydah.admin.user;
+
+/**
+ * A batch request with more items than allowed, answered with 413. Other invalid batches are 400.
+ */
+public class BatchTooLargeException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1;
+
+    public BatchTooLargeException(String s) {
+        super(s);
+    }
+}
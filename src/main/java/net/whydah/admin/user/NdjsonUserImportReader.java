@@ -0,0 +1,85 @@
+package net.whydah.admin.user;
+
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+import net.whydah.admin.user.uib.UserIdentityRepresentation;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One user per line, blank lines are skipped:
+ * {"username":"jd","firstName":"John","lastName":"Doe","email":"jd@example.com","cellPhone":"12345678","personRef":"1",
+ *  "roles":[{"applicationId":"12","applicationName":"app","organizationName":"org","applicationRoleName":"user","applicationRoleValue":"true"}]}
+ *
+ * A line that is not a valid user, or has no username, gives an invalid record, and reading continues with the next line.
+ */
+public class NdjsonUserImportReader implements UserImportReader {
+    private static final String ROLES = "roles";
+
+    private final BufferedReader reader;
+    private long index;
+
+    public NdjsonUserImportReader(InputStream input) {
+        this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public UserImportRecord next() throws IOException {
+        String line;
+        try {
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.trim().isEmpty());
+        } catch (IOException e) {
+            index++;
+            throw e;
+        }
+        index++;
+        return parse(index, line);
+    }
+
+    @Override
+    public long getIndex() {
+        return index;
+    }
+
+    static UserImportRecord parse(long index, String line) {
+        try {
+            JsonNode node = JsonCodec.mapper().readTree(line);
+            if (node == null || !node.isObject()) {
+                return UserImportRecord.invalid(index, "Not a json object");
+            }
+            JsonNode rolesNode = ((ObjectNode) node).remove(ROLES);
+            UserIdentityRepresentation identity = JsonCodec.reader(UserIdentityRepresentation.class).readValue(node);
+            if (identity.getUsername() == null || identity.getUsername().isEmpty()) {
+                return UserImportRecord.invalid(index, "Missing username");
+            }
+            List<RoleRepresentationRequest> roles = new ArrayList<>();
+            if (rolesNode != null) {
+                for (JsonNode roleNode : rolesNode) {
+                    RoleRepresentationRequest role = JsonCodec.reader(RoleRepresentationRequest.class).readValue(roleNode);
+                    roles.add(role);
+                }
+            }
+            return new UserImportRecord(index, identity, roles);
+        } catch (IOException e) {
+            return UserImportRecord.invalid(index, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
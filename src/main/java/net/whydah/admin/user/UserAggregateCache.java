@@ -0,0 +1,167 @@
+package net.whydah.admin.user;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.user.uib.UserAggregate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded in-process cache of UserAggregate keyed by uid.
+ *
+ * Entries expire after a configurable TTL, and the least recently used entries are evicted when max size is reached.
+ * A cached user is only served to a userTokenId that UIB has returned the user to, so one caller can not read a user
+ * that was fetched for another.
+ *
+ * UserService invalidates entries on its own writes, so a read after a write through UAS is never stale. A read takes
+ * generation(uid) before it calls UIB and passes it to put, and the put is dropped when the uid was invalidated in
+ * between, so a read that started before a write can not cache the user from before the write.
+ *
+ * Users are held as compact UserAggregateSnapshot, and get returns a new UserAggregate the caller may modify.
+ */
+@Component
+public class UserAggregateCache {
+    private static final Logger log = LoggerFactory.getLogger(UserAggregateCache.class);
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final int DEFAULT_TTL_SECONDS = 30;
+    private static final int GENERATION_STRIPES = 64;
+    private static final int MAX_TOKENS_PER_USER = 64;
+
+    private final Cache<String, Entry> cache;
+    /** Invalidations per stripe of uids, and of the whole cache. Incremented while holding the lock on this. */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLong allGeneration = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    @Autowired
+    public UserAggregateCache(AppConfig appConfig) {
+        this(appConfig.getIntProperty("user.cache.maxSize", DEFAULT_MAX_SIZE),
+                appConfig.getIntProperty("user.cache.ttlSeconds", DEFAULT_TTL_SECONDS));
+    }
+
+    UserAggregateCache(long maxSize, long ttlSeconds) {
+        log.info("UserAggregate cache maxSize={}, ttlSeconds={}", maxSize, ttlSeconds);
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return cached user, or null when not cached, expired, or not yet fetched from UIB with this userTokenId.
+     */
+    public UserAggregate get(String uid, String userTokenId) {
+        if (uid == null || userTokenId == null) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(uid);
+        if (entry == null || !entry.userTokenIds.contains(userTokenId)) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.snapshot.toUserAggregate();
+    }
+
+    /**
+     * @return value to pass to put for a user read from UIB from now on.
+     */
+    public long generation(String uid) {
+        return allGeneration.get() + (uid == null ? 0 : generations.get(stripe(uid)));
+    }
+
+    /**
+     * Cache a user UIB returned to userTokenId.
+     * @param generation generation(uid) from before the user was read from UIB.
+     */
+    public synchronized void put(String uid, String userTokenId, UserAggregate userAggregate, long generation) {
+        if (uid == null || userTokenId == null || userAggregate == null) {
+            return;
+        }
+        if (generation != generation(uid)) {
+            log.debug("User {} was changed while it was read from UIB, not cached", uid);
+            return;
+        }
+        Entry previous = cache.getIfPresent(uid);
+        Set<String> userTokenIds = previous == null || previous.userTokenIds.size() >= MAX_TOKENS_PER_USER
+                ? Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>())
+                : previous.userTokenIds;
+        userTokenIds.add(userTokenId);
+        cache.put(uid, new Entry(UserAggregateSnapshot.of(userAggregate), userTokenIds));
+    }
+
+    public synchronized void invalidate(String uid) {
+        if (uid != null) {
+            generations.incrementAndGet(stripe(uid));
+            cache.invalidate(uid);
+        }
+    }
+
+    /**
+     * Some UIB operations, like changePassword, address the user by username. Remove every entry for that user.
+     */
+    public synchronized void invalidateByUsername(String username) {
+        if (username == null) {
+            return;
+        }
+        // The uid is not known for a user that is being read, so reads of every user in flight are not cached
+        allGeneration.incrementAndGet();
+        cache.invalidate(username);
+        Iterator<Map.Entry<String, Entry>> entries = cache.asMap().entrySet().iterator();
+        while (entries.hasNext()) {
+            if (username.equals(entries.next().getValue().snapshot.getUsername())) {
+                entries.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        allGeneration.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private static int stripe(String uid) {
+        return (uid.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    private static final class Entry {
+        private final UserAggregateSnapshot snapshot;
+        /** Callers UIB has returned this user to. */
+        private final Set<String> userTokenIds;
+
+        private Entry(UserAggregateSnapshot snapshot, Set<String> userTokenIds) {
+            this.snapshot = snapshot;
+            this.userTokenIds = userTokenIds;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.whydah.admin.user;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable, compact copy of a UserAggregate for UserAggregateCache.
+ *
+ * The identity is held in plain fields and the roles in one flat array, ROLE_FIELDS values per role, instead of a
+ * UserIdentity and a list of UserPropertyAndRole beans. The values shared between users - applicationId,
+ * applicationName, organizationName, roleName and roleValue - are interned in a weak interner, so all cached users
+ * reference one String per distinct value, and values no longer in use are garbage collected.
+ *
+ * toUserAggregate() builds new beans on every call, so callers may modify the result. The password is not kept.
+ */
+public final class UserAggregateSnapshot {
+    private static final Interner<String> VALUES = Interners.newWeakInterner();
+    static final int ROLE_FIELDS = 7;
+    private static final String[] NO_ROLES = new String[0];
+
+    private final boolean hasIdentity;
+    private final String uid;
+    private final String username;
+    private final String firstName;
+    private final String lastName;
+    private final String personRef;
+    private final String email;
+    private final String cellPhone;
+    /** id, uid, applicationId, applicationName, organizationName, roleName, roleValue of each role. Null when roles is null. */
+    private final String[] roles;
+
+    private UserAggregateSnapshot(UserIdentity identity, List<UserPropertyAndRole> roleList) {
+        hasIdentity = identity != null;
+        uid = hasIdentity ? identity.getUid() : null;
+        username = hasIdentity ? identity.getUsername() : null;
+        firstName = hasIdentity ? identity.getFirstName() : null;
+        lastName = hasIdentity ? identity.getLastName() : null;
+        personRef = hasIdentity ? identity.getPersonRef() : null;
+        email = hasIdentity ? identity.getEmail() : null;
+        cellPhone = hasIdentity ? identity.getCellPhone() : null;
+        roles = roleList == null ? null : flatten(roleList);
+    }
+
+    public static UserAggregateSnapshot of(UserAggregate userAggregate) {
+        return new UserAggregateSnapshot(userAggregate.getIdentity(), userAggregate.getRoles());
+    }
+
+    private String[] flatten(List<UserPropertyAndRole> roleList) {
+        if (roleList.isEmpty()) {
+            return NO_ROLES;
+        }
+        String[] flat = new String[roleList.size() * ROLE_FIELDS];
+        int i = 0;
+        for (UserPropertyAndRole role : roleList) {
+            flat[i++] = role.getId();
+            // Roles of the user reference the uid of the identity instead of a copy
+            flat[i++] = uid != null && uid.equals(role.getUid()) ? uid : role.getUid();
+            flat[i++] = intern(role.getApplicationId());
+            flat[i++] = intern(role.getApplicationName());
+            flat[i++] = intern(role.getOrganizationName());
+            flat[i++] = intern(role.getApplicationRoleName());
+            flat[i++] = intern(role.getApplicationRoleValue());
+        }
+        return flat;
+    }
+
+    static String intern(String value) {
+        return value == null ? null : VALUES.intern(value);
+    }
+
+    public UserAggregate toUserAggregate() {
+        UserIdentity identity = hasIdentity ? new UserIdentity(uid, username, firstName, lastName, personRef, email, cellPhone, null) : null;
+        List<UserPropertyAndRole> roleList = null;
+        if (roles != null) {
+            roleList = new ArrayList<>(roles.length / ROLE_FIELDS);
+            for (int i = 0; i < roles.length; i += ROLE_FIELDS) {
+                roleList.add(new UserPropertyAndRole(roles[i], roles[i + 1], roles[i + 2], roles[i + 3], roles[i + 4],
+                        roles[i + 5], roles[i + 6]));
+            }
+        }
+        return new UserAggregate(identity, roleList);
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getRoleCount() {
+        return roles == null ? 0 : roles.length / ROLE_FIELDS;
+    }
+}
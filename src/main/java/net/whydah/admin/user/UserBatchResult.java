@@ -0,0 +1,82 @@
+package net.whydah.admin.user;
+
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.user.uib.UserAggregate;
+import org.codehaus.jackson.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a batch lookup: the users found, in requested order, and an error per uid that could not be returned.
+ *
+ * {"users":[{...},{...}],"errors":[{"uid":"u3","status":404,"message":"User not found"}]}
+ */
+public class UserBatchResult {
+    private final List<UserAggregate> users = new ArrayList<>();
+    private final List<Error> errors = new ArrayList<>();
+
+    void addUser(UserAggregate userAggregate) {
+        users.add(userAggregate);
+    }
+
+    void addError(String uid, int status, String message) {
+        errors.add(new Error(uid, status, message));
+    }
+
+    public List<UserAggregate> getUsers() {
+        return Collections.unmodifiableList(users);
+    }
+
+    public List<Error> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public void writeJson(Writer writer) throws IOException {
+        JsonGenerator json = JsonCodec.mapper().getJsonFactory().createJsonGenerator(writer);
+        json.writeStartObject();
+        json.writeArrayFieldStart("users");
+        for (UserAggregate user : users) {
+            JsonCodec.writer(UserAggregate.class).writeValue(json, user);
+        }
+        json.writeEndArray();
+        json.writeArrayFieldStart("errors");
+        for (Error error : errors) {
+            json.writeStartObject();
+            json.writeStringField("uid", error.getUid());
+            json.writeNumberField("status", error.getStatus());
+            json.writeStringField("message", error.getMessage());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.flush();
+    }
+
+    public static class Error {
+        private final String uid;
+        private final int status;
+        private final String message;
+
+        Error(String uid, int status, String message) {
+            this.uid = uid;
+            this.status = status;
+            this.message = message;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package net.whydah.admin.user;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import net.whydah.admin.AuthenticationFailedException;
+import net.whydah.admin.ConflictExeption;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.uib.UibAsync;
+import net.whydah.admin.user.uib.UserAggregate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.ws.rs.NotAuthorizedException;
+import javax.ws.rs.WebApplicationException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Looks up many users in one request.
+ *
+ * Users cached for the userTokenId are served from UserAggregateCache. The rest are fetched from UIB with getUserAsync, at most
+ * maxParallelism at a time for one batch. A uid that fails is reported in the result, the others are still returned.
+ */
+@Service
+public class UserBatchService {
+    private static final Logger log = LoggerFactory.getLogger(UserBatchService.class);
+    private static final int DEFAULT_MAX_SIZE = 500;
+    private static final int DEFAULT_MAX_PARALLELISM = 20;
+    private static final int DEFAULT_TIMEOUT_MS = 30000;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int STATUS_CONFLICT = 409;
+    private static final int STATUS_BAD_GATEWAY = 502;
+    private static final int STATUS_GATEWAY_TIMEOUT = 504;
+    private static final int STATUS_INTERNAL_SERVER_ERROR = 500;
+
+    private final UserService userService;
+    private final UserAggregateCache userAggregateCache;
+    private final int maxSize;
+    private final int maxParallelism;
+    private final long timeoutMs;
+
+    @Autowired
+    public UserBatchService(UserService userService, UserAggregateCache userAggregateCache, AppConfig appConfig) {
+        this(userService, userAggregateCache,
+                appConfig.getIntProperty("user.batch.maxSize", DEFAULT_MAX_SIZE),
+                appConfig.getIntProperty("user.batch.maxParallelism", DEFAULT_MAX_PARALLELISM),
+                appConfig.getIntProperty("user.batch.timeoutMs", DEFAULT_TIMEOUT_MS));
+    }
+
+    UserBatchService(UserService userService, UserAggregateCache userAggregateCache, int maxSize, int maxParallelism, long timeoutMs) {
+        this.userService = userService;
+        this.userAggregateCache = userAggregateCache;
+        this.maxSize = maxSize;
+        this.maxParallelism = maxParallelism;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * @param userIds duplicates are looked up once.
+     * @throws BatchTooLargeException when more than maxSize uids are requested.
+     * @throws IllegalArgumentException when a uid is null or empty.
+     */
+    public UserBatchResult getUsers(String applicationTokenId, String userTokenId, Collection<String> userIds) {
+        if (!userService.hasAccess(applicationTokenId, userTokenId)) {
+            throw new NotAuthorizedException("Not Authorized to getUsers()");
+        }
+        LinkedHashSet<String> uniqueUserIds = new LinkedHashSet<>(userIds);
+        if (uniqueUserIds.size() > maxSize) {
+            throw new BatchTooLargeException("Too many users in batch: " + uniqueUserIds.size() + ", max " + maxSize);
+        }
+        if (uniqueUserIds.contains(null) || uniqueUserIds.contains("")) {
+            throw new IllegalArgumentException("Batch has a null or empty uid");
+        }
+
+        Map<String, UserAggregate> cached = new LinkedHashMap<>();
+        Map<String, ListenableFuture<UserAggregate>> fetched = new LinkedHashMap<>();
+        final Semaphore permits = new Semaphore(maxParallelism);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (String userId : uniqueUserIds) {
+            UserAggregate userAggregate = userAggregateCache.get(userId, userTokenId);
+            if (userAggregate != null) {
+                cached.put(userId, userAggregate);
+            } else {
+                fetched.put(userId, fetch(applicationTokenId, userTokenId, userId, permits, deadline));
+            }
+        }
+        log.debug("getUsers: {} users, {} from cache, {} from UIB", uniqueUserIds.size(), cached.size(), fetched.size());
+
+        UserBatchResult result = new UserBatchResult();
+        for (String userId : uniqueUserIds) {
+            UserAggregate userAggregate = cached.get(userId);
+            if (userAggregate == null) {
+                userAggregate = await(userId, fetched.get(userId), deadline, result);
+            }
+            if (userAggregate != null) {
+                result.addUser(userAggregate);
+            }
+        }
+        return result;
+    }
+
+    private ListenableFuture<UserAggregate> fetch(String applicationTokenId, String userTokenId, String userId,
+                                                  final Semaphore permits, long deadline) {
+        try {
+            long remainingNanos = deadline - System.nanoTime();
+            if (!Uninterruptibles.tryAcquireUninterruptibly(permits, Math.max(0, remainingNanos), TimeUnit.NANOSECONDS)) {
+                return Futures.immediateFailedFuture(new TimeoutException("Batch timed out before user was fetched"));
+            }
+            ListenableFuture<UserAggregate> user = userService.getUserAsync(applicationTokenId, userTokenId, userId);
+            Futures.addCallback(user, new FutureCallback<UserAggregate>() {
+                @Override
+                public void onSuccess(UserAggregate userAggregate) {
+                    permits.release();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    permits.release();
+                }
+            });
+            return user;
+        } catch (RuntimeException e) {
+            permits.release();
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    private UserAggregate await(String userId, ListenableFuture<UserAggregate> user, long deadline, UserBatchResult result) {
+        try {
+            UserAggregate userAggregate = Uninterruptibles.getUninterruptibly(user, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (userAggregate == null) {
+                result.addError(userId, STATUS_NOT_FOUND, "User not found");
+            }
+            return userAggregate;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            int status = statusOf(cause);
+            log.warn("getUsers: could not fetch userId {}, status {}: {}", userId, status, cause.toString());
+            result.addError(userId, status, String.valueOf(cause.getMessage()));
+        } catch (TimeoutException e) {
+            user.cancel(false);
+            result.addError(userId, STATUS_GATEWAY_TIMEOUT, "Timed out waiting for UIB");
+        }
+        return null;
+    }
+
+    static int statusOf(Throwable t) {
+        if (t instanceof WebApplicationException) {
+            return ((WebApplicationException) t).getResponse().getStatus();
+        } else if (t instanceof ConnectionFailedException) {
+            return UibAsync.unavailable((ConnectionFailedException) t).getStatus();
+        } else if (t instanceof ConflictExeption) {
+            return STATUS_CONFLICT;
+        } else if (t instanceof IllegalArgumentException) {
+            return STATUS_BAD_REQUEST;
+        } else if (t instanceof AuthenticationFailedException) {
+            return STATUS_BAD_GATEWAY;
+        } else if (t instanceof TimeoutException) {
+            return STATUS_GATEWAY_TIMEOUT;
+        }
+        return STATUS_INTERNAL_SERVER_ERROR;
+    }
+}
@@ -0,0 +1,21 @@
+package net.whydah.admin.user;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads users one at a time from an import stream, so the whole file is never held in memory.
+ */
+public interface UserImportReader extends Closeable {
+
+    /**
+     * @return the next record, possibly invalid, or null at end of stream.
+     * @throws IOException when the stream can not be read any further.
+     */
+    UserImportRecord next() throws IOException;
+
+    /**
+     * @return 1-based index of the record last returned by next(), or of the record next() failed to read.
+     */
+    long getIndex();
+}
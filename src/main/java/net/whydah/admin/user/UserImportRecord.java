@@ -0,0 +1,59 @@
+package net.whydah.admin.user;
+
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+import net.whydah.admin.user.uib.UserIdentityRepresentation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One user read from an import stream, with the roles to add after the user is created.
+ * A record that could not be parsed has invalidReason set and no identity.
+ */
+public class UserImportRecord {
+    private final long index;
+    private final UserIdentityRepresentation identity;
+    private final List<RoleRepresentationRequest> roles;
+    private final String invalidReason;
+
+    public UserImportRecord(long index, UserIdentityRepresentation identity, List<RoleRepresentationRequest> roles) {
+        this.index = index;
+        this.identity = identity;
+        this.roles = roles != null ? roles : Collections.<RoleRepresentationRequest>emptyList();
+        this.invalidReason = null;
+    }
+
+    private UserImportRecord(long index, String invalidReason) {
+        this.index = index;
+        this.identity = null;
+        this.roles = Collections.emptyList();
+        this.invalidReason = invalidReason;
+    }
+
+    public static UserImportRecord invalid(long index, String reason) {
+        return new UserImportRecord(index, reason);
+    }
+
+    /**
+     * @return 1-based position in the import stream.
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    public UserIdentityRepresentation getIdentity() {
+        return identity;
+    }
+
+    public List<RoleRepresentationRequest> getRoles() {
+        return roles;
+    }
+
+    public boolean isValid() {
+        return invalidReason == null;
+    }
+
+    public String getInvalidReason() {
+        return invalidReason;
+    }
+}
@@ -0,0 +1,309 @@
+package net.whydah.admin.user;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.whydah.admin.ConflictExeption;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.config.ExecutionMode;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+import net.whydah.admin.user.uib.UserIdentity;
+import org.codehaus.jackson.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.NotAuthorizedException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Creates users, and their roles, from an import stream.
+ *
+ * Records are read one at a time and created by a pool of workers. At most maxInFlight records of one import are
+ * read but not yet reported, so reading stops while UIB is slow and memory does not grow with the size of the
+ * import. A result line is written for each record as soon as it completes, followed by a summary line:
+ *
+ * {"record":1,"username":"jd","status":"created","uid":"...","roles":1}
+ * {"record":2,"username":"jd","status":"duplicate"}
+ * {"record":3,"username":"ab","status":"conflict"}
+ * {"record":4,"status":"invalid","message":"..."}
+ * {"record":5,"username":"cd","status":"failed","code":503,"message":"..."}
+ * {"summary":{"records":5,"created":1,"duplicate":1,"conflict":1,"invalid":1,"failed":1}}
+ *
+ * A username seen earlier in the same import is reported as duplicate without calling UIB. A user UIB already has
+ * is reported as conflict, and its roles are not added.
+ */
+@Service
+public class UserImportService {
+    private static final Logger log = LoggerFactory.getLogger(UserImportService.class);
+    private static final int DEFAULT_WORKERS = 8;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    enum Status {
+        CREATED("created"), DUPLICATE("duplicate"), CONFLICT("conflict"), INVALID("invalid"), FAILED("failed"),
+        ROLES_FAILED("rolesFailed");
+
+        private final String value;
+
+        Status(String value) {
+            this.value = value;
+        }
+
+        String value() {
+            return value;
+        }
+    }
+
+    private final UserService userService;
+    private final ExecutorService workers;
+    private final int maxInFlight;
+
+    @Autowired
+    public UserImportService(UserService userService, AppConfig appConfig) {
+        this(userService, createWorkers(appConfig), appConfig.getIntProperty("user.import.maxInFlight", DEFAULT_MAX_IN_FLIGHT));
+    }
+
+    UserImportService(UserService userService, ExecutorService workers, int maxInFlight) {
+        this.userService = userService;
+        this.workers = workers;
+        this.maxInFlight = maxInFlight;
+    }
+
+    private static ExecutorService createWorkers(AppConfig appConfig) {
+        if (appConfig.getExecutionMode() == ExecutionMode.VIRTUAL) {
+            return ExecutionMode.newVirtualThreadExecutor();
+        }
+        int workers = appConfig.getIntProperty("user.import.workers", DEFAULT_WORKERS);
+        log.info("User import workers={}", workers);
+        return Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder().setNameFormat("user-import-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Import all records from reader and write a result line per record to output.
+     * @throws IOException when reading the import stream or writing the results failed. Records already submitted
+     * are still created.
+     */
+    public void importUsers(final String applicationTokenId, final String userTokenId, UserImportReader reader, Writer output) throws IOException {
+        if (!userService.hasAccess(applicationTokenId, userTokenId)) {
+            throw new NotAuthorizedException("Not Authorized to importUsers()");
+        }
+        ResultWriter results = new ResultWriter(output);
+        BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+        Set<String> usernames = new HashSet<>();
+        int inFlight = 0;
+        try {
+            UserImportRecord record;
+            while ((record = readNext(reader, results)) != null) {
+                if (!record.isValid()) {
+                    results.write(new Result(record.getIndex(), null, Status.INVALID, record.getInvalidReason()));
+                    continue;
+                }
+                if (!usernames.add(record.getIdentity().getUsername().toLowerCase())) {
+                    results.write(new Result(record.getIndex(), record.getIdentity().getUsername(), Status.DUPLICATE, null));
+                    continue;
+                }
+                while (inFlight >= maxInFlight) {
+                    results.write(takeUninterruptibly(completed));
+                    inFlight--;
+                }
+                submit(applicationTokenId, userTokenId, record, completed);
+                inFlight++;
+                Result result;
+                while ((result = completed.poll()) != null) {
+                    results.write(result);
+                    inFlight--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        while (inFlight > 0) {
+            results.write(takeUninterruptibly(completed));
+            inFlight--;
+        }
+        results.writeSummary();
+        log.info("importUsers done: {}", results.summary());
+    }
+
+    private UserImportRecord readNext(UserImportReader reader, ResultWriter results) throws IOException {
+        try {
+            return reader.next();
+        } catch (IOException e) {
+            log.warn("importUsers: stopped reading import, {}", e.getMessage());
+            results.write(new Result(reader.getIndex(), null, Status.INVALID, e.getMessage()));
+            return null;
+        }
+    }
+
+    private void submit(final String applicationTokenId, final String userTokenId, final UserImportRecord record,
+                        final BlockingQueue<Result> completed) {
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                Result result;
+                try {
+                    result = importRecord(applicationTokenId, userTokenId, record);
+                } catch (RuntimeException e) {
+                    log.warn("importUsers: record {} failed", record.getIndex(), e);
+                    result = new Result(record.getIndex(), record.getIdentity().getUsername(), Status.FAILED, e.toString());
+                }
+                completed.add(result);
+            }
+        });
+    }
+
+    private Result importRecord(String applicationTokenId, String userTokenId, UserImportRecord record) {
+        String username = record.getIdentity().getUsername();
+        UserIdentity created;
+        try {
+            created = userService.createUser(applicationTokenId, userTokenId, record.getIdentity().toJson());
+        } catch (ConflictExeption e) {
+            return new Result(record.getIndex(), username, Status.CONFLICT, null);
+        } catch (RuntimeException e) {
+            return Result.failed(record.getIndex(), username, Status.FAILED, e);
+        }
+        if (created == null) {
+            return new Result(record.getIndex(), username, Status.FAILED, "UIB returned no user");
+        }
+        int roles = 0;
+        for (RoleRepresentationRequest role : record.getRoles()) {
+            try {
+                userService.addUserRole(applicationTokenId, userTokenId, created.getUid(), role);
+                roles++;
+            } catch (RuntimeException e) {
+                Result result = Result.failed(record.getIndex(), username, Status.ROLES_FAILED, e);
+                result.uid = created.getUid();
+                result.roles = roles;
+                return result;
+            }
+        }
+        Result result = new Result(record.getIndex(), username, Status.CREATED, null);
+        result.uid = created.getUid();
+        result.roles = roles;
+        return result;
+    }
+
+    private static Result takeUninterruptibly(BlockingQueue<Result> completed) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return completed.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static class Result {
+        final long index;
+        final String username;
+        final Status status;
+        final String message;
+        int code;
+        String uid;
+        int roles;
+
+        Result(long index, String username, Status status, String message) {
+            this.index = index;
+            this.username = username;
+            this.status = status;
+            this.message = message;
+        }
+
+        static Result failed(long index, String username, Status status, RuntimeException e) {
+            Result result = new Result(index, username, status, String.valueOf(e.getMessage()));
+            result.code = UserBatchService.statusOf(e);
+            return result;
+        }
+    }
+
+    /**
+     * Writes one json object per line, flushed so the client sees progress.
+     */
+    private static class ResultWriter {
+        private final Writer writer;
+        private final int[] counts = new int[Status.values().length];
+        private long records;
+
+        ResultWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        void write(Result result) throws IOException {
+            records++;
+            JsonGenerator json = startLine();
+            counts[result.status.ordinal()]++;
+            json.writeStartObject();
+            json.writeNumberField("record", result.index);
+            if (result.username != null) {
+                json.writeStringField("username", result.username);
+            }
+            json.writeStringField("status", result.status.value());
+            if (result.uid != null) {
+                json.writeStringField("uid", result.uid);
+                json.writeNumberField("roles", result.roles);
+            }
+            if (result.code != 0) {
+                json.writeNumberField("code", result.code);
+            }
+            if (result.message != null) {
+                json.writeStringField("message", result.message);
+            }
+            json.writeEndObject();
+            endLine(json);
+        }
+
+        void writeSummary() throws IOException {
+            JsonGenerator json = startLine();
+            json.writeStartObject();
+            json.writeObjectFieldStart("summary");
+            json.writeNumberField("records", records);
+            for (Status status : Status.values()) {
+                json.writeNumberField(status.value(), counts[status.ordinal()]);
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+            endLine(json);
+        }
+
+        String summary() {
+            StringBuilder summary = new StringBuilder("records=").append(records);
+            for (Status status : Status.values()) {
+                summary.append(", ").append(status.value()).append("=").append(counts[status.ordinal()]);
+            }
+            return summary.toString();
+        }
+
+        /**
+         * A generator per line, one generator would separate the root values with a space.
+         */
+        private JsonGenerator startLine() throws IOException {
+            return JsonCodec.mapper().getJsonFactory().createJsonGenerator(writer);
+        }
+
+        private void endLine(JsonGenerator json) throws IOException {
+            json.flush();
+            writer.write('\n');
+            writer.flush();
+        }
+    }
+}
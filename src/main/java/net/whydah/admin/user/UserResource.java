@@ -1,20 +1,39 @@
 package net.whydah.admin.user;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import net.whydah.admin.ConflictExeption;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.ContentNegotiator;
+import net.whydah.admin.EntityTags;
 import net.whydah.admin.application.Application;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.uib.UibAsync;
 import net.whydah.admin.user.uib.*;
+import net.whydah.admin.xml.DomainXmlWriter;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.*;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -24,13 +43,22 @@ import java.util.List;
 @Controller
 public class UserResource {
     private static final Logger log = LoggerFactory.getLogger(UserResource.class);
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
     UserService userService;
-    ObjectMapper mapper = new ObjectMapper();
+    private final UibAsync uibAsync;
+    private final UserBatchService userBatchService;
+    private final UserImportService userImportService;
+    private final UserRoleBatchService userRoleBatchService;
 
 
     @Autowired
-    public UserResource(UserService userService) {
+    public UserResource(UserService userService, UibAsync uibAsync, UserBatchService userBatchService,
+                        UserImportService userImportService, UserRoleBatchService userRoleBatchService) {
         this.userService = userService;
+        this.uibAsync = uibAsync;
+        this.userBatchService = userBatchService;
+        this.userImportService = userImportService;
+        this.userRoleBatchService = userRoleBatchService;
     }
 
     /**
@@ -47,9 +75,13 @@ public class UserResource {
     @Path("/")
     @Consumes({MediaType.APPLICATION_JSON,MediaType.APPLICATION_XML})
     @Produces({MediaType.APPLICATION_JSON,MediaType.APPLICATION_XML})
-    public Response createUser(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId, String userXml, @Context Request request) {
-        log.trace("createUser is called with userXml={}", userXml);
-        MediaType responseMediaType = findPreferedResponseType(request);
+    public Response createUser(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId, String userXml,
+                               @HeaderParam(HttpHeaders.ACCEPT) String accept, @Context Request request) {
+        log.trace("createUser is called with userXml={}", PayloadLog.of(userXml));
+        MediaType responseMediaType = ContentNegotiator.XML_OR_JSON.select(request, accept);
+        if (responseMediaType == null) {
+            return ContentNegotiator.XML_OR_JSON.notAcceptable();
+        }
         UserIdentity createdUser = null;
         String userResponse = null;
         UserAggregate userAggregate = null;
@@ -66,17 +98,15 @@ public class UserResource {
             if (createdUser != null) {
                 userAggregate = new UserAggregate(createdUser, new ArrayList<UserPropertyAndRole>());
                 if (responseMediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)){
-                    userResponse = mapper.writeValueAsString(userAggregate);
-                } else {
-                    userResponse = buildUserXml(userAggregate);
+                    userResponse = JsonCodec.writer(UserAggregate.class).writeValueAsString(userAggregate);
+                    return Response.ok(userResponse).build();
                 }
-
-                return Response.ok(userResponse).build();
+                return Response.ok(DomainXmlWriter.streaming(userAggregate)).build();
             } else {
                 return Response.status(Response.Status.NO_CONTENT).build();
             }
         } catch (IllegalArgumentException iae) {
-            log.error("createUser: Invalid xml={}", userXml, iae);
+            log.error("createUser: Invalid xml={}", PayloadLog.of(userXml), iae);
             return Response.status(Response.Status.BAD_REQUEST).build();
         } catch (IllegalStateException ise) {
             log.info(ise.getMessage());
@@ -93,6 +123,8 @@ public class UserResource {
         } catch (IOException e) {
             log.error("Could not map created user to Json. User: {}", userAggregate.toString(), e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        } catch (ServiceUnavailableException e) {
+            return e.getResponse();
         } catch (RuntimeException e) {
             log.error("Unkonwn error.", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -118,6 +150,8 @@ public class UserResource {
         try {
             isPasswordUpdated = userService.changePassword(applicationTokenId, userTokenId, userName, password);
 
+        } catch (ServiceUnavailableException e) {
+            return e.getResponse();
         } catch (RuntimeException e) {
             log.error("", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -130,52 +164,195 @@ public class UserResource {
     @GET
     @Path("/{userId}")
     @Produces({MediaType.APPLICATION_JSON,MediaType.APPLICATION_XML})
-    public Response getUser(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
-                                   @PathParam("userId") String userId, @Context Request req) {
+    public void getUser(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
+                        @PathParam("userId") final String userId, @HeaderParam(HttpHeaders.ACCEPT) String accept,
+                        @Context final Request req, @Suspended final AsyncResponse asyncResponse) {
         log.trace("userId is called with userId={}", userId);
-        MediaType responseMediaType = findPreferedResponseType(req);
+        final MediaType responseMediaType = ContentNegotiator.XML_OR_JSON.select(req, accept);
+        if (responseMediaType == null) {
+            asyncResponse.resume(ContentNegotiator.XML_OR_JSON.notAcceptable());
+            return;
+        }
         log.trace("Prefered mediatype from client {}", responseMediaType.toString());
-        String userResponse = "";
-        UserAggregate userAggregate = null;
-
+        uibAsync.suspend(asyncResponse);
         try {
-            userAggregate = userService.getUser(applicationTokenId, userTokenId, userId);
-            if (responseMediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)){
-                userResponse = mapper.writeValueAsString(userAggregate);
-            } else {
-                userResponse = buildUserXml(userAggregate);
+            ListenableFuture<UserAggregate> userAggregate = userService.getUserAsync(applicationTokenId, userTokenId, userId);
+            Futures.addCallback(userAggregate, new FutureCallback<UserAggregate>() {
+                @Override
+                public void onSuccess(UserAggregate userAggregate) {
+                    asyncResponse.resume(buildUserResponse(userAggregate, responseMediaType, req));
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    asyncResponse.resume(getUserFailed(userId, t));
+                }
+            });
+        } catch (RuntimeException e) {
+            asyncResponse.resume(getUserFailed(userId, e));
+        }
+    }
+
+    /**
+     * @return the user with its ETag, or 304 when If-None-Match has the current ETag.
+     */
+    private Response buildUserResponse(UserAggregate userAggregate, MediaType responseMediaType, Request req) {
+        if (responseMediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)){
+            try {
+                String userResponse = JsonCodec.writer(UserAggregate.class).writeValueAsString(userAggregate);
+                EntityTag entityTag = EntityTags.of(userResponse);
+                Response notModified = EntityTags.notModified(req, entityTag);
+                return notModified != null ? notModified : Response.ok(userResponse).tag(entityTag).build();
+            } catch (IOException e) {
+                log.warn("Could not create json from {}", userAggregate, e);
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
             }
-            return Response.ok(userResponse).build();
-        } catch (IllegalArgumentException iae) {
-            log.error("getUser: Invalid xml={}", userId, iae);
+        }
+        if (userAggregate == null) {
+            return Response.ok().build();
+        }
+        String userXml = DomainXmlWriter.toXml(userAggregate);
+        EntityTag entityTag = EntityTags.of(userXml);
+        Response notModified = EntityTags.notModified(req, entityTag);
+        return notModified != null ? notModified : Response.ok(userXml).tag(entityTag).build();
+    }
+
+    /**
+     * Optimistic concurrency for writes to a user. If-Match is compared with the ETags of the xml and json of the user,
+     * as read from UIB now, not from the cache. Without If-Match the write always proceeds.
+     *
+     * The check is best-effort: UIB has no conditional writes, so a write by another client between this read and
+     * the write is not detected.
+     * @return 412 when If-Match does not match, null when the write may proceed.
+     */
+    private Response checkIfMatch(Request request, String ifMatch, String applicationTokenId, String userTokenId, String userId) {
+        if (ifMatch == null) {
+            return null;
+        }
+        UserAggregate current = userService.getUserFromUib(applicationTokenId, userTokenId, userId);
+        if (current == null) {
+            return Response.status(Response.Status.PRECONDITION_FAILED).build();
+        }
+        String currentJson;
+        try {
+            currentJson = JsonCodec.writer(UserAggregate.class).writeValueAsString(current);
+        } catch (IOException e) {
+            log.warn("Could not create json from {}", current, e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+        Response preconditionFailed = EntityTags.preconditionFailed(request, EntityTags.of(DomainXmlWriter.toXml(current)), EntityTags.of(currentJson));
+        if (preconditionFailed != null) {
+            log.debug("If-Match {} does not match user {}", ifMatch, userId);
+        }
+        return preconditionFailed;
+    }
+
+    private Response getUserFailed(String userId, Throwable t) {
+        if (t instanceof ServiceUnavailableException) {
+            return ((ServiceUnavailableException) t).getResponse();
+        }
+        if (t instanceof IllegalArgumentException) {
+            log.error("getUser: Invalid xml={}", userId, t);
             return Response.status(Response.Status.BAD_REQUEST).build();
-        } catch (IllegalStateException ise) {
-            log.error(ise.getMessage());
+        } else if (t instanceof IllegalStateException) {
+            log.error(t.getMessage());
             return Response.status(Response.Status.CONFLICT).build();
-        } catch (JsonMappingException e) {
-            log.warn("Could not create json from {}", userAggregate.toString());
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
-        } catch (JsonGenerationException e) {
-            log.warn("Could not create json from {}", userAggregate.toString());
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        } else if (t instanceof ConnectionFailedException) {
+            log.warn("getUser: UIB request failed for userId {}", userId, t);
+            return UibAsync.unavailable((ConnectionFailedException) t);
+        }
+        log.error("", t);
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+    }
+
+    /**
+     * Look up many users in one request.
+     *
+     * @param userIdsJson json array of uids, ["uid1","uid2"]
+     * @return {"users":[...],"errors":[{"uid":"uid2","status":404,"message":"User not found"}]}
+     */
+    @POST
+    @Path("/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getUsers(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
+                             String userIdsJson) {
+        List<String> userIds;
+        try {
+            String[] ids = JsonCodec.reader(String[].class).readValue(userIdsJson);
+            userIds = ids != null ? Arrays.asList(ids) : Collections.<String>emptyList();
         } catch (IOException e) {
-            log.warn("Could not responseobject from {}", userAggregate.toString());
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+            log.info("getUsers: Invalid json={}", PayloadLog.of(userIdsJson));
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        log.trace("getUsers is called with {} userIds", userIds.size());
+        try {
+            final UserBatchResult result = userBatchService.getUsers(applicationTokenId, userTokenId, userIds);
+            StreamingOutput body = new StreamingOutput() {
+                @Override
+                public void write(OutputStream output) throws IOException, WebApplicationException {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                    result.writeJson(writer);
+                    writer.flush();
+                }
+            };
+            return Response.ok(body).build();
+        } catch (BatchTooLargeException e) {
+            log.info("getUsers: {}", e.getMessage());
+            return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE).build();
+        } catch (IllegalArgumentException e) {
+            log.info("getUsers: {}", e.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        } catch (WebApplicationException e) {
+            // NotAuthorizedException from hasAccess keeps its own status
+            throw e;
         } catch (RuntimeException e) {
-            log.error("", e);
+            log.error("getUsers-RuntimeException", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Create many users, with roles, from a stream. The request body is read while the results are written,
+     * one json line per user as it completes, see UserImportService.
+     *
+     * @param input application/x-ndjson with one user per line, or application/xml with whydahuser elements
+     */
+    @POST
+    @Path("/import")
+    @Consumes({APPLICATION_NDJSON, MediaType.APPLICATION_XML})
+    @Produces(APPLICATION_NDJSON)
+    public Response importUsers(@PathParam("applicationtokenid") final String applicationTokenId, @PathParam("userTokenId") final String userTokenId,
+                                @Context HttpHeaders headers, final InputStream input) {
+        final boolean isXml = MediaType.APPLICATION_XML_TYPE.isCompatible(headers.getMediaType());
+        log.trace("importUsers is called, xml={}", isXml);
+        StreamingOutput results = new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                UserImportReader reader = isXml ? new XmlUserImportReader(input) : new NdjsonUserImportReader(input);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                userImportService.importUsers(applicationTokenId, userTokenId, reader, writer);
+            }
+        };
+        return Response.ok(results).build();
+    }
+
     @DELETE
     @Path("/{userId}")
     public Response deleteUser(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
-                               @PathParam("userId") String userId) {
+                               @PathParam("userId") String userId, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                               @Context Request request) {
         log.trace("deleteUser, uid={}, roleid={}", userId);
 
         try {
+            Response preconditionFailed = checkIfMatch(request, ifMatch, applicationTokenId, userTokenId, userId);
+            if (preconditionFailed != null) {
+                return preconditionFailed;
+            }
             userService.deleteUser(applicationTokenId, userTokenId,userId);
             return Response.status(Response.Status.NO_CONTENT).build();
+        } catch (ServiceUnavailableException e) {
+            return e.getResponse();
         } catch (RuntimeException e) {
             log.error("deleteUser-RuntimeException. userId {}", userId, e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -186,92 +363,47 @@ public class UserResource {
     @GET
     @Path("/{userId}/roles")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getRoles(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId, @PathParam("userId") String userId) {
+    public Response getRoles(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId, @PathParam("userId") String userId,
+                             @Context Request req) {
         log.trace("getRoles, uid={}", userId);
 
         String roles = userService.getRolesAsString(applicationTokenId, userTokenId,userId);
-
-        return Response.ok(roles).build();
+        if (roles == null) {
+            return Response.ok().build();
+        }
+        EntityTag entityTag = EntityTags.of(roles);
+        Response notModified = EntityTags.notModified(req, entityTag);
+        return notModified != null ? notModified : Response.ok(roles).tag(entityTag).build();
     }
 
 
-    private MediaType findPreferedContentType(Request req) {
-        /**
-         * /* This method builds a list of possible variants. */
-        /* You must call Variant.VariantListBuilder.add() object before calling the Variant.VariantListBuilder.build() object. */
-        List<Variant> contentVariants =
-                Variant
-                        .mediaTypes(
-                                MediaType.valueOf(MediaType.APPLICATION_XML ),
-                                MediaType.valueOf(MediaType.APPLICATION_XML ),
-                                MediaType
-                                        .valueOf(MediaType.APPLICATION_JSON))
-//                        .encodings("gzip", "identity", "deflate").languages(Locale.ENGLISH,
-//                        Locale.FRENCH,
-//                        Locale.US)
-                        .add().build();
-
-          /* Based on the Accept* headers, an acceptable response variant is chosen.  If there is no acceptable variant,
-          selectVariant will return a null value. */
-
-        Variant bestResponseVariant = req.selectVariant(contentVariants);
-//        if(bestResponseVariant == null) {
-//
-//             /* Based on results, the optimal response variant can not be determined from the list given.  */
-//
-//            return Response.notAcceptable().build();
-//        }
-        return bestResponseVariant.getMediaType();
-    }
-    private MediaType findPreferedResponseType(Request req) {
-        /**
-         * /* This method builds a list of possible variants. */
-        /* You must call Variant.VariantListBuilder.add() object before calling the Variant.VariantListBuilder.build() object. */
-        List<Variant> responseVariants =
-                Variant
-                        .mediaTypes(
-                                MediaType.valueOf(MediaType.APPLICATION_XML ),
-                                MediaType.valueOf(MediaType.APPLICATION_XML ),
-                                MediaType
-                                        .valueOf(MediaType.APPLICATION_JSON))
-//                        .encodings("gzip", "identity", "deflate").languages(Locale.ENGLISH,
-//                        Locale.FRENCH,
-//                        Locale.US)
-                            .add().build();
-
-          /* Based on the Accept* headers, an acceptable response variant is chosen.  If there is no acceptable variant,
-          selectVariant will return a null value. */
-
-        Variant bestResponseVariant = req.selectVariant(responseVariants);
-//        if(bestResponseVariant == null) {
-//
-//             /* Based on results, the optimal response variant can not be determined from the list given.  */
-//
-//            return Response.notAcceptable().build();
-//        }
-        return bestResponseVariant.getMediaType();
-    }
-
     @POST
     @Path("/{userId}/role")
     @Consumes(MediaType.APPLICATION_XML)
     @Produces(MediaType.APPLICATION_XML)
     public Response addRole(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
-                            @PathParam("userId") String userId, String roleXml) {
-        log.trace("addRole is called with userId={}, roleXml {}", userId, roleXml);
+                            @PathParam("userId") String userId, String roleXml, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                            @Context Request request) {
+        log.trace("addRole is called with userId={}, roleXml {}", userId, PayloadLog.of(roleXml));
 
         try {
+            Response preconditionFailed = checkIfMatch(request, ifMatch, applicationTokenId, userTokenId, userId);
+            if (preconditionFailed != null) {
+                return preconditionFailed;
+            }
             RoleRepresentationRequest roleRequest = RoleRepresentationRequest.fromXml(roleXml);
             RoleRepresentation roleRepresentation = userService.addUserRole(applicationTokenId, userTokenId, userId, roleRequest);
             return Response.ok(roleRepresentation.toXML()).build();
         } catch (IllegalArgumentException iae) {
-            log.error("addRole: Invalid xml={}, userId {}", roleXml,userId, iae);
+            log.error("addRole: Invalid xml={}, userId {}", PayloadLog.of(roleXml),userId, iae);
             return Response.status(Response.Status.BAD_REQUEST).build();
         } catch (IllegalStateException ise) {
-            log.error("addRole: IllegalStateException xml={}, userId {}", roleXml,userId, ise);
+            log.error("addRole: IllegalStateException xml={}, userId {}", PayloadLog.of(roleXml),userId, ise);
             return Response.status(Response.Status.CONFLICT).build();
+        } catch (ServiceUnavailableException e) {
+            return e.getResponse();
         } catch (RuntimeException e) {
-            log.error("addRole: RuntimeException xml={}, userId {}", roleXml,userId, e);
+            log.error("addRole: RuntimeException xml={}, userId {}", PayloadLog.of(roleXml),userId, e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
         }
     }
@@ -295,21 +427,72 @@ public class UserResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response addRoleJson(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
-                            @PathParam("userId") String userId, String roleJson) {
-        log.trace("addRoleJson is called with userId={}, roleXml {}", userId, roleJson);
+                            @PathParam("userId") String userId, String roleJson, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                            @Context Request request) {
+        log.trace("addRoleJson is called with userId={}, roleXml {}", userId, PayloadLog.of(roleJson));
 
         try {
+            Response preconditionFailed = checkIfMatch(request, ifMatch, applicationTokenId, userTokenId, userId);
+            if (preconditionFailed != null) {
+                return preconditionFailed;
+            }
             RoleRepresentationRequest roleRequest = RoleRepresentationRequest.fromJson(roleJson);
             RoleRepresentation roleRepresentation = userService.addUserRole(applicationTokenId, userTokenId, userId, roleRequest);
             return Response.ok(roleRepresentation.toJson()).build();
         } catch (IllegalArgumentException iae) {
-            log.error("addRoleJson: Invalid json={}, userId {}", roleJson,userId, iae);
+            log.error("addRoleJson: Invalid json={}, userId {}", PayloadLog.of(roleJson),userId, iae);
             return Response.status(Response.Status.BAD_REQUEST).build();
         } catch (IllegalStateException ise) {
-            log.error("addRoleJson: IllegalStateException json={}, userId {}", roleJson,userId, ise);
+            log.error("addRoleJson: IllegalStateException json={}, userId {}", PayloadLog.of(roleJson),userId, ise);
             return Response.status(Response.Status.CONFLICT).build();
+        } catch (ServiceUnavailableException e) {
+            return e.getResponse();
+        } catch (RuntimeException e) {
+            log.error("addRoleJson: RuntimeException json={}, userId {}", PayloadLog.of(roleJson),userId, e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Add and remove roles for many users in one request, see UserRoleBatch for the payload
+     * and UserRoleBatchResult for the response.
+     */
+    @POST
+    @Path("/roles/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response changeRoles(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
+                                String roleBatchJson) {
+        UserRoleBatch batch;
+        try {
+            batch = UserRoleBatch.fromJson(roleBatchJson);
+        } catch (IllegalArgumentException iae) {
+            log.info("changeRoles: {}", iae.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        log.trace("changeRoles is called with {} grants and {} revokes", batch.getGrants().size(), batch.getRevokes().size());
+        try {
+            final UserRoleBatchResult result = userRoleBatchService.execute(applicationTokenId, userTokenId, batch);
+            StreamingOutput body = new StreamingOutput() {
+                @Override
+                public void write(OutputStream output) throws IOException, WebApplicationException {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                    result.writeJson(writer);
+                    writer.flush();
+                }
+            };
+            return Response.ok(body).build();
+        } catch (BatchTooLargeException e) {
+            log.info("changeRoles: {}", e.getMessage());
+            return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE).build();
+        } catch (IllegalArgumentException iae) {
+            log.info("changeRoles: {}", iae.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        } catch (WebApplicationException e) {
+            // NotAuthorizedException from hasAccess keeps its own status
+            throw e;
         } catch (RuntimeException e) {
-            log.error("addRoleJson: RuntimeException json={}, userId {}", roleJson,userId, e);
+            log.error("changeRoles-RuntimeException", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
         }
     }
@@ -317,12 +500,19 @@ public class UserResource {
     @DELETE
     @Path("/{userId}/role/{roleid}")
     public Response deleteRole(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
-                               @PathParam("userId") String userId, @PathParam("roleid") String roleid) {
+                               @PathParam("userId") String userId, @PathParam("roleid") String roleid,
+                               @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, @Context Request request) {
         log.trace("deleteRole, uid={}, roleid={}", userId, roleid);
 
         try {
+            Response preconditionFailed = checkIfMatch(request, ifMatch, applicationTokenId, userTokenId, userId);
+            if (preconditionFailed != null) {
+                return preconditionFailed;
+            }
             userService.deleteUserRole(applicationTokenId, userTokenId,userId, roleid);
             return Response.status(Response.Status.NO_CONTENT).build();
+        } catch (ServiceUnavailableException e) {
+            return e.getResponse();
         } catch (RuntimeException e) {
             log.error("deleteRole-RuntimeException. roleId {}", roleid, e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -339,7 +529,7 @@ public class UserResource {
     protected String buildApplicationJson(Application application) {
         String applicationCreatedJson = null;
         try {
-            applicationCreatedJson = mapper.writeValueAsString(application);
+            applicationCreatedJson = JsonCodec.writer(Application.class).writeValueAsString(application);
         } catch (IOException e) {
             log.warn("Could not convert application to Json {}", application.toString());
         }
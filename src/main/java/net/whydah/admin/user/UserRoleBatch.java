@@ -0,0 +1,110 @@
+package net.whydah.admin.user;
+
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Roles to add and remove in one request.
+ *
+ * {"grants":[{"uid":"u1","role":{"applicationId":"12","applicationName":"app","organizationName":"org",
+ *   "applicationRoleName":"user","applicationRoleValue":"true"}}],
+ *  "revokes":[{"uid":"u2","roleId":"r1"}]}
+ */
+public class UserRoleBatch {
+    private List<Grant> grants = new ArrayList<>();
+    private List<Revoke> revokes = new ArrayList<>();
+
+    public static UserRoleBatch fromJson(String json) {
+        try {
+            UserRoleBatch batch = JsonCodec.reader(UserRoleBatch.class).readValue(json);
+            if (batch == null) {
+                throw new IllegalArgumentException("Empty role batch");
+            }
+            return batch;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Error reading json for role batch: " + e.getMessage(), e);
+        }
+    }
+
+    public int size() {
+        return grants.size() + revokes.size();
+    }
+
+    public List<Grant> getGrants() {
+        return grants;
+    }
+
+    public void setGrants(List<Grant> grants) {
+        this.grants = grants != null ? grants : new ArrayList<Grant>();
+    }
+
+    public List<Revoke> getRevokes() {
+        return revokes;
+    }
+
+    public void setRevokes(List<Revoke> revokes) {
+        this.revokes = revokes != null ? revokes : new ArrayList<Revoke>();
+    }
+
+    public static class Grant {
+        private String uid;
+        private RoleRepresentationRequest role;
+
+        public Grant() {
+        }
+
+        public Grant(String uid, RoleRepresentationRequest role) {
+            this.uid = uid;
+            this.role = role;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        public void setUid(String uid) {
+            this.uid = uid;
+        }
+
+        public RoleRepresentationRequest getRole() {
+            return role;
+        }
+
+        public void setRole(RoleRepresentationRequest role) {
+            this.role = role;
+        }
+    }
+
+    public static class Revoke {
+        private String uid;
+        private String roleId;
+
+        public Revoke() {
+        }
+
+        public Revoke(String uid, String roleId) {
+            this.uid = uid;
+            this.roleId = roleId;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        public void setUid(String uid) {
+            this.uid = uid;
+        }
+
+        public String getRoleId() {
+            return roleId;
+        }
+
+        public void setRoleId(String roleId) {
+            this.roleId = roleId;
+        }
+    }
+}
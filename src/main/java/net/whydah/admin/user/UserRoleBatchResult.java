@@ -0,0 +1,128 @@
+package net.whydah.admin.user;
+
+import net.whydah.admin.json.JsonCodec;
+import org.codehaus.jackson.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Outcome per grant and revoke of a UserRoleBatch, in request order. Only failures carry a message.
+ *
+ * {"granted":1,"revoked":0,"failed":1,
+ *  "grants":[{"uid":"u1","status":201,"roleId":"r9"}],
+ *  "revokes":[{"uid":"u2","roleId":"r1","status":400,"message":"..."}]}
+ */
+public class UserRoleBatchResult {
+    static final int STATUS_CREATED = 201;
+    static final int STATUS_NO_CONTENT = 204;
+
+    private final UserRoleBatch batch;
+    private final Outcome[] grants;
+    private final Outcome[] revokes;
+
+    UserRoleBatchResult(UserRoleBatch batch) {
+        this.batch = batch;
+        this.grants = new Outcome[batch.getGrants().size()];
+        this.revokes = new Outcome[batch.getRevokes().size()];
+    }
+
+    void setGrant(int index, Outcome outcome) {
+        grants[index] = outcome;
+    }
+
+    void setRevoke(int index, Outcome outcome) {
+        revokes[index] = outcome;
+    }
+
+    public Outcome getGrant(int index) {
+        return grants[index];
+    }
+
+    public Outcome getRevoke(int index) {
+        return revokes[index];
+    }
+
+    public int getGranted() {
+        return count(grants, STATUS_CREATED);
+    }
+
+    public int getRevoked() {
+        return count(revokes, STATUS_NO_CONTENT);
+    }
+
+    public int getFailed() {
+        return grants.length + revokes.length - getGranted() - getRevoked();
+    }
+
+    private static int count(Outcome[] outcomes, int status) {
+        int count = 0;
+        for (Outcome outcome : outcomes) {
+            if (outcome != null && outcome.getStatus() == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void writeJson(Writer writer) throws IOException {
+        JsonGenerator json = JsonCodec.mapper().getJsonFactory().createJsonGenerator(writer);
+        json.writeStartObject();
+        json.writeNumberField("granted", getGranted());
+        json.writeNumberField("revoked", getRevoked());
+        json.writeNumberField("failed", getFailed());
+        json.writeArrayFieldStart("grants");
+        for (int i = 0; i < grants.length; i++) {
+            json.writeStartObject();
+            json.writeStringField("uid", batch.getGrants().get(i).getUid());
+            writeOutcome(json, grants[i]);
+            if (grants[i].getRoleId() != null) {
+                json.writeStringField("roleId", grants[i].getRoleId());
+            }
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeArrayFieldStart("revokes");
+        for (int i = 0; i < revokes.length; i++) {
+            json.writeStartObject();
+            json.writeStringField("uid", batch.getRevokes().get(i).getUid());
+            json.writeStringField("roleId", batch.getRevokes().get(i).getRoleId());
+            writeOutcome(json, revokes[i]);
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.flush();
+    }
+
+    private static void writeOutcome(JsonGenerator json, Outcome outcome) throws IOException {
+        json.writeNumberField("status", outcome.getStatus());
+        if (outcome.getMessage() != null) {
+            json.writeStringField("message", outcome.getMessage());
+        }
+    }
+
+    public static class Outcome {
+        private final int status;
+        private final String roleId;
+        private final String message;
+
+        Outcome(int status, String roleId, String message) {
+            this.status = status;
+            this.roleId = roleId;
+            this.message = message;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getRoleId() {
+            return roleId;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package net.whydah.admin.user;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.config.ExecutionMode;
+import net.whydah.admin.user.uib.RoleRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.NotAuthorizedException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Runs the grants and revokes of a UserRoleBatch on a worker pool.
+ *
+ * The operations of one uid run in order, grants before revokes, and at most maxParallelism uids of a batch are in
+ * flight. One RateLimiter is shared by all batches, so a large batch can not push UIB over
+ * user.roles.batch.permitsPerSecond role calls per second. The request waits at most timeoutMs; operations not
+ * started by then are reported with 503 and are never started, operations still waiting on UIB are reported with
+ * 504. Each item gets its own outcome, a failing item does not stop the others.
+ *
+ * An operation claims its result slot before it calls UIB, and the request claims the slots left empty at the
+ * deadline for the 503, so exactly one of them wins and an operation reported as not started can not run later.
+ */
+@Service
+public class UserRoleBatchService {
+    private static final Logger log = LoggerFactory.getLogger(UserRoleBatchService.class);
+    private static final int DEFAULT_WORKERS = 8;
+    private static final int DEFAULT_PERMITS_PER_SECOND = 100;
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final int DEFAULT_MAX_PARALLELISM = 4;
+    private static final int DEFAULT_TIMEOUT_MS = 60000;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_SERVICE_UNAVAILABLE = 503;
+    private static final int STATUS_GATEWAY_TIMEOUT = 504;
+    /** Outcome of an operation that has been started and not completed. */
+    private static final UserRoleBatchResult.Outcome IN_PROGRESS = new UserRoleBatchResult.Outcome(0, null, null);
+    /** Outcome of an operation that had not started at the deadline, and must not be started. */
+    private static final UserRoleBatchResult.Outcome NOT_STARTED = new UserRoleBatchResult.Outcome(0, null, null);
+
+    private final UserService userService;
+    private final ExecutorService executor;
+    private final ListeningExecutorService workers;
+    private final RateLimiter rateLimiter;
+    private final int maxSize;
+    private final int maxParallelism;
+    private final long timeoutMs;
+
+    @Autowired
+    public UserRoleBatchService(UserService userService, AppConfig appConfig) {
+        this(userService, createWorkers(appConfig),
+                RateLimiter.create(appConfig.getIntProperty("user.roles.batch.permitsPerSecond", DEFAULT_PERMITS_PER_SECOND)),
+                appConfig.getIntProperty("user.roles.batch.maxSize", DEFAULT_MAX_SIZE),
+                appConfig.getIntProperty("user.roles.batch.maxParallelism", DEFAULT_MAX_PARALLELISM),
+                appConfig.getIntProperty("user.roles.batch.timeoutMs", DEFAULT_TIMEOUT_MS));
+    }
+
+    UserRoleBatchService(UserService userService, ExecutorService executor, RateLimiter rateLimiter, int maxSize,
+                         int maxParallelism, long timeoutMs) {
+        this.userService = userService;
+        this.executor = executor;
+        this.workers = MoreExecutors.listeningDecorator(executor);
+        this.rateLimiter = rateLimiter;
+        this.maxSize = maxSize;
+        this.maxParallelism = maxParallelism;
+        this.timeoutMs = timeoutMs;
+    }
+
+    private static ExecutorService createWorkers(AppConfig appConfig) {
+        if (appConfig.getExecutionMode() == ExecutionMode.VIRTUAL) {
+            return ExecutionMode.newVirtualThreadExecutor();
+        }
+        int workers = appConfig.getIntProperty("user.roles.batch.workers", DEFAULT_WORKERS);
+        log.info("Role batch workers={}", workers);
+        return Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder().setNameFormat("role-batch-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @throws BatchTooLargeException when the batch has more than maxSize items.
+     */
+    public UserRoleBatchResult execute(final String applicationTokenId, final String userTokenId, UserRoleBatch batch) {
+        if (!userService.hasAccess(applicationTokenId, userTokenId)) {
+            throw new NotAuthorizedException("Not Authorized to change roles");
+        }
+        if (batch.size() > maxSize) {
+            throw new BatchTooLargeException("Too many items in role batch: " + batch.size() + ", max " + maxSize);
+        }
+        long start = System.currentTimeMillis();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        final AtomicReferenceArray<UserRoleBatchResult.Outcome> grants = new AtomicReferenceArray<>(batch.getGrants().size());
+        final AtomicReferenceArray<UserRoleBatchResult.Outcome> revokes = new AtomicReferenceArray<>(batch.getRevokes().size());
+        Map<String, List<Runnable>> operationsByUid = new LinkedHashMap<>();
+        for (int i = 0; i < grants.length(); i++) {
+            final int index = i;
+            final UserRoleBatch.Grant grant = batch.getGrants().get(i);
+            if (isEmpty(grant.getUid()) || grant.getRole() == null) {
+                grants.set(index, new UserRoleBatchResult.Outcome(STATUS_BAD_REQUEST, null, "uid and role are required"));
+                continue;
+            }
+            operations(operationsByUid, grant.getUid()).add(new Runnable() {
+                @Override
+                public void run() {
+                    if (!grants.compareAndSet(index, null, IN_PROGRESS)) {
+                        return;
+                    }
+                    grants.set(index, grant(applicationTokenId, userTokenId, grant));
+                }
+            });
+        }
+        for (int i = 0; i < revokes.length(); i++) {
+            final int index = i;
+            final UserRoleBatch.Revoke revoke = batch.getRevokes().get(i);
+            if (isEmpty(revoke.getUid()) || isEmpty(revoke.getRoleId())) {
+                revokes.set(index, new UserRoleBatchResult.Outcome(STATUS_BAD_REQUEST, null, "uid and roleId are required"));
+                continue;
+            }
+            operations(operationsByUid, revoke.getUid()).add(new Runnable() {
+                @Override
+                public void run() {
+                    if (!revokes.compareAndSet(index, null, IN_PROGRESS)) {
+                        return;
+                    }
+                    revokes.set(index, revoke(applicationTokenId, userTokenId, revoke));
+                }
+            });
+        }
+
+        List<ListenableFuture<?>> tasks = new ArrayList<>();
+        Semaphore permits = new Semaphore(maxParallelism);
+        for (List<Runnable> operations : operationsByUid.values()) {
+            if (!Uninterruptibles.tryAcquireUninterruptibly(permits, remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+                break;
+            }
+            tasks.add(workers.submit(sequentially(operations, permits, deadline)));
+        }
+        for (ListenableFuture<?> task : tasks) {
+            try {
+                Uninterruptibles.getUninterruptibly(task, remainingNanos(deadline), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                log.warn("Role batch task failed", e.getCause());
+            } catch (TimeoutException e) {
+                break;
+            }
+        }
+        for (ListenableFuture<?> task : tasks) {
+            // Not interrupted, a call already sent to UIB is left to complete
+            task.cancel(false);
+        }
+
+        UserRoleBatchResult result = new UserRoleBatchResult(batch);
+        for (int i = 0; i < grants.length(); i++) {
+            grants.compareAndSet(i, null, NOT_STARTED);
+            result.setGrant(i, completed(grants.get(i)));
+        }
+        for (int i = 0; i < revokes.length(); i++) {
+            revokes.compareAndSet(i, null, NOT_STARTED);
+            result.setRevoke(i, completed(revokes.get(i)));
+        }
+        log.info("Role batch done in {} ms: granted={}, revoked={}, failed={}", System.currentTimeMillis() - start,
+                result.getGranted(), result.getRevoked(), result.getFailed());
+        return result;
+    }
+
+    private static List<Runnable> operations(Map<String, List<Runnable>> operationsByUid, String uid) {
+        List<Runnable> operations = operationsByUid.get(uid);
+        if (operations == null) {
+            operations = new ArrayList<>();
+            operationsByUid.put(uid, operations);
+        }
+        return operations;
+    }
+
+    /**
+     * Run the operations of one uid in order. Operations reached after the deadline, or that can not get a rate
+     * limiter permit before it, are not started.
+     */
+    private Runnable sequentially(final List<Runnable> operations, final Semaphore permits, final long deadline) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (Runnable operation : operations) {
+                        if (System.nanoTime() >= deadline
+                                || !rateLimiter.tryAcquire(remainingNanos(deadline), TimeUnit.NANOSECONDS)
+                                || System.nanoTime() >= deadline) {
+                            return;
+                        }
+                        operation.run();
+                    }
+                } finally {
+                    permits.release();
+                }
+            }
+        };
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private UserRoleBatchResult.Outcome completed(UserRoleBatchResult.Outcome outcome) {
+        if (outcome == NOT_STARTED) {
+            return new UserRoleBatchResult.Outcome(STATUS_SERVICE_UNAVAILABLE, null, "Not started within " + timeoutMs + " ms");
+        }
+        if (outcome == IN_PROGRESS) {
+            return new UserRoleBatchResult.Outcome(STATUS_GATEWAY_TIMEOUT, null, "No answer from UIB within " + timeoutMs + " ms, the change may still be made");
+        }
+        return outcome;
+    }
+
+    private UserRoleBatchResult.Outcome grant(String applicationTokenId, String userTokenId, UserRoleBatch.Grant grant) {
+        try {
+            RoleRepresentation role = userService.addUserRole(applicationTokenId, userTokenId, grant.getUid(), grant.getRole());
+            String roleId = role != null ? role.getId() : null;
+            return new UserRoleBatchResult.Outcome(UserRoleBatchResult.STATUS_CREATED, roleId, null);
+        } catch (RuntimeException e) {
+            log.debug("Grant to {} failed", grant.getUid(), e);
+            return failed(e);
+        }
+    }
+
+    private UserRoleBatchResult.Outcome revoke(String applicationTokenId, String userTokenId, UserRoleBatch.Revoke revoke) {
+        try {
+            userService.deleteUserRole(applicationTokenId, userTokenId, revoke.getUid(), revoke.getRoleId());
+            return new UserRoleBatchResult.Outcome(UserRoleBatchResult.STATUS_NO_CONTENT, null, null);
+        } catch (RuntimeException e) {
+            log.debug("Revoke of {} from {} failed", revoke.getRoleId(), revoke.getUid(), e);
+            return failed(e);
+        }
+    }
+
+    private static UserRoleBatchResult.Outcome failed(RuntimeException e) {
+        return new UserRoleBatchResult.Outcome(UserBatchService.statusOf(e), null, String.valueOf(e.getMessage()));
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
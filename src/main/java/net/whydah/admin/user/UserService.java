@@ -1,7 +1,12 @@
 package net.whydah.admin.user;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import net.whydah.admin.CredentialStore;
+import net.whydah.admin.application.ApplicationCatalogue;
 import net.whydah.admin.user.uib.*;
+import net.whydah.admin.users.UserSearchIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,12 +24,18 @@ public class UserService {
 
     private final UibUserConnection uibUserConnection;
     private final CredentialStore credentialStore;
+    private final UserAggregateCache userAggregateCache;
+    private final UserSearchIndex userSearchIndex;
+    private final ApplicationCatalogue applicationCatalogue;
 
     @Autowired
-    public UserService(UibUserConnection uibUserConnection, CredentialStore credentialStore) {
+    public UserService(UibUserConnection uibUserConnection, CredentialStore credentialStore, UserAggregateCache userAggregateCache,
+                       UserSearchIndex userSearchIndex, ApplicationCatalogue applicationCatalogue) {
         this.uibUserConnection = uibUserConnection;
         this.credentialStore = credentialStore;
-        credentialStore.setUserAdminServiceTokenId("2ff16f110b320dcbacf050b3b9062465");
+        this.userAggregateCache = userAggregateCache;
+        this.userSearchIndex = userSearchIndex;
+        this.applicationCatalogue = applicationCatalogue;
     }
 
     public UserIdentity createUserFromXml(String applicationTokenId, String userTokenId, String userXml) {
@@ -41,7 +52,12 @@ public class UserService {
     public UserIdentity createUser(String applicationTokenId, String adminUserTokenId, String userJson) {
         UserIdentity userIdentity = null;
         if (hasAccess(applicationTokenId, adminUserTokenId)) {
-            userIdentity = uibUserConnection.createUser(credentialStore.getUserAdminServiceTokenId(), adminUserTokenId, userJson);
+            // The uid of a new user is not known before UIB returns it, so a failed create has nothing cached to invalidate
+            userIdentity = uibUserConnection.createUser(credentialStore.requireUserAdminServiceTokenId(), adminUserTokenId, userJson);
+            if (userIdentity != null) {
+                userAggregateCache.invalidate(userIdentity.getUid());
+                userSearchIndex.put(userIdentity);
+            }
         } else {
             throw new NotAuthorizedException("Not Authorized to create user");
         }
@@ -51,7 +67,11 @@ public class UserService {
     public boolean changePassword(String applicationTokenId, String adminUserTokenId, String userName, String password) {
         boolean isUpdated = false;
         if (hasAccess(applicationTokenId, adminUserTokenId)) {
-            isUpdated = uibUserConnection.changePassword(credentialStore.getUserAdminServiceTokenId(), adminUserTokenId, userName, password);
+            try {
+                isUpdated = uibUserConnection.changePassword(credentialStore.requireUserAdminServiceTokenId(), adminUserTokenId, userName, password);
+            } finally {
+                userAggregateCache.invalidateByUsername(userName);
+            }
         } else {
             throw new NotAuthorizedException("Not Authorized to change password");
         }
@@ -63,7 +83,11 @@ public class UserService {
         UserAggregate updatedUser = null;
         if (hasAccess(applicationTokenId, adminUserTokenId)) {
             UserPropertyAndRole userPropertyAndRole = UserPropertyAndRole.fromXml(propertyOrRoleXml);
-            updatedUser = uibUserConnection.addPropertyOrRole(credentialStore.getUserAdminServiceTokenId(), adminUserTokenId, userId, userPropertyAndRole);
+            try {
+                updatedUser = uibUserConnection.addPropertyOrRole(credentialStore.requireUserAdminServiceTokenId(), adminUserTokenId, userId, userPropertyAndRole);
+            } finally {
+                userAggregateCache.invalidate(userId);
+            }
         } else {
             throw new NotAuthorizedException("Not Authorized to add user role()");
         }
@@ -74,7 +98,12 @@ public class UserService {
     public RoleRepresentation addUserRole(String applicationTokenId, String adminUserTokenId, String userId, RoleRepresentationRequest roleRequest) {
         RoleRepresentation role = null;
         if (hasAccess(applicationTokenId, adminUserTokenId)) {
-            role = uibUserConnection.addRole(credentialStore.getUserAdminServiceTokenId(), adminUserTokenId, userId, roleRequest);
+            try {
+                role = uibUserConnection.addRole(credentialStore.requireUserAdminServiceTokenId(), adminUserTokenId, userId, roleRequest);
+            } finally {
+                userAggregateCache.invalidate(userId);
+            }
+            applicationCatalogue.fillApplicationName(role);
         } else {
             throw new NotAuthorizedException("Not Authorized to add user role()");
         }
@@ -83,7 +112,11 @@ public class UserService {
 
     public void deleteUserRole(String applicationTokenId, String adminUserTokenId, String userId, String userRoleId) {
         if (hasAccess(applicationTokenId, adminUserTokenId)) {
-           uibUserConnection.deleteUserRole(credentialStore.getUserAdminServiceTokenId(),adminUserTokenId,userId, userRoleId);
+            try {
+                uibUserConnection.deleteUserRole(credentialStore.requireUserAdminServiceTokenId(), adminUserTokenId, userId, userRoleId);
+            } finally {
+                userAggregateCache.invalidate(userId);
+            }
         } else {
             throw new NotAuthorizedException("Not Authorized to delete user role()");
         }
@@ -99,7 +132,13 @@ public class UserService {
         log.trace("getUser by userId {}", userId);
         UserAggregate userAggregate = null;
         if (hasAccess(applicationTokenId, userTokenId)) {
-            userAggregate = uibUserConnection.getUser(credentialStore.getUserAdminServiceTokenId(),userTokenId, userId);
+            userAggregate = userAggregateCache.get(userId, userTokenId);
+            if (userAggregate == null) {
+                long generation = userAggregateCache.generation(userId);
+                userAggregate = uibUserConnection.getUser(credentialStore.requireUserAdminServiceTokenId(),userTokenId, userId);
+                fillApplicationNames(userAggregate);
+                userAggregateCache.put(userId, userTokenId, userAggregate, generation);
+            }
         } else {
             throw new NotAuthorizedException("Not Authorized to getUser()");
         }
@@ -113,6 +152,53 @@ public class UserService {
         return userAggregate;
     }
 
+    /**
+     * getUser read from UIB, never from the cache, for checks that must see the current user. The cache is updated.
+     */
+    public UserAggregate getUserFromUib(String applicationTokenId, String userTokenId, String userId) {
+        if (!hasAccess(applicationTokenId, userTokenId)) {
+            throw new NotAuthorizedException("Not Authorized to getUser()");
+        }
+        long generation = userAggregateCache.generation(userId);
+        UserAggregate userAggregate = uibUserConnection.getUser(credentialStore.requireUserAdminServiceTokenId(), userTokenId, userId);
+        fillApplicationNames(userAggregate);
+        userAggregateCache.put(userId, userTokenId, userAggregate, generation);
+        return userAggregate;
+    }
+
+    /**
+     * Non-blocking getUser. A user cached for this userTokenId is returned as a completed future.
+     */
+    public ListenableFuture<UserAggregate> getUserAsync(String applicationTokenId, final String userTokenId, final String userId) {
+        log.trace("getUserAsync by userId {}", userId);
+        if (!hasAccess(applicationTokenId, userTokenId)) {
+            throw new NotAuthorizedException("Not Authorized to getUser()");
+        }
+        UserAggregate cachedUser = userAggregateCache.get(userId, userTokenId);
+        if (cachedUser != null) {
+            return Futures.immediateFuture(cachedUser);
+        }
+        final long generation = userAggregateCache.generation(userId);
+        ListenableFuture<UserAggregate> uibUser = uibUserConnection.getUserAsync(credentialStore.requireUserAdminServiceTokenId(), userTokenId, userId);
+        return Futures.transform(uibUser, new Function<UserAggregate, UserAggregate>() {
+            @Override
+            public UserAggregate apply(UserAggregate userAggregate) {
+                fillApplicationNames(userAggregate);
+                userAggregateCache.put(userId, userTokenId, userAggregate, generation);
+                return userAggregate;
+            }
+        });
+    }
+
+    /**
+     * Roles from UIB may lack applicationName, fill it in from ApplicationCatalogue before the user is cached.
+     */
+    private void fillApplicationNames(UserAggregate userAggregate) {
+        if (userAggregate != null) {
+            applicationCatalogue.fillApplicationNames(userAggregate.getRoles());
+        }
+    }
+
     private UserPropertyAndRole buildStubRole() {
         return new UserPropertyAndRole("id", "uid", "1", "appname", "orgName", "user", "true");
     }
@@ -126,7 +212,8 @@ public class UserService {
     public String getRolesAsString(String applicationTokenId, String userTokenId, String userId) {
         String roles = null;
         if (hasAccess(applicationTokenId, userTokenId)) {
-            roles = uibUserConnection.getRolesAsString(credentialStore.getUserAdminServiceTokenId(),userTokenId, userId);
+            roles = applicationCatalogue.fillApplicationNames(
+                    uibUserConnection.getRolesAsString(credentialStore.requireUserAdminServiceTokenId(),userTokenId, userId));
         } else {
             throw new NotAuthorizedException("Not Authorized to getRolesAsString()");
         }
@@ -136,7 +223,12 @@ public class UserService {
 
     public void deleteUser(String applicationTokenId, String userTokenId, String userId) {
         if (hasAccess(applicationTokenId, userTokenId)) {
-            uibUserConnection.deleteUser(credentialStore.getUserAdminServiceTokenId(), userTokenId, userId);
+            try {
+                uibUserConnection.deleteUser(credentialStore.requireUserAdminServiceTokenId(), userTokenId, userId);
+            } finally {
+                userAggregateCache.invalidate(userId);
+            }
+            userSearchIndex.remove(userId);
         } else {
             throw new NotAuthorizedException("Not Authorized to deleteUser()");
         }
@@ -0,0 +1,127 @@
+package net.whydah.admin.user;
+
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+import net.whydah.admin.user.uib.UserIdentityRepresentation;
+import net.whydah.admin.xml.StaxXmlDocument;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Any number of whydahuser elements, in the same format as GET user, inside a root element:
+ * <pre>
+ * &lt;whydahusers&gt;
+ *   &lt;whydahuser&gt;
+ *     &lt;identity&gt;&lt;username/&gt;&lt;cellPhone/&gt;&lt;email/&gt;&lt;firstname/&gt;&lt;lastname/&gt;&lt;personRef/&gt;&lt;/identity&gt;
+ *     &lt;applications&gt;
+ *       &lt;application&gt;&lt;appId/&gt;&lt;applicationName/&gt;&lt;orgName/&gt;&lt;roleName/&gt;&lt;roleValue/&gt;&lt;/application&gt;
+ *     &lt;/applications&gt;
+ *   &lt;/whydahuser&gt;
+ * &lt;/whydahusers&gt;
+ * </pre>
+ * Read with StAX, one whydahuser at a time. Malformed xml ends the import with an IOException.
+ */
+public class XmlUserImportReader implements UserImportReader {
+    private static final String USER = "whydahuser";
+    private static final String IDENTITY = "identity";
+    private static final String APPLICATION = "application";
+
+    private final XMLStreamReader xml;
+    private long index;
+
+    public XmlUserImportReader(InputStream input) throws IOException {
+        try {
+            this.xml = StaxXmlDocument.createReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not read xml", e);
+        }
+    }
+
+    @Override
+    public UserImportRecord next() throws IOException {
+        long next = index + 1;
+        try {
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT && USER.equals(xml.getLocalName())) {
+                    index = next;
+                    return readUser();
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            index = next;
+            throw new IOException("Malformed xml in or before user " + next + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public long getIndex() {
+        return index;
+    }
+
+    private UserImportRecord readUser() throws XMLStreamException {
+        Map<String, String> identity = new HashMap<>();
+        List<RoleRepresentationRequest> roles = new ArrayList<>();
+        Map<String, String> role = null;
+        Map<String, String> current = null;
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = xml.getLocalName();
+                if (IDENTITY.equals(name)) {
+                    current = identity;
+                } else if (APPLICATION.equals(name)) {
+                    role = new HashMap<>();
+                    current = role;
+                } else if (current != null) {
+                    current.put(name, xml.getElementText().trim());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = xml.getLocalName();
+                if (IDENTITY.equals(name)) {
+                    current = null;
+                } else if (APPLICATION.equals(name)) {
+                    roles.add(buildRole(role));
+                    current = null;
+                } else if (USER.equals(name)) {
+                    break;
+                }
+            }
+        }
+        if (identity.get("username") == null || identity.get("username").isEmpty()) {
+            return UserImportRecord.invalid(index, "Missing identity/username");
+        }
+        UserIdentityRepresentation userIdentity = new UserIdentityRepresentation(identity.get("username"),
+                identity.get("firstname"), identity.get("lastname"), identity.get("personRef"),
+                identity.get("email"), identity.get("cellPhone"));
+        return new UserImportRecord(index, userIdentity, roles);
+    }
+
+    private static RoleRepresentationRequest buildRole(Map<String, String> values) {
+        RoleRepresentationRequest role = new RoleRepresentationRequest();
+        role.setApplicationId(values.get("appId"));
+        role.setApplicationName(values.get("applicationName"));
+        role.setOrganizationName(values.get("orgName"));
+        role.setApplicationRoleName(values.get("roleName"));
+        role.setApplicationRoleValue(values.get("roleValue"));
+        return role;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+}
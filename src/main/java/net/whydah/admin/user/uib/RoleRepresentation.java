@@ -1,8 +1,10 @@
 package net.whydah.admin.user.uib;
 
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.metrics.LatencyHistogram;
+import net.whydah.admin.metrics.Metrics;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectMapper;
 
 import java.io.IOException;
 
@@ -10,6 +12,8 @@ import java.io.IOException;
  * @author <a href="mailto:erik-dev@fjas.no">Erik Drolshammer</a> 12/04/14
  */
 public class RoleRepresentation extends RoleRepresentationRequest {
+    private static final LatencyHistogram TO_XML_TIME = Metrics.codec("RoleRepresentation.toXML");
+    private static final LatencyHistogram FROM_JSON_TIME = Metrics.codec("RoleRepresentation.fromJson");
     private String id;
     private String uid;
 
@@ -45,22 +49,23 @@ public class RoleRepresentation extends RoleRepresentationRequest {
     }
 
     public String toXML() {
-        return "<application>" +
-                "            <id>" + id + "</id>\n" +
-                "            <uid>" + uid + "</uid>\n" +
-                "            <appId>" + getApplicationId() + "</appId>\n" +
-                "            <applicationName>" + getApplicationName() + "</applicationName>\n" +
-                "            <orgName>" + getOrganizationName() + "</orgName>\n" +
-                "            <roleName>" + getApplicationRoleName() + "</roleName>\n" +
-                "            <roleValue>" + getApplicationRoleValue() + "</roleValue>\n" +
-                "        </application>";
+        try (LatencyHistogram.Timer timer = TO_XML_TIME.time()) {
+            return "<application>" +
+                    "            <id>" + id + "</id>\n" +
+                    "            <uid>" + uid + "</uid>\n" +
+                    "            <appId>" + getApplicationId() + "</appId>\n" +
+                    "            <applicationName>" + getApplicationName() + "</applicationName>\n" +
+                    "            <orgName>" + getOrganizationName() + "</orgName>\n" +
+                    "            <roleName>" + getApplicationRoleName() + "</roleName>\n" +
+                    "            <roleValue>" + getApplicationRoleValue() + "</roleValue>\n" +
+                    "        </application>";
+        }
     }
 
     public static RoleRepresentation fromJson(String roleJson) {
         RoleRepresentation roleRepresentation = null;
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            roleRepresentation = mapper.readValue(roleJson, RoleRepresentation.class);
+        try (LatencyHistogram.Timer timer = FROM_JSON_TIME.time()) {
+            roleRepresentation = JsonCodec.reader(RoleRepresentation.class).readValue(roleJson);
 
         } catch (JsonMappingException e) {
             throw new IllegalArgumentException("Error mapping json for " + roleJson, e);
@@ -1,8 +1,13 @@
 package net.whydah.admin.user.uib;
 
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.metrics.LatencyHistogram;
+import net.whydah.admin.metrics.Metrics;
+import net.whydah.admin.xml.StaxXmlDocument;
+import net.whydah.admin.xml.XmlParsing;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -21,6 +26,9 @@ import java.io.StringReader;
  */
 public class RoleRepresentationRequest {
     private static final Logger log = LoggerFactory.getLogger(RoleRepresentationRequest.class);
+    private static final LatencyHistogram FROM_XML_TIME = Metrics.codec("RoleRepresentationRequest.fromXml");
+    private static final LatencyHistogram FROM_JSON_TIME = Metrics.codec("RoleRepresentationRequest.fromJson");
+    private static final LatencyHistogram TO_JSON_TIME = Metrics.codec("RoleRepresentationRequest.toJson");
     private String applicationId;
     private String applicationName;
 
@@ -65,10 +73,9 @@ public class RoleRepresentationRequest {
 
     public String toJson() {
         String userJson = null;
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            userJson =  mapper.writeValueAsString(this);
-            log.debug("toJson: {}", userJson);
+        try (LatencyHistogram.Timer timer = TO_JSON_TIME.time()) {
+            userJson =  JsonCodec.writer(getClass()).writeValueAsString(this);
+            log.debug("toJson: {}", PayloadLog.of(userJson));
         } catch (IOException e) {
             log.info("Could not create json from this object {}", toString(), e);
         }
@@ -77,9 +84,8 @@ public class RoleRepresentationRequest {
 
     public static RoleRepresentationRequest fromJson(String roleJson) {
         RoleRepresentationRequest roleRepresentation = null;
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            roleRepresentation = mapper.readValue(roleJson, RoleRepresentationRequest.class);
+        try (LatencyHistogram.Timer timer = FROM_JSON_TIME.time()) {
+            roleRepresentation = JsonCodec.reader(RoleRepresentationRequest.class).readValue(roleJson);
 
         } catch (JsonMappingException e) {
             throw new IllegalArgumentException("Error mapping json for " + roleJson, e);
@@ -111,7 +117,32 @@ public class RoleRepresentationRequest {
 //    }
 
     public static RoleRepresentationRequest fromXml(String roleXml) {
-        log.debug("Build UserPropertyAndRole from xml {}", roleXml);
+        try (LatencyHistogram.Timer timer = FROM_XML_TIME.time()) {
+            log.debug("Build UserPropertyAndRole from xml {}", PayloadLog.of(roleXml));
+            if (XmlParsing.useStax()) {
+                return fromXmlStax(roleXml);
+            }
+            return fromXmlDom(roleXml);
+        }
+    }
+
+    private static RoleRepresentationRequest fromXmlStax(String roleXml) {
+        RoleRepresentationRequest userPropertyAndRole = null;
+        try {
+            StaxXmlDocument doc = StaxXmlDocument.parse(roleXml);
+            userPropertyAndRole = new RoleRepresentationRequest();
+            userPropertyAndRole.setApplicationId(doc.evaluate("/application/appId"));
+            userPropertyAndRole.setApplicationName(doc.evaluate("/application/applicationName"));
+            userPropertyAndRole.setOrganizationName(doc.evaluate("/application/orgName"));
+            userPropertyAndRole.setApplicationRoleName(doc.evaluate("/application/roleName"));
+            userPropertyAndRole.setApplicationRoleValue(doc.evaluate("/application/roleValue"));
+        } catch (Exception e) {
+            log.warn("Could not create an UserPropertyAndRole from this xml {}", PayloadLog.of(roleXml), e);
+        }
+        return userPropertyAndRole;
+    }
+
+    private static RoleRepresentationRequest fromXmlDom(String roleXml) {
         RoleRepresentationRequest userPropertyAndRole = null;
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         try {
@@ -133,7 +164,7 @@ public class RoleRepresentationRequest {
             userPropertyAndRole.setApplicationRoleValue(roleValue);
 
         } catch (Exception e) {
-            log.warn("Could not create an UserPropertyAndRole from this xml {}", roleXml, e);
+            log.warn("Could not create an UserPropertyAndRole from this xml {}", PayloadLog.of(roleXml), e);
         }
         return userPropertyAndRole;
 
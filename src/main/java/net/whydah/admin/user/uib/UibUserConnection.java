@@ -1,16 +1,22 @@
 package net.whydah.admin.user.uib;
 
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import net.whydah.admin.AuthenticationFailedException;
 import net.whydah.admin.ConflictExeption;
-import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.uib.SingleFlight;
+import net.whydah.admin.uib.UibClient;
+import net.whydah.admin.uib.UibGuard;
+import net.whydah.admin.uib.UibOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.ws.rs.BadRequestException;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
@@ -29,36 +35,42 @@ public class UibUserConnection {
     private static final int STATUS_CREATED = 201;
     private static final int STATUS_CONFLICT = 409;
     private static final int STATUS_NO_CONTENT = 204;
+    private static final Function<UserAggregate, UserAggregate> COPY = new Function<UserAggregate, UserAggregate>() {
+        @Override
+        public UserAggregate apply(UserAggregate userAggregate) {
+            return userAggregate.copy();
+        }
+    };
 
 
     private final WebTarget uib;
+    private final UibGuard uibGuard;
+    private final SingleFlight singleFlight;
 
     @Autowired
-    public UibUserConnection(AppConfig appConfig) {
-        Client client = ClientBuilder.newClient();
-//        URI useridbackendUri = URI.create(appConfig.getProperty("userIdentityBackendUri"));
-        // uib = client.target(userIdentityBackendUri);
-        String uibUrl = appConfig.getProperty("useridentitybackend");
-        log.info("Connection to UserIdentityBackend on {}" , uibUrl);
-        uib = client.target(uibUrl);
+    public UibUserConnection(UibClient uibClient, UibGuard uibGuard, SingleFlight singleFlight) {
+        uib = uibClient.target();
+        this.uibGuard = uibGuard;
+        this.singleFlight = singleFlight;
     }
 
     public UserAggregate addUserAgregate(String userAdminServiceTokenId, String userTokenId, String userAggregateJson) {
         WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + userTokenId + "/user");
         UserAggregate userAggregate = null;
         UserAggregateRepresentation userAggregateRepresentation = null;
-        Response response = webResource.request(MediaType.APPLICATION_JSON).post(Entity.entity(userAggregateJson, MediaType.APPLICATION_JSON));
+        Response response = uibGuard.execute(UibOperation.USER_WRITE, "addUserAgregate", webResource.request(MediaType.APPLICATION_JSON).buildPost(Entity.entity(userAggregateJson, MediaType.APPLICATION_JSON)));
         int statusCode = response.getStatus();
+        String responseBody = response.readEntity(String.class);
         switch (statusCode) {
             case STATUS_OK:
-                log.trace("Response form Uib {}", response.readEntity(String.class));
+                log.trace("Response form Uib {}", PayloadLog.of(responseBody));
                 userAggregateRepresentation = UserAggregateRepresentation.fromJson(userAggregateJson);
                 break;
             case STATUS_BAD_REQUEST:
-                log.error("Response from UIB: {}: {}", response.getStatus(), response.readEntity(String.class));
-                throw new BadRequestException("BadRequest for Json " + userAggregateJson + ",  Status code " + response.getStatus());
+                log.error("Response from UIB: {}: {}", response.getStatus(), PayloadLog.of(responseBody));
+                throw new BadRequestException("BadRequest for Json " + PayloadLog.of(userAggregateJson) + ",  Status code " + response.getStatus());
             default:
-                log.error("Response from UIB: {}: {}", response.getStatus(), response.readEntity(String.class));
+                log.error("Response from UIB: {}: {}", response.getStatus(), PayloadLog.of(responseBody));
                 throw new AuthenticationFailedException("Authentication failed. Status code " + response.getStatus());
         }
         userAggregate = userAggregateRepresentation.getUserAggregate();
@@ -70,26 +82,26 @@ public class UibUserConnection {
         UserIdentity userIdentity = null;
         UserAggregateRepresentation userAggregateRepresentation = null;
        // userIdentityJson = "{\"username\":\"per\",\"firstName\":\"per\",\"lastName\":\"per\",\"email\":\"per.per@example.com\",\"cellPhone\":\"123456789\",\"personRef\":\"ref\"}";
-        Response response = webResource.request(MediaType.APPLICATION_JSON).post(Entity.entity(userIdentityJson, MediaType.APPLICATION_JSON));
+        Response response = uibGuard.execute(UibOperation.USER_WRITE, "createUser", webResource.request(MediaType.APPLICATION_JSON).buildPost(Entity.entity(userIdentityJson, MediaType.APPLICATION_JSON)));
         int statusCode = response.getStatus();
         String userJson = response.readEntity(String.class);
         switch (statusCode) {
             case STATUS_OK:
-                log.trace("createUser-Response form Uib {}", userJson);
+                log.trace("createUser-Response form Uib {}", PayloadLog.of(userJson));
                 userIdentity = UserIdentity.fromJson(userJson);
                 break;
             case STATUS_CREATED:
-                log.trace("createUser-userCreated {}", userJson);
+                log.trace("createUser-userCreated {}", PayloadLog.of(userJson));
                 userIdentity = UserIdentity.fromJson(userJson);
                 break;
             case STATUS_CONFLICT:
-                log.info("Duplicate creation of user attempted on {}", userIdentityJson);
-                throw new ConflictExeption("DuplicateCreateAttempted on " + userIdentityJson);
+                log.info("Duplicate creation of user attempted on {}", PayloadLog.of(userIdentityJson));
+                throw new ConflictExeption("DuplicateCreateAttempted on " + PayloadLog.of(userIdentityJson));
             case STATUS_BAD_REQUEST:
-                log.error("createUser-Response from UIB: {}: {}", response.getStatus(), userJson);
-                throw new BadRequestException("BadRequest for Json " + userIdentityJson + ",  Status code " + response.getStatus());
+                log.error("createUser-Response from UIB: {}: {}", response.getStatus(), PayloadLog.of(userJson));
+                throw new BadRequestException("BadRequest for Json " + PayloadLog.of(userIdentityJson) + ",  Status code " + response.getStatus());
             default:
-                log.error("createUser-Response from UIB: {}: {}", response.getStatus(), userJson);
+                log.error("createUser-Response from UIB: {}: {}", response.getStatus(), PayloadLog.of(userJson));
                 throw new AuthenticationFailedException("Authentication failed. Status code " + response.getStatus());
         }
         return userIdentity;
@@ -98,19 +110,19 @@ public class UibUserConnection {
     public boolean changePassword(String userAdminServiceTokenId, String adminUserTokenId, String userName, String password) {
         WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + adminUserTokenId + "/user").path(userName).path("changepassword");
         boolean updatedOk = false;
-        Response response = webResource.request(MediaType.APPLICATION_JSON).post(Entity.entity(password, MediaType.APPLICATION_JSON));
+        Response response = uibGuard.execute(UibOperation.USER_WRITE, "changePassword", webResource.request(MediaType.APPLICATION_JSON).buildPost(Entity.entity(password, MediaType.APPLICATION_JSON)));
         int statusCode = response.getStatus();
         String passwordJson = response.readEntity(String.class);
         switch (statusCode) {
             case STATUS_OK:
-                log.trace("changePassword-Response form Uib {}", passwordJson);
+                log.trace("changePassword-Response form Uib {}", PayloadLog.of(passwordJson));
                 updatedOk = true;
                 break;
             case STATUS_FORBIDDEN:
-                log.error("changePassword-Not allowed from UIB: {}: {} Using adminUserTokenId {}, userName {}", response.getStatus(), passwordJson);
+                log.error("changePassword-Not allowed from UIB: {}: {} Using adminUserTokenId {}, userName {}", response.getStatus(), PayloadLog.of(passwordJson));
                 break;
             default:
-                log.error("changePassword-Response from UIB: {}: {}", response.getStatus(), passwordJson);
+                log.error("changePassword-Response from UIB: {}: {}", response.getStatus(), PayloadLog.of(passwordJson));
                 throw new AuthenticationFailedException("Authentication failed. Status code " + response.getStatus());
         }
         return updatedOk;
@@ -118,28 +130,28 @@ public class UibUserConnection {
 
     public RoleRepresentation addRole(String userAdminServiceTokenId, String adminUserTokenId,String userId, RoleRepresentationRequest roleRequest) {
         WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + adminUserTokenId + "/user").path(userId).path("role");
-        Response response = webResource.request(MediaType.APPLICATION_JSON).post(Entity.entity(roleRequest.toJson(), MediaType.APPLICATION_JSON));
+        Response response = uibGuard.execute(UibOperation.USER_WRITE, "addRole", webResource.request(MediaType.APPLICATION_JSON).buildPost(Entity.entity(roleRequest.toJson(), MediaType.APPLICATION_JSON)));
         String roleJson = response.readEntity(String.class);
         RoleRepresentation role = null;
         int statusCode = response.getStatus();
 
         switch (statusCode) {
             case STATUS_OK:
-                log.trace("addRole-Response form Uib {}", roleJson);
+                log.trace("addRole-Response form Uib {}", PayloadLog.of(roleJson));
                 role = RoleRepresentation.fromJson(roleJson);
                 break;
             case STATUS_CREATED:
-                log.trace("addRole-roleCreated {}", roleJson);
+                log.trace("addRole-roleCreated {}", PayloadLog.of(roleJson));
                 role = RoleRepresentation.fromJson(roleJson);
                 break;
             case STATUS_CONFLICT:
-                log.info("Duplicate creation of role attempted on {}", roleJson);
-                throw new ConflictExeption("DuplicateCreateAttempted on " + roleJson);
+                log.info("Duplicate creation of role attempted on {}", PayloadLog.of(roleJson));
+                throw new ConflictExeption("DuplicateCreateAttempted on " + PayloadLog.of(roleJson));
             case STATUS_BAD_REQUEST:
-                log.error("addRole-Response from UIB: {}: {}",statusCode, roleJson);
-                throw new BadRequestException("BadRequest for Json " + roleJson + ",  Status code " + statusCode);
+                log.error("addRole-Response from UIB: {}: {}",statusCode, PayloadLog.of(roleJson));
+                throw new BadRequestException("BadRequest for Json " + PayloadLog.of(roleJson) + ",  Status code " + statusCode);
             default:
-                log.error("addRole-Response from UIB: {}: {}", statusCode, roleJson);
+                log.error("addRole-Response from UIB: {}: {}", statusCode, PayloadLog.of(roleJson));
                 throw new AuthenticationFailedException("Authentication failed. Status code " + statusCode);
         }
         return role;
@@ -148,8 +160,9 @@ public class UibUserConnection {
 
     public void deleteUserRole(String userAdminServiceTokenId, String adminUserTokenId, String userId, String userRoleId) {
         WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + adminUserTokenId + "/user").path(userId).path("role").path(userRoleId);
-        Response response = webResource.request(MediaType.APPLICATION_JSON).delete();
+        Response response = uibGuard.execute(UibOperation.USER_WRITE, "deleteUserRole", webResource.request(MediaType.APPLICATION_JSON).buildDelete());
         int statusCode = response.getStatus();
+        response.close();
 
         switch (statusCode) {
             case STATUS_NO_CONTENT:
@@ -171,57 +184,106 @@ public class UibUserConnection {
         WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + adminUserTokenId + "/user").path(userId).path("role");
         UserAggregate updatedUser = null;
         UserAggregateRepresentation userAggregateRepresentation = null;
-        Response response = webResource.request(MediaType.APPLICATION_JSON).post(Entity.entity(userPropertyAndRole.toJson(), MediaType.APPLICATION_JSON));
+        Response response = uibGuard.execute(UibOperation.USER_WRITE, "addPropertyOrRole", webResource.request(MediaType.APPLICATION_JSON).buildPost(Entity.entity(userPropertyAndRole.toJson(), MediaType.APPLICATION_JSON)));
         int statusCode = response.getStatus();
+        String responseBody = response.readEntity(String.class);
         switch (statusCode) {
             case STATUS_OK:
-                log.trace("addPropertyOrRole-Response form Uib {}", response.readEntity(String.class));
-                userAggregateRepresentation = UserAggregateRepresentation.fromJson(response.readEntity(String.class));
+                log.trace("addPropertyOrRole-Response form Uib {}", PayloadLog.of(responseBody));
+                userAggregateRepresentation = UserAggregateRepresentation.fromJson(responseBody);
                 if (userAggregateRepresentation != null) {
                     updatedUser = userAggregateRepresentation.getUserAggregate();
                 }
                 break;
             case STATUS_FORBIDDEN:
-                log.error("addPropertyOrRole-Not allowed from UIB: {}: {} Using adminUserTokenId {}, userName {}", response.getStatus(), response.readEntity(String.class));
+                log.error("addPropertyOrRole-Not allowed from UIB: {}: {} Using adminUserTokenId {}, userName {}", response.getStatus(), PayloadLog.of(responseBody));
                 break;
             default:
-                log.error("addPropertyOrRole-Response from UIB: {}: {}", response.getStatus(), response.readEntity(String.class));
+                log.error("addPropertyOrRole-Response from UIB: {}: {}", response.getStatus(), PayloadLog.of(responseBody));
                 throw new AuthenticationFailedException("addPropertyOrRole failed. Status code " + response.getStatus());
         }
         return updatedUser;
     }
 
+    /**
+     * Concurrent calls for the same user and adminUserTokenId share one UIB call, see SingleFlight.
+     */
     public UserAggregate getUser(String userAdminServiceTokenId, String adminUserTokenId, String userId) {
-        WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + adminUserTokenId + "/user").path(userId);
+        final WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + adminUserTokenId + "/user").path(userId);
+        return singleFlight.call(SingleFlight.key("getUser", userId, adminUserTokenId), new Supplier<UserAggregate>() {
+            @Override
+            public UserAggregate get() {
+                Response response = uibGuard.execute(UibOperation.USER_READ, "getUser", webResource.request(MediaType.APPLICATION_JSON).buildGet());
+                return buildUser(response);
+            }
+        }, COPY);
+    }
+
+    /**
+     * Non-blocking getUser, see UibAsync. Shares the UIB call with concurrent getUser calls.
+     */
+    public ListenableFuture<UserAggregate> getUserAsync(String userAdminServiceTokenId, String adminUserTokenId, String userId) {
+        final WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + adminUserTokenId + "/user").path(userId);
+        return singleFlight.callAsync(SingleFlight.key("getUser", userId, adminUserTokenId), new Supplier<ListenableFuture<UserAggregate>>() {
+            @Override
+            public ListenableFuture<UserAggregate> get() {
+                return Futures.transform(uibGuard.executeAsync(UibOperation.USER_READ, "getUserAsync", webResource.request(MediaType.APPLICATION_JSON)), new Function<Response, UserAggregate>() {
+                    @Override
+                    public UserAggregate apply(Response response) {
+                        return buildUser(response);
+                    }
+                });
+            }
+        }, COPY);
+    }
+
+    private UserAggregate buildUser(Response response) {
         UserAggregate userAggregate = null;
         UserAggregateRepresentation userAggregateRepresentation = null;
-        Response response = webResource.request(MediaType.APPLICATION_JSON).get();
         int statusCode = response.getStatus();
         String responseBody = response.readEntity(String.class);
         switch (statusCode) {
             case STATUS_OK:
-                log.trace("getUser-Response form Uib {}", responseBody);
+                log.trace("getUser-Response form Uib {}", PayloadLog.of(responseBody));
                 userAggregateRepresentation = UserAggregateRepresentation.fromJson(responseBody);
                 if (userAggregateRepresentation != null) {
                     userAggregate = userAggregateRepresentation.getUserAggregate();
                 }
                 break;
             case STATUS_FORBIDDEN:
-                log.error("getUser-Not allowed from UIB: {}: {} Using adminUserTokenId {}, userName {}", response.getStatus(), responseBody);
+                log.error("getUser-Not allowed from UIB: {}: {} Using adminUserTokenId {}, userName {}", response.getStatus(), PayloadLog.of(responseBody));
                 break;
             default:
-                log.error("getUser-Response from UIB: {}: {}", response.getStatus(), responseBody);
+                log.error("getUser-Response from UIB: {}: {}", response.getStatus(), PayloadLog.of(responseBody));
                 throw new AuthenticationFailedException("getUser failed. Status code " + response.getStatus());
         }
         return userAggregate;
     }
 
     public String getRolesAsString(String userAdminServiceTokenId, String userTokenId, String userId) {
-        WebTarget webResource = uib.path(userAdminServiceTokenId).path(userTokenId).path("/user").path(userId).path("roles");
-        String responseBody = null;
-        Response response = webResource.request(MediaType.APPLICATION_JSON).get();
-        responseBody = findResponseBody("getRolesAsString",response);
-        return responseBody;
+        final WebTarget webResource = uib.path(userAdminServiceTokenId).path(userTokenId).path("/user").path(userId).path("roles");
+        return singleFlight.call(SingleFlight.key("getRolesAsString", userId, userTokenId), new Supplier<String>() {
+            @Override
+            public String get() {
+                Response response = uibGuard.execute(UibOperation.USER_READ, "getRolesAsString", webResource.request(MediaType.APPLICATION_JSON).buildGet());
+                return findResponseBody("getRolesAsString", response);
+            }
+        });
+    }
+
+    public ListenableFuture<String> getRolesAsStringAsync(String userAdminServiceTokenId, String userTokenId, String userId) {
+        final WebTarget webResource = uib.path(userAdminServiceTokenId).path(userTokenId).path("/user").path(userId).path("roles");
+        return singleFlight.callAsync(SingleFlight.key("getRolesAsString", userId, userTokenId), new Supplier<ListenableFuture<String>>() {
+            @Override
+            public ListenableFuture<String> get() {
+                return Futures.transform(uibGuard.executeAsync(UibOperation.USER_READ, "getRolesAsStringAsync", webResource.request(MediaType.APPLICATION_JSON)), new Function<Response, String>() {
+                    @Override
+                    public String apply(Response response) {
+                        return findResponseBody("getRolesAsString", response);
+                    }
+                });
+            }
+        });
     }
 
     private String findResponseBody(String methodName, Response response) {
@@ -230,14 +292,14 @@ public class UibUserConnection {
         responseBody = response.readEntity(String.class);
         switch (statusCode) {
             case STATUS_OK:
-                log.trace("{}-Response form Uib {}", methodName,responseBody);
+                log.trace("{}-Response form Uib {}", methodName, PayloadLog.of(responseBody));
                 break;
             case STATUS_FORBIDDEN:
-                log.error("{}-Not allowed from UIB: {}: {} ", methodName,response.getStatus(), responseBody);
+                log.error("{}-Not allowed from UIB: {}: {} ", methodName, response.getStatus(), PayloadLog.of(responseBody));
                 responseBody = null;
                 break;
             default:
-                log.error("{}-Response from UIB: {}: {}", methodName,response.getStatus(), responseBody);
+                log.error("{}-Response from UIB: {}: {}", methodName, response.getStatus(), PayloadLog.of(responseBody));
                 throw new AuthenticationFailedException("getUser failed. Status code " + response.getStatus());
         }
         return responseBody;
@@ -246,8 +308,9 @@ public class UibUserConnection {
 
     public void deleteUser(String userAdminServiceTokenId, String adminUserTokenId, String userId) {
         WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + adminUserTokenId + "/user").path(userId);
-        Response response = webResource.request(MediaType.APPLICATION_JSON).delete();
+        Response response = uibGuard.execute(UibOperation.USER_WRITE, "deleteUser", webResource.request(MediaType.APPLICATION_JSON).buildDelete());
         int statusCode = response.getStatus();
+        response.close();
 
         switch (statusCode) {
             case STATUS_NO_CONTENT:
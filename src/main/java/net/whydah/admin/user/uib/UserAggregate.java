@@ -1,6 +1,11 @@
 package net.whydah.admin.user.uib;
 
-import org.codehaus.jackson.map.ObjectMapper;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.metrics.LatencyHistogram;
+import net.whydah.admin.metrics.Metrics;
+import net.whydah.admin.xml.DomainXmlWriter;
+import net.whydah.admin.xml.StaxXmlDocument;
+import net.whydah.admin.xml.XmlParsing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -18,6 +23,8 @@ import java.util.List;
 
 public class UserAggregate {
     private static final Logger log = LoggerFactory.getLogger(UserAggregate.class);
+    private static final LatencyHistogram FROM_XML_TIME = Metrics.codec("UserAggregate.fromXML");
+    private static final LatencyHistogram TO_JSON_TIME = Metrics.codec("UserAggregate.toJson");
     private UserIdentity identity = null;
     private List<UserPropertyAndRole> roles = new ArrayList<>();
 
@@ -30,42 +37,39 @@ public class UserAggregate {
     }
 
     public String toXML() {
-        StringBuilder strb = new StringBuilder();
-        String headAndIdentity = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
-                "<whydahuser>\n" +
-                "    <identity>\n" +
-                "        <username>" + identity.getUsername() + "</username>\n" +
-                "        <cellPhone>" + (identity.getCellPhone() != null ? identity.getCellPhone() : "") + "</cellPhone>\n" +
-                "        <email>" + identity.getEmail() + "</email>\n" +
-                "        <firstname>" + identity.getFirstName() +"</firstname>\n" +
-                "        <lastname>" + identity.getLastName() + "</lastname>\n" +
-                "        <personRef>" + (identity.getPersonRef() != null ? identity.getPersonRef() : "") + "</personRef>\n" +
-                "        <UID>" + identity.getUid() + "</UID>\n" +
-                "    </identity>\n" +
-                "    <applications>\n";
-         strb.append(headAndIdentity);
-
-        for (UserPropertyAndRole u : roles) {
-                    strb.append(
-                    "        <application>\n" +
-                    "            <appId>" + u.getApplicationId() + "</appId>\n" +
-                    "            <applicationName>" + u.getApplicationName() + "</applicationName>\n" +
-                    "            <roleName>" + u.getApplicationRoleName() + "</roleName>\n" +
-                    "            <roleValue>" + u.getApplicationRoleValue() + "</roleValue>\n" +
-                    "        </application>\n"
-                    );
-        }
-        strb.append(
-                "    </applications>\n" +
-                "</whydahuser>"
-        );
-        return strb.toString();
+        return DomainXmlWriter.toXml(this);
     }
 
     /**
      * Copy from UserToken.parseAndUpdatefromUserIdentity from SecurityTokenService
      */
     public static UserAggregate fromXML(String userIdentityXML) {
+        try (LatencyHistogram.Timer timer = FROM_XML_TIME.time()) {
+            if (XmlParsing.useStax()) {
+                return fromXmlStax(userIdentityXML);
+            }
+            return fromXmlDom(userIdentityXML);
+        }
+    }
+
+    private static UserAggregate fromXmlStax(String userIdentityXML) {
+        try {
+            StaxXmlDocument doc = StaxXmlDocument.parse(userIdentityXML);
+            UserIdentity identity = new UserIdentity();
+            identity.setUid(doc.evaluate("//identity/UID"));
+            identity.setUsername(doc.evaluate("//identity/username"));
+            identity.setFirstName(doc.evaluate("//identity/firstname"));
+            identity.setLastName(doc.evaluate("//lastname"));
+            identity.setEmail(doc.evaluate("//email"));
+            identity.setPersonRef(doc.evaluate("//personRef"));
+            return new UserAggregate(identity, null);
+        } catch (Exception e) {
+            //log.error("Error parsing userIdentityXML " + userIdentityXML, e);
+        }
+        return null;
+    }
+
+    private static UserAggregate fromXmlDom(String userIdentityXML) {
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         try {
             DocumentBuilder documentBuilder = dbf.newDocumentBuilder();
@@ -222,11 +226,29 @@ public class UserAggregate {
         this.roles = roles;
     }
 
+    /**
+     * @return deep copy, which may be modified without affecting this user.
+     */
+    public UserAggregate copy() {
+        UserIdentity identityCopy = identity == null ? null : new UserIdentity(identity.getUid(), identity.getUsername(),
+                identity.getFirstName(), identity.getLastName(), identity.getPersonRef(), identity.getEmail(),
+                identity.getCellPhone(), identity.password);
+        List<UserPropertyAndRole> rolesCopy = null;
+        if (roles != null) {
+            rolesCopy = new ArrayList<>(roles.size());
+            for (UserPropertyAndRole role : roles) {
+                rolesCopy.add(new UserPropertyAndRole(role.getId(), role.getUid(), role.getApplicationId(),
+                        role.getApplicationName(), role.getOrganizationName(), role.getApplicationRoleName(),
+                        role.getApplicationRoleValue()));
+            }
+        }
+        return new UserAggregate(identityCopy, rolesCopy);
+    }
+
     public String toJson() {
         String userJson = null;
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            userJson =  mapper.writeValueAsString(this);
+        try (LatencyHistogram.Timer timer = TO_JSON_TIME.time()) {
+            userJson =  JsonCodec.writer(getClass()).writeValueAsString(this);
         } catch (IOException e) {
             log.info("Could not create json from this object {}", toString(), e);
         }
@@ -1,7 +1,8 @@
 package net.whydah.admin.user.uib;
 
 import net.whydah.admin.MisconfigurationExeption;
-import org.codehaus.jackson.map.ObjectMapper;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.logging.PayloadLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,12 +57,11 @@ public class UserAggregateRepresentation {
 
     public static UserAggregateRepresentation fromJson(String userAggregateJson){
         UserAggregateRepresentation userAggregate = null;
-        ObjectMapper objectMapper = new ObjectMapper();
         Writer strWriter = new StringWriter();
         try {
-            userAggregate =  objectMapper.readValue(userAggregateJson, UserAggregateRepresentation.class);
+            userAggregate =  JsonCodec.reader(UserAggregateRepresentation.class).readValue(userAggregateJson);
         } catch (IOException e) {
-            log.info("Could not create json string from {}. Error Msg {}", userAggregateJson, e.getMessage());
+            log.info("Could not create json string from {}. Error Msg {}", PayloadLog.of(userAggregateJson), e.getMessage());
             throw new MisconfigurationExeption("Could not create json from json input: " + userAggregateJson,e);
         }
         return userAggregate;
@@ -1,8 +1,10 @@
 package net.whydah.admin.user.uib;
 
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.metrics.LatencyHistogram;
+import net.whydah.admin.metrics.Metrics;
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +22,8 @@ import java.io.Serializable;
 @JsonIgnoreProperties(ignoreUnknown=true)
 public class UserIdentity extends UserIdentityRepresentation implements Serializable {
     private static final Logger log = LoggerFactory.getLogger(UserIdentity.class);
+    private static final LatencyHistogram FROM_JSON_TIME = Metrics.codec("UserIdentity.fromJson");
+    private static final LatencyHistogram TO_XML_TIME = Metrics.codec("UserIdentity.toXML");
     private static final long serialVersionUID = 1;
 
     private String uid;
@@ -127,10 +131,9 @@ public class UserIdentity extends UserIdentityRepresentation implements Serializ
 
     public static UserIdentity fromJson(String userJson) {
         UserIdentity userIdentity = null;
-        try {
+        try (LatencyHistogram.Timer timer = FROM_JSON_TIME.time()) {
 
-            ObjectMapper mapper = new ObjectMapper();
-            userIdentity = mapper.readValue(userJson, UserIdentity.class);
+            userIdentity = JsonCodec.reader(UserIdentity.class).readValue(userJson);
 
             String email = userIdentity.getEmail();
             if (email.contains("+")){
@@ -170,18 +173,20 @@ public class UserIdentity extends UserIdentityRepresentation implements Serializ
     }
 
     public String toXML() {
-        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
-                "<whydahuser>\n" +
-                "    <identity>\n" +
-                "        <username>" + getUsername() + "</username>\n" +
-                "        <cellPhone>" + (getCellPhone() != null ? getCellPhone() : "") + "</cellPhone>\n" +
-                "        <email>" + getEmail() + "</email>\n" +
-                "        <firstname>" + getFirstName() + "</firstname>\n" +
-                "        <lastname>" + getLastName() + "</lastname>\n" +
-                "        <personRef>" + (getPersonRef() != null ? getPersonRef() : "") + "</personRef>\n" +
-                "        <UID>" + getUid() + "</UID>\n" +
-                "    </identity>\n" +
-                "</whydahuser>";
+        try (LatencyHistogram.Timer timer = TO_XML_TIME.time()) {
+            return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+                    "<whydahuser>\n" +
+                    "    <identity>\n" +
+                    "        <username>" + getUsername() + "</username>\n" +
+                    "        <cellPhone>" + (getCellPhone() != null ? getCellPhone() : "") + "</cellPhone>\n" +
+                    "        <email>" + getEmail() + "</email>\n" +
+                    "        <firstname>" + getFirstName() + "</firstname>\n" +
+                    "        <lastname>" + getLastName() + "</lastname>\n" +
+                    "        <personRef>" + (getPersonRef() != null ? getPersonRef() : "") + "</personRef>\n" +
+                    "        <UID>" + getUid() + "</UID>\n" +
+                    "    </identity>\n" +
+                    "</whydahuser>";
+        }
     }
 
 
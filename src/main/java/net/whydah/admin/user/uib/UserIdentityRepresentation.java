@@ -1,6 +1,7 @@
 package net.whydah.admin.user.uib;
 
-import org.codehaus.jackson.map.ObjectMapper;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.logging.PayloadLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,10 +77,9 @@ public class UserIdentityRepresentation {
 
     public String toJson() {
         String userJson = null;
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            userJson =  mapper.writeValueAsString(this);
-            log.debug("toJson: {}", userJson);
+            userJson =  JsonCodec.writer(getClass()).writeValueAsString(this);
+            log.debug("toJson: {}", PayloadLog.of(userJson));
         } catch (IOException e) {
             log.info("Could not create json from this object {}", toString(), e);
         }
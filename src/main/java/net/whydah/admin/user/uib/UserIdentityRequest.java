@@ -1,6 +1,9 @@
 package net.whydah.admin.user.uib;
 
-import org.codehaus.jackson.map.ObjectMapper;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.xml.StaxXmlDocument;
+import net.whydah.admin.xml.XmlParsing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -62,7 +65,32 @@ public class UserIdentityRequest implements Serializable{
     }
 
     public static UserIdentityRequest fromXML(String userIdentityXML) {
-        log.debug("parse userIdentityXML {} ", userIdentityXML);
+        log.debug("parse userIdentityXML {} ", PayloadLog.of(userIdentityXML));
+        if (XmlParsing.useStax()) {
+            return fromXmlStax(userIdentityXML);
+        }
+        return fromXmlDom(userIdentityXML);
+    }
+
+    private static UserIdentityRequest fromXmlStax(String userIdentityXML) {
+        UserIdentityRequest identity = null;
+        try {
+            StaxXmlDocument doc = StaxXmlDocument.parse(userIdentityXML);
+            String userName = doc.evaluate("//identity/username");
+            String firstName = doc.evaluate("//identity/firstname");
+            String lastName = doc.evaluate("//lastname");
+            String email = doc.evaluate("//email");
+            String personRef = doc.evaluate("//personRef");
+            String cellPhone = doc.evaluate("//cellPhone");
+
+            identity = new UserIdentityRequest(userName, firstName, lastName, personRef, email, cellPhone);
+        } catch (Exception e) {
+            log.debug("Error parsing userIdentityXML {}", PayloadLog.of(userIdentityXML), e);
+        }
+        return identity;
+    }
+
+    private static UserIdentityRequest fromXmlDom(String userIdentityXML) {
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         UserIdentityRequest identity = null;
         try {
@@ -78,17 +106,16 @@ public class UserIdentityRequest implements Serializable{
 
             identity = new UserIdentityRequest(userName, firstName, lastName, personRef, email, cellPhone);
         } catch (Exception e) {
-            log.debug("Error parsing userIdentityXML " + userIdentityXML, e);
+            log.debug("Error parsing userIdentityXML {}", PayloadLog.of(userIdentityXML), e);
         }
         return identity;
     }
 
     public String toJson() {
         String userJson = null;
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            userJson =  mapper.writeValueAsString(this);
-            log.debug("toJson: {}", userJson);
+            userJson =  JsonCodec.writer(getClass()).writeValueAsString(this);
+            log.debug("toJson: {}", PayloadLog.of(userJson));
         } catch (IOException e) {
             log.info("Could not create json from this object {}", toString(), e);
         }
@@ -1,6 +1,11 @@
 package net.whydah.admin.user.uib;
 
-import org.codehaus.jackson.map.ObjectMapper;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.logging.PayloadLog;
+import net.whydah.admin.metrics.LatencyHistogram;
+import net.whydah.admin.metrics.Metrics;
+import net.whydah.admin.xml.StaxXmlDocument;
+import net.whydah.admin.xml.XmlParsing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -40,6 +45,8 @@ import java.io.StringReader;
 public class UserPropertyAndRole {
 
     private static final Logger log = LoggerFactory.getLogger(UserPropertyAndRole.class);
+    private static final LatencyHistogram FROM_XML_TIME = Metrics.codec("UserPropertyAndRole.fromXml");
+    private static final LatencyHistogram TO_JSON_TIME = Metrics.codec("UserPropertyAndRole.toJson");
     private String id;
 
     private String uid;
@@ -171,7 +178,31 @@ public class UserPropertyAndRole {
     }
 
     public static UserPropertyAndRole fromXml(String roleXml) {
-        log.debug("Build UserPropertyAndRole from xml {}", roleXml);
+        try (LatencyHistogram.Timer timer = FROM_XML_TIME.time()) {
+            log.debug("Build UserPropertyAndRole from xml {}", PayloadLog.of(roleXml));
+            if (XmlParsing.useStax()) {
+                return fromXmlStax(roleXml);
+            }
+            return fromXmlDom(roleXml);
+        }
+    }
+
+    private static UserPropertyAndRole fromXmlStax(String roleXml) {
+        UserPropertyAndRole userPropertyAndRole = null;
+        try {
+            StaxXmlDocument doc = StaxXmlDocument.parse(roleXml);
+            userPropertyAndRole = new UserPropertyAndRole();
+            userPropertyAndRole.setId(doc.evaluate("/application/appId"));
+            userPropertyAndRole.setApplicationName(doc.evaluate("/application/applicationName"));
+            userPropertyAndRole.setApplicationRoleName(doc.evaluate("/application/roleName"));
+            userPropertyAndRole.setApplicationRoleValue(doc.evaluate("/application/roleValue"));
+        } catch (Exception e) {
+            log.warn("Could not create an UserPropertyAndRole from this xml {}", PayloadLog.of(roleXml), e);
+        }
+        return userPropertyAndRole;
+    }
+
+    private static UserPropertyAndRole fromXmlDom(String roleXml) {
         UserPropertyAndRole userPropertyAndRole = null;
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         try {
@@ -191,7 +222,7 @@ public class UserPropertyAndRole {
             userPropertyAndRole.setApplicationRoleValue(roleValue);
 
         } catch (Exception e) {
-            log.warn("Could not create an UserPropertyAndRole from this xml {}", roleXml, e);
+            log.warn("Could not create an UserPropertyAndRole from this xml {}", PayloadLog.of(roleXml), e);
         }
         return userPropertyAndRole;
 
@@ -200,9 +231,8 @@ public class UserPropertyAndRole {
 
     public String toJson() {
         String propertyOrRoleJson = null;
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            propertyOrRoleJson =  mapper.writeValueAsString(this);
+        try (LatencyHistogram.Timer timer = TO_JSON_TIME.time()) {
+            propertyOrRoleJson =  JsonCodec.writer(getClass()).writeValueAsString(this);
         } catch (IOException e) {
             log.info("Could not create json from this object {}", toString(), e);
         }
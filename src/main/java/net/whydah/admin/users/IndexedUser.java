@@ -0,0 +1,97 @@
+package net.whydah.admin.users;
+
+import net.whydah.admin.user.uib.UserIdentity;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * The searchable fields of a user, as held by UserSearchIndex.
+ */
+public final class IndexedUser {
+    private final String uid;
+    private final String username;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final String cellPhone;
+    private final String personRef;
+    final long generation;
+
+    IndexedUser(String uid, String username, String firstName, String lastName, String email, String cellPhone,
+                String personRef, long generation) {
+        this.uid = uid;
+        this.username = username;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.cellPhone = cellPhone;
+        this.personRef = personRef;
+        this.generation = generation;
+    }
+
+    static IndexedUser from(UserIdentity identity, long generation) {
+        return new IndexedUser(identity.getUid(), identity.getUsername(), identity.getFirstName(), identity.getLastName(),
+                identity.getEmail(), identity.getCellPhone(), identity.getPersonRef(), generation);
+    }
+
+    /**
+     * From a user in a UIB search result, UserIdentity fields on the user or in its "identity" object.
+     * @return null when the user has no uid.
+     */
+    static IndexedUser from(JsonNode user, long generation) {
+        JsonNode identity = user.has("identity") ? user.get("identity") : user;
+        String uid = text(identity, "uid");
+        if (uid == null) {
+            return null;
+        }
+        return new IndexedUser(uid, text(identity, "username"), text(identity, "firstName"), text(identity, "lastName"),
+                text(identity, "email"), text(identity, "cellPhone"), text(identity, "personRef"), generation);
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+
+    void writeJson(JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("uid", uid);
+        json.writeStringField("username", username);
+        json.writeStringField("firstName", firstName);
+        json.writeStringField("lastName", lastName);
+        json.writeStringField("email", email);
+        json.writeStringField("cellPhone", cellPhone);
+        json.writeStringField("personRef", personRef);
+        json.writeEndObject();
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getCellPhone() {
+        return cellPhone;
+    }
+
+    public String getPersonRef() {
+        return personRef;
+    }
+}
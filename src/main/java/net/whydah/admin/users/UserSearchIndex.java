@@ -0,0 +1,511 @@
+package net.whydah.admin.users;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.whydah.admin.AuthenticationFailedException;
+import net.whydah.admin.CredentialStore;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.json.JsonCodec;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.users.uib.UibUsersConnection;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process prefix index of username, first and last name, email, cellPhone and personRef, used to answer
+ * users/search without calling UIB.
+ *
+ * Field values are split into lower case words, and username, email, cellPhone (digits only) and personRef are
+ * also indexed whole. Every word of a query must be a prefix of an indexed word of the user. Hits are ranked by
+ * the field matched, username before email before names before cellPhone and personRef, and an exact word scores
+ * double a prefix.
+ *
+ * UserService keeps the index up to date on create and delete, and the whole index is reloaded from UIB every
+ * users.index.refreshMinutes. Users not in the reload are dropped, and users created or deleted while it runs are
+ * left as UserService wrote them.
+ *
+ * The index holds the users UIB returned to the userTokenId it was loaded with, so it only answers callers whose
+ * userTokenId has been used for a load with the same result, see isReadyFor. The hash of the uids each userTokenId
+ * loaded is kept for users.index.tokenTtlMinutes. A caller without one searches UIB and requests a load with its
+ * own userTokenId. A caller whose uids differ from the loaded ones searches UIB without a load, so callers with
+ * different scopes do not reload the index in turn; it requests a load again once its entry has expired. Loads wait
+ * for the UAS session, and are retried every users.index.retrySeconds until they succeed.
+ */
+@Component
+public class UserSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(UserSearchIndex.class);
+    private static final int USERNAME_WEIGHT = 8;
+    private static final int EMAIL_WEIGHT = 6;
+    private static final int NAME_WEIGHT = 4;
+    private static final int OTHER_WEIGHT = 2;
+    private static final int DEFAULT_REFRESH_MINUTES = 15;
+    private static final int DEFAULT_RETRY_SECONDS = 30;
+    private static final int DEFAULT_TOKEN_TTL_MINUTES = 60;
+    private static final int MAX_TOKENS = 10000;
+    private static final HashFunction UID_HASH = Hashing.murmur3_128();
+
+    private final ConcurrentMap<String, IndexedUser> users = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, ConcurrentMap<String, Integer>> terms = new ConcurrentSkipListMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Object refreshLock = new Object();
+    private volatile boolean ready;
+    private volatile long lastRefreshMillis;
+    /** Hash of the uids of the last load, to tell whether a load with another userTokenId returned the same users. */
+    private volatile long loadedUids;
+    /** uids UserService wrote while a load is running, the load leaves them alone. Null when no load is running. */
+    private Set<String> writtenDuringRefresh;
+
+    private final UibUsersConnection uibUsersConnection;
+    private final CredentialStore credentialStore;
+    private final String refreshQuery;
+    private final long refreshMillis;
+    /** Hash of the uids UIB returned to each userTokenId that loaded the index. */
+    private final Cache<String, Long> tokenScopes;
+    private final AtomicReference<String> lastAuthorizedToken = new AtomicReference<>();
+    private final AtomicReference<String> requestedToken = new AtomicReference<>();
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public UserSearchIndex(UibUsersConnection uibUsersConnection, CredentialStore credentialStore, AppConfig appConfig) {
+        this.uibUsersConnection = uibUsersConnection;
+        this.credentialStore = credentialStore;
+        this.refreshQuery = appConfig.getProperty("users.index.refreshQuery", "*");
+        int refreshMinutes = appConfig.getIntProperty("users.index.refreshMinutes", DEFAULT_REFRESH_MINUTES);
+        int retrySeconds = appConfig.getIntProperty("users.index.retrySeconds", DEFAULT_RETRY_SECONDS);
+        this.refreshMillis = TimeUnit.MINUTES.toMillis(refreshMinutes);
+        this.tokenScopes = CacheBuilder.newBuilder()
+                .maximumSize(MAX_TOKENS)
+                .expireAfterWrite(appConfig.getIntProperty("users.index.tokenTtlMinutes", DEFAULT_TOKEN_TTL_MINUTES), TimeUnit.MINUTES)
+                .build();
+        if (refreshMinutes <= 0) {
+            log.info("User search index disabled, users/search goes to UIB");
+            scheduler = null;
+            return;
+        }
+        log.info("User search index refresh every {} minutes, retry every {} seconds", refreshMinutes, retrySeconds);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("user-index-refresh").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refreshIfDue();
+            }
+        }, retrySeconds, retrySeconds, TimeUnit.SECONDS);
+    }
+
+    UserSearchIndex() {
+        this(null, null, null, DEFAULT_TOKEN_TTL_MINUTES);
+    }
+
+    UserSearchIndex(UibUsersConnection uibUsersConnection, CredentialStore credentialStore, String refreshQuery, long tokenTtlMinutes) {
+        this.uibUsersConnection = uibUsersConnection;
+        this.credentialStore = credentialStore;
+        this.refreshQuery = refreshQuery;
+        this.refreshMillis = 0;
+        this.tokenScopes = CacheBuilder.newBuilder().maximumSize(MAX_TOKENS).expireAfterWrite(tokenTtlMinutes, TimeUnit.MINUTES).build();
+        this.scheduler = null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true when the index has been loaded from UIB and can answer searches.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return true when the index has been loaded with the users UIB returns to userTokenId. When userTokenId has not
+     * loaded the index within users.index.tokenTtlMinutes, a load with it is requested. The caller should search UIB
+     * when this is false.
+     */
+    public boolean isReadyFor(String userTokenId) {
+        if (userTokenId == null) {
+            return false;
+        }
+        Long scope = tokenScopes.getIfPresent(userTokenId);
+        if (scope != null) {
+            // A caller with other users than the loaded ones is not worth a reload
+            return ready && scope == loadedUids;
+        }
+        if (requestedToken.compareAndSet(null, userTokenId) && scheduler != null) {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refreshIfDue();
+                }
+            });
+        }
+        return false;
+    }
+
+    boolean isLoadRequested() {
+        return requestedToken.get() != null;
+    }
+
+    /**
+     * Load the index with the requested userTokenId, or reload it with the last authorized one when it is older
+     * than users.index.refreshMinutes. Nothing is loaded before UAS has a session with SecurityTokenService.
+     */
+    private void refreshIfDue() {
+        String userTokenId = requestedToken.get();
+        if (userTokenId == null) {
+            userTokenId = lastAuthorizedToken.get();
+            if (userTokenId == null || System.currentTimeMillis() - lastRefreshMillis < refreshMillis) {
+                return;
+            }
+        }
+        if (credentialStore.getUserAdminServiceTokenId() == null) {
+            log.debug("User search index not loaded, no UAS session yet");
+            return;
+        }
+        try {
+            refresh(userTokenId);
+            requestedToken.compareAndSet(userTokenId, null);
+        } catch (AuthenticationFailedException e) {
+            log.info("User search index not loaded, UIB refused the userTokenId: {}", e.getMessage());
+            tokenScopes.invalidate(userTokenId);
+            lastAuthorizedToken.compareAndSet(userTokenId, null);
+            requestedToken.compareAndSet(userTokenId, null);
+        } catch (IOException | RuntimeException e) {
+            log.warn("User search index refresh failed, keeping {} users", users.size(), e);
+        }
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    public long getLastRefreshMillis() {
+        return lastRefreshMillis;
+    }
+
+    public synchronized void put(UserIdentity identity) {
+        if (identity != null && identity.getUid() != null) {
+            written(identity.getUid());
+            index(IndexedUser.from(identity, generation.get()));
+        }
+    }
+
+    public synchronized void remove(String uid) {
+        if (uid == null) {
+            return;
+        }
+        written(uid);
+        IndexedUser removed = users.remove(uid);
+        if (removed != null) {
+            unindex(removed);
+        }
+    }
+
+    synchronized void index(IndexedUser user) {
+        IndexedUser previous = users.put(user.getUid(), user);
+        if (previous != null) {
+            unindex(previous);
+        }
+        for (Map.Entry<String, Integer> term : termsOf(user).entrySet()) {
+            ConcurrentMap<String, Integer> postings = terms.get(term.getKey());
+            if (postings == null) {
+                postings = new ConcurrentHashMap<>();
+                terms.put(term.getKey(), postings);
+            }
+            postings.put(user.getUid(), term.getValue());
+        }
+    }
+
+    private void unindex(IndexedUser user) {
+        for (String term : termsOf(user).keySet()) {
+            ConcurrentMap<String, Integer> postings = terms.get(term);
+            if (postings != null) {
+                postings.remove(user.getUid());
+                if (postings.isEmpty()) {
+                    terms.remove(term);
+                }
+            }
+        }
+    }
+
+    private void written(String uid) {
+        if (writtenDuringRefresh != null) {
+            writtenDuringRefresh.add(uid);
+        }
+    }
+
+    /**
+     * Index a user read by a load, unless UserService has created, updated or deleted it since the load started.
+     */
+    private synchronized boolean indexFromRefresh(IndexedUser user) {
+        if (writtenDuringRefresh.contains(user.getUid())) {
+            return false;
+        }
+        index(user);
+        return true;
+    }
+
+    private synchronized void removeIfStale(IndexedUser user, long currentGeneration) {
+        if (user.generation < currentGeneration && users.remove(user.getUid(), user)) {
+            unindex(user);
+        }
+    }
+
+    /**
+     * Reload all users from UIB, as UIB returns them to userTokenId, and serve the index to userTokenId.
+     * Other callers are only served while their own last load returned the same users.
+     */
+    public void refresh(String userTokenId) throws IOException {
+        synchronized (refreshLock) {
+            load(userTokenId);
+        }
+    }
+
+    private void load(String userTokenId) throws IOException {
+        long start = System.currentTimeMillis();
+        InputStream uibResult = uibUsersConnection.findUsersAsStream(credentialStore.getUserAdminServiceTokenId(), userTokenId, refreshQuery);
+        long refreshGeneration;
+        synchronized (this) {
+            refreshGeneration = generation.incrementAndGet();
+            writtenDuringRefresh = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        }
+        int count = 0;
+        long uids = 0;
+        try {
+            JsonParser parser = JsonCodec.mapper().getJsonFactory().createJsonParser(uibResult);
+            if (UserSearchPage.moveToResultArray(parser)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    IndexedUser user = IndexedUser.from(parser.readValueAsTree(), refreshGeneration);
+                    if (user != null) {
+                        indexFromRefresh(user);
+                        uids += UID_HASH.hashString(user.getUid(), Charsets.UTF_8).asLong();
+                        count++;
+                    }
+                }
+            }
+        } finally {
+            uibResult.close();
+            synchronized (this) {
+                writtenDuringRefresh = null;
+            }
+        }
+        for (IndexedUser user : users.values()) {
+            removeIfStale(user, refreshGeneration);
+        }
+        loadedUids = uids;
+        tokenScopes.put(userTokenId, uids);
+        lastAuthorizedToken.set(userTokenId);
+        ready = true;
+        lastRefreshMillis = System.currentTimeMillis();
+        log.info("User search index loaded {} users from UIB in {} ms, {} terms", count, lastRefreshMillis - start, terms.size());
+    }
+
+    public Hits search(String query, int offset, int limit) {
+        List<String> queryWords = words(query);
+        if (queryWords.isEmpty()) {
+            return new Hits(Collections.<IndexedUser>emptyList(), 0, offset, limit);
+        }
+        Map<String, Integer> scores = null;
+        for (String word : queryWords) {
+            Map<String, Integer> wordScores = score(word);
+            if (scores == null) {
+                scores = wordScores;
+            } else {
+                Map<String, Integer> both = new HashMap<>();
+                for (Map.Entry<String, Integer> score : scores.entrySet()) {
+                    Integer wordScore = wordScores.get(score.getKey());
+                    if (wordScore != null) {
+                        both.put(score.getKey(), score.getValue() + wordScore);
+                    }
+                }
+                scores = both;
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+        return new Hits(top(scores, offset + limit), scores.size(), offset, limit);
+    }
+
+    private Map<String, Integer> score(String word) {
+        Map<String, Integer> scores = new HashMap<>();
+        Map<String, ConcurrentMap<String, Integer>> matches = terms.subMap(word, true, word + Character.MAX_VALUE, true);
+        for (Map.Entry<String, ConcurrentMap<String, Integer>> match : matches.entrySet()) {
+            boolean exact = match.getKey().equals(word);
+            for (Map.Entry<String, Integer> posting : match.getValue().entrySet()) {
+                int score = exact ? posting.getValue() * 2 : posting.getValue();
+                Integer best = scores.get(posting.getKey());
+                if (best == null || score > best) {
+                    scores.put(posting.getKey(), score);
+                }
+            }
+        }
+        return scores;
+    }
+
+    private List<IndexedUser> top(final Map<String, Integer> scores, int count) {
+        final Comparator<IndexedUser> ranking = new Comparator<IndexedUser>() {
+            @Override
+            public int compare(IndexedUser a, IndexedUser b) {
+                int byScore = scores.get(b.getUid()).compareTo(scores.get(a.getUid()));
+                if (byScore != 0) {
+                    return byScore;
+                }
+                return String.valueOf(a.getUsername()).compareTo(String.valueOf(b.getUsername()));
+            }
+        };
+        // Worst of the best count hits first, so it is the one replaced
+        PriorityQueue<IndexedUser> best = new PriorityQueue<>(Math.max(1, Math.min(count, scores.size())), Collections.reverseOrder(ranking));
+        for (String uid : scores.keySet()) {
+            IndexedUser user = users.get(uid);
+            if (user == null) {
+                continue;
+            }
+            best.add(user);
+            if (best.size() > count) {
+                best.poll();
+            }
+        }
+        List<IndexedUser> ranked = new ArrayList<>(best);
+        Collections.sort(ranked, ranking);
+        return ranked;
+    }
+
+    private static Map<String, Integer> termsOf(IndexedUser user) {
+        Map<String, Integer> userTerms = new HashMap<>();
+        addWords(userTerms, user.getUsername(), USERNAME_WEIGHT);
+        addWhole(userTerms, user.getUsername(), USERNAME_WEIGHT);
+        addWords(userTerms, user.getEmail(), EMAIL_WEIGHT);
+        addWhole(userTerms, user.getEmail(), EMAIL_WEIGHT);
+        addWords(userTerms, user.getFirstName(), NAME_WEIGHT);
+        addWords(userTerms, user.getLastName(), NAME_WEIGHT);
+        addWords(userTerms, user.getCellPhone(), OTHER_WEIGHT);
+        if (user.getCellPhone() != null) {
+            addWhole(userTerms, user.getCellPhone().replaceAll("[^0-9]", ""), OTHER_WEIGHT);
+        }
+        addWords(userTerms, user.getPersonRef(), OTHER_WEIGHT);
+        addWhole(userTerms, user.getPersonRef(), OTHER_WEIGHT);
+        return userTerms;
+    }
+
+    private static void addWords(Map<String, Integer> userTerms, String value, int weight) {
+        for (String word : words(value)) {
+            add(userTerms, word, weight);
+        }
+    }
+
+    private static void addWhole(Map<String, Integer> userTerms, String value, int weight) {
+        if (value != null && !value.trim().isEmpty()) {
+            add(userTerms, value.trim().toLowerCase(), weight);
+        }
+    }
+
+    private static void add(Map<String, Integer> userTerms, String term, int weight) {
+        Integer existing = userTerms.get(term);
+        if (existing == null || weight > existing) {
+            userTerms.put(term, weight);
+        }
+    }
+
+    static List<String> words(String value) {
+        List<String> words = new ArrayList<>();
+        if (value == null) {
+            return words;
+        }
+        String lowerCase = value.toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean wordChar = i < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lowerCase.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * One page of ranked hits, written in the same layout as UserSearchPage.
+     */
+    public static class Hits implements StreamingOutput {
+        private final List<IndexedUser> ranked;
+        private final int total;
+        private final int offset;
+        private final int limit;
+
+        Hits(List<IndexedUser> ranked, int total, int offset, int limit) {
+            this.ranked = ranked;
+            this.total = total;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        public List<IndexedUser> getUsers() {
+            return offset < ranked.size() ? ranked.subList(offset, ranked.size()) : Collections.<IndexedUser>emptyList();
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        @Override
+        public void write(OutputStream output) throws IOException, WebApplicationException {
+            JsonGenerator json = JsonCodec.mapper().getJsonFactory().createJsonGenerator(output, JsonEncoding.UTF8);
+            json.writeStartObject();
+            json.writeNumberField("offset", offset);
+            json.writeNumberField("limit", limit);
+            json.writeArrayFieldStart("result");
+            for (IndexedUser user : getUsers()) {
+                user.writeJson(json);
+            }
+            json.writeEndArray();
+            json.writeNumberField("total", total);
+            if ((long) offset + limit < total) {
+                json.writeNumberField("next", offset + limit);
+            }
+            json.writeEndObject();
+            json.flush();
+        }
+    }
+}
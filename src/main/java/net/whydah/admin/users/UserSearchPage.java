@@ -0,0 +1,88 @@
+package net.whydah.admin.users;
+
+import net.whydah.admin.json.JsonCodec;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * One page of a UIB search result, re-encoded token by token from the UIB response stream.
+ *
+ * The users are taken from the UIB result array: either the top level array or the first array field, like
+ * "result" in {"rows":2,"result":[...]}. Users before offset are skipped, limit users are copied, and the rest
+ * are only counted. Only one user is held in memory at a time, however many hits the query has.
+ *
+ * {"offset":0,"limit":50,"result":[{...},...],"total":1234,"next":50}
+ * "next" is the offset of the next page, and is left out on the last page.
+ */
+public class UserSearchPage implements StreamingOutput {
+    private final InputStream uibResult;
+    private final int offset;
+    private final int limit;
+
+    public UserSearchPage(InputStream uibResult, int offset, int limit) {
+        this.uibResult = uibResult;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        try {
+            JsonParser parser = JsonCodec.mapper().getJsonFactory().createJsonParser(uibResult);
+            JsonGenerator json = JsonCodec.mapper().getJsonFactory().createJsonGenerator(output, JsonEncoding.UTF8);
+            json.writeStartObject();
+            json.writeNumberField("offset", offset);
+            json.writeNumberField("limit", limit);
+            json.writeArrayFieldStart("result");
+            long total = 0;
+            if (moveToResultArray(parser)) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (total >= offset && total < (long) offset + limit) {
+                        json.copyCurrentStructure(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    total++;
+                }
+            }
+            json.writeEndArray();
+            json.writeNumberField("total", total);
+            if ((long) offset + limit < total) {
+                json.writeNumberField("next", offset + limit);
+            }
+            json.writeEndObject();
+            json.flush();
+        } finally {
+            uibResult.close();
+        }
+    }
+
+    /**
+     * Move parser to the start of the UIB result array.
+     * @return false when the result has no array.
+     */
+    static boolean moveToResultArray(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            return true;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            if (parser.nextToken() == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+}
@@ -1,16 +1,37 @@
 package net.whydah.admin.users;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.ContentNegotiator;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.uib.UibAsync;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * @author <a href="bard.lind@gmail.com">Bard Lind</a>
@@ -21,46 +42,149 @@ public class UsersResource {
     private static final Logger log = LoggerFactory.getLogger(UsersResource.class);
     //UIB interface   /{applicationtokenid}/{usertokenid}/users/find/{q}
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int DEFAULT_MAX_PAGE_SIZE = 500;
+
     private final UsersService usersService;
+    private final UibAsync uibAsync;
+    private final int defaultPageSize;
+    private final int maxPageSize;
 
     @Autowired
-    public UsersResource(UsersService usersService) {
+    public UsersResource(UsersService usersService, UibAsync uibAsync, AppConfig appConfig) {
         this.usersService = usersService;
+        this.uibAsync = uibAsync;
+        this.defaultPageSize = appConfig.getIntProperty("users.search.defaultPageSize", DEFAULT_PAGE_SIZE);
+        this.maxPageSize = appConfig.getIntProperty("users.search.maxPageSize", DEFAULT_MAX_PAGE_SIZE);
     }
 
     /**
      * UserAdmin Find, return UserAggregate
+     *
+     * The UIB result is streamed to the client from the UIB response, without reading it into memory.
+     * With offset and/or limit only one page of the result is streamed, see UserSearchPage.
+     * limit defaults to users.search.defaultPageSize and is at most users.search.maxPageSize.
      */
     @GET
     @Path("/find/{q}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response findUsers(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
-                              @PathParam("q") String query) {
-
-        String usersJson = null;
+    public void findUsers(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
+                          @PathParam("q") String query, @QueryParam("offset") Integer offset, @QueryParam("limit") Integer limit,
+                          @HeaderParam(HttpHeaders.ACCEPT) String accept, @Context Request req,
+                          @Suspended final AsyncResponse asyncResponse) {
+        if (ContentNegotiator.JSON.select(req, accept) == null) {
+            asyncResponse.resume(ContentNegotiator.JSON.notAcceptable());
+            return;
+        }
+        final boolean paged = offset != null || limit != null;
+        final int pageOffset = offset != null ? offset : 0;
+        final int pageLimit = limit != null ? Math.min(limit, maxPageSize) : defaultPageSize;
+        if (paged && (pageOffset < 0 || pageLimit < 1)) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).build());
+            return;
+        }
+        uibAsync.suspend(asyncResponse);
         try {
-            usersJson = usersService.findUsers(applicationTokenId, userTokenId, query);
-            if (usersJson != null) {
-                return Response.ok(usersJson).build();
-            } else {
-                return Response.status(Response.Status.NO_CONTENT).build();
+            ListenableFuture<InputStream> uibResult = usersService.findUsersAsStreamAsync(applicationTokenId, userTokenId, query);
+            Futures.addCallback(uibResult, new FutureCallback<InputStream>() {
+                @Override
+                public void onSuccess(InputStream uibResult) {
+                    StreamingOutput body = paged ? new UserSearchPage(uibResult, pageOffset, pageLimit) : copyOf(uibResult);
+                    if (!asyncResponse.resume(Response.ok(body).build())) {
+                        Closeables.closeQuietly(uibResult);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    asyncResponse.resume(findUsersFailed(t));
+                }
+            });
+        } catch (RuntimeException e) {
+            asyncResponse.resume(findUsersFailed(e));
+        }
+    }
+
+    /**
+     * The UIB result as is, copied to the response without reading it into memory.
+     */
+    private static StreamingOutput copyOf(final InputStream uibResult) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                try {
+                    ByteStreams.copy(uibResult, output);
+                } finally {
+                    uibResult.close();
+                }
             }
+        };
+    }
 
+    private Response findUsersFailed(Throwable t) {
+        if (t instanceof ServiceUnavailableException) {
+            return ((ServiceUnavailableException) t).getResponse();
+        }
+        if (t instanceof ConnectionFailedException) {
+            log.warn("findUsers: UIB request failed", t);
+            return UibAsync.unavailable((ConnectionFailedException) t);
+        }
+        log.error("Unkonwn error.", t);
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+    }
+
+    private Response findUsersPage(String applicationTokenId, String userTokenId, String query, Integer offset, Integer limit) {
+        int pageOffset = offset != null ? offset : 0;
+        int pageLimit = limit != null ? Math.min(limit, maxPageSize) : defaultPageSize;
+        if (pageOffset < 0 || pageLimit < 1) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        try {
+            InputStream uibResult = usersService.findUsersAsStream(applicationTokenId, userTokenId, query);
+            return Response.ok(new UserSearchPage(uibResult, pageOffset, pageLimit)).build();
+        } catch (ServiceUnavailableException e) {
+            return e.getResponse();
+        } catch (ConnectionFailedException e) {
+            log.warn("findUsersPage: UIB request failed", e);
+            return UibAsync.unavailable(e);
         } catch (RuntimeException e) {
             log.error("Unkonwn error.", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
         }
-
     }
 
     /**
      * Directory search, return only UserIdentity
+     *
+     * With offset and/or limit one page is returned, ranked from UserSearchIndex when it is loaded for the caller,
+     * otherwise streamed from the UIB result as for find. Without them the UIB result is returned as is.
      */
     @GET
     @Path("/search/{q}")
     @Produces({MediaType.APPLICATION_JSON})
     public Response searchUsers(@PathParam("applicationtokenid") String applicationTokenId, @PathParam("userTokenId") String userTokenId,
-                                @PathParam("q") String query) {
+                                @PathParam("q") String query, @QueryParam("offset") Integer offset, @QueryParam("limit") Integer limit,
+                                @HeaderParam(HttpHeaders.ACCEPT) String accept, @Context Request req) {
+        if (ContentNegotiator.JSON.select(req, accept) == null) {
+            return ContentNegotiator.JSON.notAcceptable();
+        }
+        if (offset != null || limit != null) {
+            int pageOffset = offset != null ? offset : 0;
+            int pageLimit = limit != null ? Math.min(limit, maxPageSize) : defaultPageSize;
+            if (pageOffset < 0 || pageLimit < 1) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+            try {
+                UserSearchIndex.Hits hits = usersService.searchUsersInIndex(applicationTokenId, userTokenId, query, pageOffset, pageLimit);
+                if (hits != null) {
+                    return Response.ok(hits).build();
+                }
+            } catch (RuntimeException e) {
+                log.error("Unkonwn error.", e);
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+            }
+            return findUsersPage(applicationTokenId, userTokenId, query, offset, limit);
+        }
 
         String usersJson = null;
         try {
@@ -71,6 +195,8 @@ public class UsersResource {
                 return Response.status(Response.Status.NO_CONTENT).build();
             }
 
+        } catch (ServiceUnavailableException e) {
+            return e.getResponse();
         } catch (RuntimeException e) {
             log.error("Unkonwn error.", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -1,5 +1,6 @@
 package net.whydah.admin.users;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import net.whydah.admin.CredentialStore;
 import net.whydah.admin.users.uib.UibUsersConnection;
 import org.slf4j.Logger;
@@ -8,6 +9,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.ws.rs.NotAuthorizedException;
+import java.io.InputStream;
 
 /**
  * @author <a href="mailto:bard.lind@gmail.com">Bard Lind</a>
@@ -18,18 +20,19 @@ public class UsersService {
 
     private final UibUsersConnection uibUsersConnection;
     private final CredentialStore credentialStore;
+    private final UserSearchIndex userSearchIndex;
 
     @Autowired
-    public UsersService(UibUsersConnection uibUsersConnection, CredentialStore credentialStore) {
+    public UsersService(UibUsersConnection uibUsersConnection, CredentialStore credentialStore, UserSearchIndex userSearchIndex) {
         this.uibUsersConnection = uibUsersConnection;
         this.credentialStore = credentialStore;
-        credentialStore.setUserAdminServiceTokenId("2ff16f110b320dcbacf050b3b9062465");
+        this.userSearchIndex = userSearchIndex;
     }
 
     public String findUsers(String applicationTokenId, String userTokenId, String query) {
         String usersJson = null;
         if (hasAccess("findUsers",applicationTokenId, userTokenId)) {
-           usersJson = uibUsersConnection.findUsers(credentialStore.getUserAdminServiceTokenId(), userTokenId, query);
+           usersJson = uibUsersConnection.findUsers(credentialStore.requireUserAdminServiceTokenId(), userTokenId, query);
         } else {
             throw new NotAuthorizedException("Not Authorized to findUsers");
         }
@@ -39,7 +42,7 @@ public class UsersService {
     public String searchUsers(String applicationTokenId, String userTokenId, String query) {
         String usersJson = null;
         if (hasAccess("searchUsers",applicationTokenId, userTokenId)) {
-            usersJson = uibUsersConnection.findUsers(credentialStore.getUserAdminServiceTokenId(), userTokenId, query);
+            usersJson = uibUsersConnection.findUsers(credentialStore.requireUserAdminServiceTokenId(), userTokenId, query);
             // TODO map to useridentity or implement new function in UIB for this (last is better)
         } else {
             throw new NotAuthorizedException("Not Authorized to searchUsers");
@@ -47,6 +50,41 @@ public class UsersService {
         return usersJson;
     }
 
+    /**
+     * searchUsers answered from the local UserSearchIndex.
+     * @return null when the index is not loaded with the users UIB returns to userTokenId, search UIB instead.
+     */
+    public UserSearchIndex.Hits searchUsersInIndex(String applicationTokenId, String userTokenId, String query, int offset, int limit) {
+        if (!hasAccess("searchUsers", applicationTokenId, userTokenId)) {
+            throw new NotAuthorizedException("Not Authorized to searchUsers");
+        }
+        if (!userSearchIndex.isReadyFor(userTokenId)) {
+            return null;
+        }
+        return userSearchIndex.search(query, offset, limit);
+    }
+
+    /**
+     * findUsers and searchUsers for paging: the UIB result is returned as a stream instead of a String.
+     * The caller must close it.
+     */
+    public InputStream findUsersAsStream(String applicationTokenId, String userTokenId, String query) {
+        if (!hasAccess("findUsers", applicationTokenId, userTokenId)) {
+            throw new NotAuthorizedException("Not Authorized to findUsers");
+        }
+        return uibUsersConnection.findUsersAsStream(credentialStore.requireUserAdminServiceTokenId(), userTokenId, query);
+    }
+
+    /**
+     * Non-blocking findUsersAsStream, see UibAsync.
+     */
+    public ListenableFuture<InputStream> findUsersAsStreamAsync(String applicationTokenId, String userTokenId, String query) {
+        if (!hasAccess("findUsers", applicationTokenId, userTokenId)) {
+            throw new NotAuthorizedException("Not Authorized to findUsers");
+        }
+        return uibUsersConnection.findUsersAsStreamAsync(credentialStore.requireUserAdminServiceTokenId(), userTokenId, query);
+    }
+
     boolean hasAccess(String operation,String applicationTokenId, String userTokenId) {
         //FIXME validate user and appliciation trying search for users
         return true;
@@ -1,18 +1,22 @@
 package net.whydah.admin.users.uib;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import net.whydah.admin.AuthenticationFailedException;
-import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.uib.UibClient;
+import net.whydah.admin.uib.UibGuard;
+import net.whydah.admin.uib.UibOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.ws.rs.BadRequestException;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.InputStream;
 
 /**
  * Created by baardl on 17.04.14.
@@ -30,21 +34,54 @@ public class UibUsersConnection {
 
 
     private final WebTarget uib;
+    private final UibGuard uibGuard;
 
     @Autowired
-    public UibUsersConnection(AppConfig appConfig) {
-        Client client = ClientBuilder.newClient();
-//        URI useridbackendUri = URI.create(appConfig.getProperty("userIdentityBackendUri"));
-        // uib = client.target(userIdentityBackendUri);
-        String uibUrl = appConfig.getProperty("useridentitybackend");
-        log.info("Connection to UserIdentityBackend on {}" , uibUrl);
-        uib = client.target(uibUrl);
+    public UibUsersConnection(UibClient uibClient, UibGuard uibGuard) {
+        uib = uibClient.target();
+        this.uibGuard = uibGuard;
     }
 
     public String findUsers(String userAdminServiceTokenId, String userTokenId, String query) {
         WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + userTokenId + "/users/find").path(query);
+        Response response = uibGuard.execute(UibOperation.FIND, "findUsers", webResource.request(MediaType.APPLICATION_JSON).buildGet());
+        return findResult(query, response);
+    }
+
+    /**
+     * findUsers without reading the result into memory.
+     * @return the UIB response body, the caller must close it.
+     */
+    public InputStream findUsersAsStream(String userAdminServiceTokenId, String userTokenId, String query) {
+        WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + userTokenId + "/users/find").path(query);
+        Response response = uibGuard.execute(UibOperation.FIND, "findUsersAsStream", webResource.request(MediaType.APPLICATION_JSON).buildGet());
+        return streamResult(query, response);
+    }
+
+    /**
+     * Non-blocking findUsersAsStream, see UibAsync.
+     * @return future of the UIB response body, the caller must close it.
+     */
+    public ListenableFuture<InputStream> findUsersAsStreamAsync(String userAdminServiceTokenId, String userTokenId, final String query) {
+        WebTarget webResource = uib.path("/" + userAdminServiceTokenId + "/" + userTokenId + "/users/find").path(query);
+        return Futures.transform(uibGuard.executeAsync(UibOperation.FIND, "findUsersAsStreamAsync", webResource.request(MediaType.APPLICATION_JSON)), new Function<Response, InputStream>() {
+            @Override
+            public InputStream apply(Response response) {
+                return streamResult(query, response);
+            }
+        });
+    }
+
+    private InputStream streamResult(String query, Response response) {
+        if (response.getStatus() == STATUS_OK) {
+            return response.readEntity(InputStream.class);
+        }
+        findResult(query, response);
+        throw new AuthenticationFailedException("Request failed. Status code " + response.getStatus());
+    }
+
+    private String findResult(String query, Response response) {
         String resultJson = null;
-        Response response = webResource.request(MediaType.APPLICATION_JSON).get();
         int statusCode = response.getStatus();
         String output = response.readEntity(String.class);
         switch (statusCode) {
@@ -0,0 +1,155 @@
+package net.whydah.admin.xml;
+
+import net.whydah.admin.application.Application;
+import net.whydah.admin.metrics.LatencyHistogram;
+import net.whydah.admin.metrics.Metrics;
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes the xml documents of UserAggregate and Application with an XMLStreamWriter.
+ *
+ * Element values are escaped by the writer. The layout is the same as the old string templates, including "null"
+ * for missing mandatory values. The document is written to memory, so the codec time does not include writing it
+ * to the client.
+ */
+public final class DomainXmlWriter {
+    private static final LatencyHistogram WRITE_USER_AGGREGATE_TIME = Metrics.codec("DomainXmlWriter.writeUserAggregate");
+    private static final LatencyHistogram WRITE_APPLICATION_TIME = Metrics.codec("DomainXmlWriter.writeApplication");
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>";
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    private DomainXmlWriter() {
+    }
+
+    public static String toXml(UserAggregate userAggregate) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeUserAggregate(userAggregate, writer);
+        } catch (XMLStreamException | IOException e) {
+            throw new IllegalStateException("Could not create xml from " + userAggregate.getUid(), e);
+        }
+        return writer.toString();
+    }
+
+    public static String toXml(Application application) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeApplication(application, writer);
+        } catch (XMLStreamException | IOException e) {
+            throw new IllegalStateException("Could not create xml from " + application.getId(), e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @return the user as xml, written to the response stream when Jersey asks for the entity. The document is
+     * created when it is written, not when the response is built.
+     */
+    public static StreamingOutput streaming(final UserAggregate userAggregate) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                output.write(toXml(userAggregate).getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    public static StreamingOutput streaming(final Application application) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                output.write(toXml(application).getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    private static void writeUserAggregate(UserAggregate userAggregate, Writer writer) throws XMLStreamException, IOException {
+        try (LatencyHistogram.Timer timer = WRITE_USER_AGGREGATE_TIME.time()) {
+            UserIdentity identity = userAggregate.getIdentity();
+            writer.write(XML_HEADER);
+            XMLStreamWriter xml = outputFactory.createXMLStreamWriter(writer);
+            xml.writeCharacters("\n");
+            xml.writeStartElement("whydahuser");
+            xml.writeCharacters("\n    ");
+            xml.writeStartElement("identity");
+            element(xml, "\n        ", "username", identity.getUsername());
+            element(xml, "\n        ", "cellPhone", emptyIfNull(identity.getCellPhone()));
+            element(xml, "\n        ", "email", identity.getEmail());
+            element(xml, "\n        ", "firstname", identity.getFirstName());
+            element(xml, "\n        ", "lastname", identity.getLastName());
+            element(xml, "\n        ", "personRef", emptyIfNull(identity.getPersonRef()));
+            element(xml, "\n        ", "UID", identity.getUid());
+            xml.writeCharacters("\n    ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n    ");
+            xml.writeStartElement("applications");
+            List<UserPropertyAndRole> roles = userAggregate.getRoles();
+            if (roles != null) {
+                for (UserPropertyAndRole role : roles) {
+                    xml.writeCharacters("\n        ");
+                    xml.writeStartElement("application");
+                    element(xml, "\n            ", "appId", role.getApplicationId());
+                    element(xml, "\n            ", "applicationName", role.getApplicationName());
+                    element(xml, "\n            ", "roleName", role.getApplicationRoleName());
+                    element(xml, "\n            ", "roleValue", role.getApplicationRoleValue());
+                    xml.writeCharacters("\n        ");
+                    xml.writeEndElement();
+                }
+            }
+            xml.writeCharacters("\n    ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.flush();
+        }
+    }
+
+    private static void writeApplication(Application application, Writer writer) throws XMLStreamException, IOException {
+        try (LatencyHistogram.Timer timer = WRITE_APPLICATION_TIME.time()) {
+            writer.write(XML_HEADER);
+            XMLStreamWriter xml = outputFactory.createXMLStreamWriter(writer);
+            xml.writeCharacters(" \n  ");
+            xml.writeStartElement("application");
+            element(xml, "\n   ", "applicationid", application.getId());
+            element(xml, "\n   ", "applicationname", application.getName());
+            element(xml, "\n   ", "defaultrole", application.getDefaultRole());
+            element(xml, "\n   ", "defaultorgid", application.getDefaultOrgid());
+            xml.writeCharacters("\n  ");
+            xml.writeStartElement("availableOrgIds");
+            for (String availableOrgId : application.getAvailableOrgIds()) {
+                element(xml, "\n", "orgId", availableOrgId);
+            }
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeCharacters("\n ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.flush();
+        }
+    }
+
+    private static void element(XMLStreamWriter xml, String indent, String name, String value) throws XMLStreamException {
+        xml.writeCharacters(indent);
+        xml.writeStartElement(name);
+        xml.writeCharacters(String.valueOf(value));
+        xml.writeEndElement();
+    }
+
+    private static String emptyIfNull(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,129 @@
+package net.whydah.admin.xml;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The text values of a small xml payload, read in a single StAX pass without building a DOM.
+ *
+ * Supports the subset of XPath used by our domain classes:
+ * "/a/b/c" - absolute path, and "//b/c" or "//c" - first element anywhere in the document ending with that path.
+ * Like XPath string evaluation, a missing element gives an empty string.
+ */
+public class StaxXmlDocument {
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private final Map<String, List<String>> valuesByPath = new LinkedHashMap<>();
+
+    private StaxXmlDocument() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * A StAX reader with the same settings as parse(), for payloads too large to hold in memory.
+     */
+    public static XMLStreamReader createReader(Reader reader) throws XMLStreamException {
+        return inputFactory.createXMLStreamReader(reader);
+    }
+
+    public static StaxXmlDocument parse(String xml) throws XMLStreamException {
+        if (xml == null) {
+            throw new XMLStreamException("Can not parse null xml");
+        }
+        StaxXmlDocument document = new StaxXmlDocument();
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+        try {
+            StringBuilder path = new StringBuilder();
+            Deque<Integer> parentPathLengths = new ArrayDeque<>();
+            Deque<StringBuilder> texts = new ArrayDeque<>();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        parentPathLengths.push(path.length());
+                        path.append('/').append(reader.getLocalName());
+                        texts.push(new StringBuilder());
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (!texts.isEmpty()) {
+                            texts.peek().append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        String text = texts.pop().toString();
+                        if (!texts.isEmpty()) {
+                            // XPath string value of an element includes the text of all its descendants
+                            texts.peek().append(text);
+                        }
+                        document.add(path.toString(), text);
+                        path.setLength(parentPathLengths.pop());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return document;
+    }
+
+    private void add(String path, String text) {
+        List<String> values = valuesByPath.get(path);
+        if (values == null) {
+            values = new ArrayList<>(1);
+            valuesByPath.put(path, values);
+        }
+        values.add(text);
+    }
+
+    /**
+     * @param expression "/a/b/c", "//b/c" or "//c"
+     * @return text of the first matching element, or "" when there is no match.
+     */
+    public String evaluate(String expression) {
+        List<String> values = evaluateAll(expression);
+        return values.isEmpty() ? "" : values.get(0);
+    }
+
+    /**
+     * @param expression "/a/b/c", "//b/c" or "//c"
+     * @return text of all matching elements, in document order for an absolute path.
+     */
+    public List<String> evaluateAll(String expression) {
+        if (expression.startsWith("//")) {
+            String suffix = expression.substring(1);
+            for (Map.Entry<String, List<String>> entry : valuesByPath.entrySet()) {
+                if (entry.getKey().endsWith(suffix)) {
+                    return entry.getValue();
+                }
+            }
+            return Collections.emptyList();
+        }
+        List<String> values = valuesByPath.get(expression);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return values;
+    }
+}
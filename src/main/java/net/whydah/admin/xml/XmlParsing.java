@@ -0,0 +1,49 @@
+package net.whydah.admin.xml;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects how the domain fromXml methods parse their payload.
+ *
+ * STAX (default) reads the payload once with StaxXmlDocument. DOM is the original DocumentBuilder + XPath
+ * implementation, kept so the two can be compared. Select with -Duas.xml.parser=DOM or setMode().
+ */
+public final class XmlParsing {
+    private static final Logger log = LoggerFactory.getLogger(XmlParsing.class);
+    public static final String PARSER_MODE_KEY = "uas.xml.parser";
+
+    public enum Mode {
+        STAX, DOM
+    }
+
+    private static volatile Mode mode = readMode();
+
+    private XmlParsing() {
+    }
+
+    private static Mode readMode() {
+        String configured = System.getProperty(PARSER_MODE_KEY);
+        if (configured == null) {
+            return Mode.STAX;
+        }
+        try {
+            return Mode.valueOf(configured.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown {}={}, using {}", PARSER_MODE_KEY, configured, Mode.STAX);
+            return Mode.STAX;
+        }
+    }
+
+    public static boolean useStax() {
+        return mode == Mode.STAX;
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    public static void setMode(Mode newMode) {
+        mode = newMode;
+    }
+}
@@ -0,0 +1,65 @@
+package net.whydah.admin;
+
+import org.testng.annotations.Test;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.OutputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class CompressionThresholdFilterTest {
+
+    @Test
+    public void smallEntitiesAreBelow() throws Exception {
+        assertTrue(CompressionThresholdFilter.isBelow("<ok/>", 1024));
+        assertTrue(CompressionThresholdFilter.isBelow(new byte[1023], 1024));
+    }
+
+    @Test
+    public void largeEntitiesAreNotBelow() throws Exception {
+        assertFalse(CompressionThresholdFilter.isBelow(new byte[1024], 1024));
+        assertFalse(CompressionThresholdFilter.isBelow(new String(new char[2000]).replace('\0', 'a'), 1024));
+    }
+
+    @Test
+    public void multiByteCharactersCountAsBytes() throws Exception {
+        String text = new String(new char[600]).replace('\0', '\u00e6');
+        assertFalse(CompressionThresholdFilter.isBelow(text, 1024));
+    }
+
+    @Test
+    public void streamedEntitiesAreCompressed() throws Exception {
+        StreamingOutput streamingOutput = new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) {
+            }
+        };
+        assertFalse(CompressionThresholdFilter.isBelow(streamingOutput, 1024));
+        assertFalse(CompressionThresholdFilter.isBelow(null, 1024));
+    }
+
+    @Test
+    public void compressedResponseGetsTheTagOfItsCoding() throws Exception {
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+        headers.putSingle(HttpHeaders.ETAG, new EntityTag("abc"));
+        ContainerResponseContext response = mock(ContainerResponseContext.class);
+        when(response.getHeaders()).thenReturn(headers);
+        when(response.getEntity()).thenReturn(new String(new char[2000]).replace('\0', 'a'));
+        when(response.getEntityTag()).thenReturn(new EntityTag("abc"));
+
+        new CompressionThresholdFilter(1024).filter(mock(ContainerRequestContext.class), response);
+
+        assertEquals(headers.getFirst(HttpHeaders.ETAG), new EntityTag("abc-gzip"));
+    }
+}
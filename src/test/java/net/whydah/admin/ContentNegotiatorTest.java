@@ -0,0 +1,44 @@
+package net.whydah.admin;
+
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Variant;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class ContentNegotiatorTest {
+
+    @Test
+    public void selectionIsRememberedPerAcceptHeader() throws Exception {
+        ContentNegotiator negotiator = new ContentNegotiator(MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_JSON_TYPE);
+        Request request = mock(Request.class);
+        when(request.selectVariant(anyListOf(Variant.class))).thenReturn(new Variant(MediaType.APPLICATION_JSON_TYPE, (String) null, null));
+
+        assertEquals(negotiator.select(request, "application/json"), MediaType.APPLICATION_JSON_TYPE);
+        assertEquals(negotiator.select(request, "application/json"), MediaType.APPLICATION_JSON_TYPE);
+        verify(request, times(1)).selectVariant(negotiator.getVariants());
+
+        negotiator.select(request, null);
+        verify(request, times(2)).selectVariant(negotiator.getVariants());
+    }
+
+    @Test
+    public void noAcceptableVariantGives406() throws Exception {
+        ContentNegotiator negotiator = new ContentNegotiator(MediaType.APPLICATION_JSON_TYPE);
+        Request request = mock(Request.class);
+        when(request.selectVariant(anyListOf(Variant.class))).thenReturn(null);
+
+        assertNull(negotiator.select(request, "text/csv"));
+        assertNull(negotiator.select(request, "text/csv"));
+        verify(request, times(1)).selectVariant(negotiator.getVariants());
+        assertEquals(negotiator.notAcceptable().getStatus(), 406);
+    }
+}
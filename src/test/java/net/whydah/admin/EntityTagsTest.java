@@ -0,0 +1,92 @@
+package net.whydah.admin;
+
+import net.whydah.admin.application.Application;
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+import net.whydah.admin.xml.DomainXmlWriter;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.util.Arrays;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+public class EntityTagsTest {
+
+    @Test
+    public void tagIsStrongHashOfTheBody() throws Exception {
+        String xml = DomainXmlWriter.toXml(user("member"));
+        assertEquals(EntityTags.of(xml), EntityTags.of(new String(xml)));
+        assertFalse(EntityTags.of(xml).isWeak());
+    }
+
+    @Test
+    public void applicationXmlHasItsOwnTag() throws Exception {
+        Application application = new Application("app1", "Application 1", "member", "org0", Arrays.asList("org0", "org1"));
+        assertFalse(EntityTags.of(DomainXmlWriter.toXml(application)).equals(EntityTags.of(DomainXmlWriter.toXml(user("member")))));
+    }
+
+    @Test
+    public void tagChangesWithContent() throws Exception {
+        assertFalse(EntityTags.of(DomainXmlWriter.toXml(user("member"))).equals(EntityTags.of(DomainXmlWriter.toXml(user("admin")))));
+    }
+
+    @Test
+    public void compressedRepresentationHasItsOwnTag() throws Exception {
+        EntityTag entityTag = new EntityTag("abc");
+        assertEquals(EntityTags.forCoding(entityTag, "gzip"), new EntityTag("abc-gzip"));
+    }
+
+    @Test
+    public void notModifiedForTheTagOfAnyCoding() throws Exception {
+        EntityTag entityTag = new EntityTag("abc");
+        EntityTag gzipTag = new EntityTag("abc-gzip");
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(gzipTag)).thenReturn(Response.notModified());
+        Response notModified = EntityTags.notModified(request, entityTag);
+        assertEquals(notModified.getStatus(), 304);
+        assertEquals(notModified.getEntityTag(), gzipTag);
+    }
+
+    @Test
+    public void writeProceedsWhenTheTagOfACompressedRepresentationMatches() throws Exception {
+        EntityTag xmlTag = new EntityTag("xml");
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(any(EntityTag.class))).thenReturn(Response.status(Response.Status.PRECONDITION_FAILED));
+        when(request.evaluatePreconditions(new EntityTag("xml-gzip"))).thenReturn(null);
+        assertNull(EntityTags.preconditionFailed(request, xmlTag));
+    }
+
+    @Test
+    public void writeProceedsWhenAnyRepresentationMatches() throws Exception {
+        EntityTag xmlTag = new EntityTag("xml");
+        EntityTag jsonTag = new EntityTag("json");
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(any(EntityTag.class))).thenReturn(Response.status(Response.Status.PRECONDITION_FAILED));
+        when(request.evaluatePreconditions(jsonTag)).thenReturn(null);
+        assertNull(EntityTags.preconditionFailed(request, xmlTag, jsonTag));
+    }
+
+    @Test
+    public void writeFailsWhenNoRepresentationMatches() throws Exception {
+        EntityTag xmlTag = new EntityTag("xml");
+        EntityTag jsonTag = new EntityTag("json");
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(any(EntityTag.class))).thenReturn(Response.status(Response.Status.PRECONDITION_FAILED));
+        assertEquals(EntityTags.preconditionFailed(request, xmlTag, jsonTag).getStatus(), 412);
+    }
+
+    private static UserAggregate user(String roleName) {
+        UserIdentity identity = new UserIdentity("uid1", "user1", "First", "Last", "ref1", "user1@example.com", "91000001", null);
+        UserPropertyAndRole role = new UserPropertyAndRole("role1", "uid1", "app1", "Application 1", "Organization 1", roleName, "true");
+        return new UserAggregate(identity, Arrays.asList(role));
+    }
+}
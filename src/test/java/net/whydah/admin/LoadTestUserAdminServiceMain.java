@@ -0,0 +1,132 @@
+package net.whydah.admin;
+
+import net.whydah.admin.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the getUser and findUsers paths, used to compare execution.mode=platform with execution.mode=virtual.
+ *
+ * Start UserAdminService (and UIB) with one execution mode, run this main, restart with the other mode and run again.
+ * Compare requests/second, error count and p50/p99 latency. Measured results are in README.md.
+ *
+ * Usage: LoadTestUserAdminServiceMain [concurrentClients] [durationSeconds]
+ */
+public class LoadTestUserAdminServiceMain {
+    private static final Logger log = LoggerFactory.getLogger(LoadTestUserAdminServiceMain.class);
+    public static final String USER_ADMIN_SERVICE_TOKEN_ID = "1";
+    public static final String USER_TOKEN_ID = "1";
+    public static final String USER_ID = "test.me@example.com";
+    public static final String QUERY = "test";
+
+    private final WebTarget userAdminService;
+
+    public LoadTestUserAdminServiceMain() {
+        Client client = ClientBuilder.newClient();
+        AppConfig appConfig = new AppConfig();
+        String uasUrl = appConfig.getProperty("myuri");
+        log.info("Load testing UserAdministrationService on {}", uasUrl);
+        userAdminService = client.target(uasUrl).path(USER_ADMIN_SERVICE_TOKEN_ID).path(USER_TOKEN_ID);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("IAM_MODE") == null) {
+            System.setProperty("IAM_MODE", "DEV");
+        }
+        int concurrentClients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int durationSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        LoadTestUserAdminServiceMain loadTest = new LoadTestUserAdminServiceMain();
+        loadTest.run("getUser", loadTest.userAdminService.path("user").path(USER_ID), concurrentClients, durationSeconds);
+        loadTest.run("findUsers", loadTest.userAdminService.path("users/find").path(QUERY), concurrentClients, durationSeconds);
+        System.exit(0);
+    }
+
+    void run(String name, final WebTarget target, int concurrentClients, int durationSeconds) throws Exception {
+        final long endTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrentClients);
+        List<Future<ClientResult>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrentClients; i++) {
+            futures.add(clients.submit(new Callable<ClientResult>() {
+                @Override
+                public ClientResult call() {
+                    ClientResult result = new ClientResult();
+                    while (System.nanoTime() < endTime) {
+                        long start = System.nanoTime();
+                        try {
+                            Response response = target.request(MediaType.APPLICATION_JSON).get();
+                            response.readEntity(String.class);
+                            if (response.getStatus() != 200) {
+                                result.errors++;
+                            }
+                        } catch (RuntimeException e) {
+                            result.errors++;
+                        }
+                        result.add(System.nanoTime() - start);
+                    }
+                    return result;
+                }
+            }));
+        }
+        ClientResult total = new ClientResult();
+        for (Future<ClientResult> future : futures) {
+            total.addAll(future.get());
+        }
+        clients.shutdown();
+        long[] latencies = total.sortedLatencies();
+        log.info("{}: clients={}, requests={}, errors={}, requests/s={}, p50={}ms, p99={}ms, max={}ms",
+                name, concurrentClients, latencies.length, total.errors, latencies.length / durationSeconds,
+                millis(percentile(latencies, 50)), millis(percentile(latencies, 99)), millis(percentile(latencies, 100)));
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static class ClientResult {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        void add(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+
+        void addAll(ClientResult other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.latencies[i]);
+            }
+            errors += other.errors;
+        }
+
+        long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
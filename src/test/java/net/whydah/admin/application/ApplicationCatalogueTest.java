@@ -0,0 +1,147 @@
+package net.whydah.admin.application;
+
+import net.whydah.admin.AuthenticationFailedException;
+import net.whydah.admin.CredentialStore;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.ProcessingException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ApplicationCatalogueTest {
+    private UibApplicationConnection uibApplicationConnection;
+    private CredentialStore credentialStore;
+    private ApplicationCatalogue catalogue;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        uibApplicationConnection = mock(UibApplicationConnection.class);
+        credentialStore = mock(CredentialStore.class);
+        when(credentialStore.getUserAdminServiceTokenId()).thenReturn("uas");
+        when(uibApplicationConnection.listApplications("uas", "admin")).thenReturn(Arrays.asList(
+                new Application("11", "Whydah SSO"), new Application("12", "Whydah Admin")));
+        catalogue = new ApplicationCatalogue(uibApplicationConnection, credentialStore, 900, 60);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        catalogue.shutdown();
+    }
+
+    @Test
+    public void loadsAllApplications() throws Exception {
+        assertNull(catalogue.get("11", "admin"));
+        assertTrue(catalogue.load("admin"));
+
+        assertTrue(catalogue.isLoaded());
+        assertEquals(catalogue.size(), 2);
+        assertEquals(catalogue.get("12", "admin").getName(), "Whydah Admin");
+        assertNull(catalogue.get("13", "admin"));
+    }
+
+    @Test
+    public void servedOnlyToCallersUibReturnedTheSameApplicationsTo() throws Exception {
+        when(uibApplicationConnection.listApplications("uas", "other")).thenReturn(Arrays.asList(
+                new Application("12", "Whydah Admin"), new Application("11", "Whydah SSO")));
+        when(uibApplicationConnection.listApplications("uas", "restricted")).thenReturn(Arrays.asList(
+                new Application("11", "Whydah SSO")));
+        catalogue.load("admin");
+
+        assertNull(catalogue.get("12", "other"));
+        catalogue.load("other");
+        assertEquals(catalogue.get("12", "admin").getName(), "Whydah Admin");
+
+        catalogue.load("restricted");
+        assertNull(catalogue.get("11", "admin"));
+        assertNull(catalogue.get("11", "other"));
+        assertEquals(catalogue.get("11", "restricted").getName(), "Whydah SSO");
+    }
+
+    @Test
+    public void callersGetTheirOwnCopy() throws Exception {
+        catalogue.load("admin");
+
+        catalogue.get("12", "admin").setDefaultRole("Changed");
+
+        assertNull(catalogue.get("12", "admin").getDefaultRole());
+    }
+
+    @Test
+    public void refusedTokenIsNoLongerServed() throws Exception {
+        catalogue.load("admin");
+        when(uibApplicationConnection.listApplications("uas", "admin")).thenThrow(new AuthenticationFailedException("Status code 401"));
+
+        try {
+            catalogue.load("admin");
+            fail("Expected AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            assertNull(catalogue.get("12", "admin"));
+        }
+    }
+
+    @Test
+    public void catalogueIsNotUsedPastItsMaxAge() throws Exception {
+        catalogue = new ApplicationCatalogue(uibApplicationConnection, credentialStore, 0, 60);
+        catalogue.load("admin");
+        Thread.sleep(5);
+
+        assertFalse(catalogue.isLoaded());
+        assertNull(catalogue.get("12", "admin"));
+        assertNull(catalogue.getName("12"));
+    }
+
+    @Test
+    public void failedLoadKeepsTheApplications() throws Exception {
+        catalogue.load("admin");
+        when(uibApplicationConnection.listApplications("uas", "admin")).thenThrow(new ProcessingException("Read timed out"));
+
+        assertFalse(catalogue.load("admin"));
+        assertEquals(catalogue.getName("11"), "Whydah SSO");
+        assertEquals(catalogue.getLoadFailures(), 1);
+    }
+
+    @Test
+    public void noLoadBeforeTheServiceHasLoggedOn() throws Exception {
+        when(credentialStore.getUserAdminServiceTokenId()).thenReturn(null);
+
+        assertFalse(catalogue.load("admin"));
+        assertFalse(catalogue.isLoaded());
+    }
+
+    @Test
+    public void fillsMissingApplicationNamesOfRoles() throws Exception {
+        catalogue.load("admin");
+        List<UserPropertyAndRole> roles = Arrays.asList(
+                new UserPropertyAndRole("r1", "u1", "11", null, "org", "user", "true"),
+                new UserPropertyAndRole("r2", "u1", "12", "Admin", "org", "admin", "true"),
+                new UserPropertyAndRole("r3", "u1", "99", null, "org", "user", "true"));
+
+        catalogue.fillApplicationNames(roles);
+
+        assertEquals(roles.get(0).getApplicationName(), "Whydah SSO");
+        assertEquals(roles.get(1).getApplicationName(), "Admin");
+        assertEquals(roles.get(2).getApplicationName(), "");
+    }
+
+    @Test
+    public void fillsMissingApplicationNamesInRolesJson() throws Exception {
+        catalogue.load("admin");
+        String named = "[{\"applicationId\":\"11\",\"applicationName\":\"SSO\"}]";
+
+        assertEquals(catalogue.fillApplicationNames("[{\"applicationId\":\"12\",\"applicationName\":\"\"}]"),
+                "[{\"applicationId\":\"12\",\"applicationName\":\"Whydah Admin\"}]");
+        assertTrue(named == catalogue.fillApplicationNames(named));
+        assertEquals(catalogue.fillApplicationNames("not json"), "not json");
+    }
+}
@@ -1,10 +1,18 @@
 package net.whydah.admin.application;
 
 import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.uib.SingleFlight;
+import net.whydah.admin.uib.UibAsync;
+import net.whydah.admin.uib.UibClient;
+import net.whydah.admin.uib.UibGuard;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.mockito.AdditionalAnswers.returnsSecondArg;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Created by baardl on 08.04.14.
@@ -18,8 +26,12 @@ public class UibApplicationConnectionTest {
     }
 
     public static void main(String[] args) throws Exception {
+        // Defaults for every uib.client, uib.breaker and uib.bulkhead setting
         AppConfig appConfig = mock(AppConfig.class);
-        uibApplicationConnection = new UibApplicationConnection(appConfig);
+        when(appConfig.getIntProperty(anyString(), anyInt())).then(returnsSecondArg());
+        when(appConfig.getProperty(anyString(), anyString())).then(returnsSecondArg());
+        when(appConfig.getProperty("useridentitybackend")).thenReturn("http://localhost:9995/uib");
+        uibApplicationConnection = new UibApplicationConnection(new UibClient(appConfig), new UibGuard(appConfig, new UibAsync(appConfig)), new SingleFlight(10000));
         UibApplicationConnectionTest uibApplicationConnectionTest = new UibApplicationConnectionTest(uibApplicationConnection);
         uibApplicationConnectionTest.testAddApplication();
         uibApplicationConnectionTest.testGetApplication();
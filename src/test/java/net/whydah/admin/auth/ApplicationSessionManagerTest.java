@@ -0,0 +1,88 @@
+package net.whydah.admin.auth;
+
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.CredentialStore;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ApplicationSessionManagerTest {
+    private CredentialStore credentialStore;
+    private TokenServiceConnection tokenServiceConnection;
+    private ApplicationSessionManager sessionManager;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        credentialStore = new CredentialStore();
+        tokenServiceConnection = mock(TokenServiceConnection.class);
+        sessionManager = new ApplicationSessionManager(credentialStore, tokenServiceConnection, "12", "UserAdminService",
+                "secret", 120, 10);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        sessionManager.shutdown();
+    }
+
+    @Test
+    public void logonPublishesTokenAndRenewsBeforeExpires() throws Exception {
+        long expires = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(20);
+        when(tokenServiceConnection.logonApplication("12", "UserAdminService", "secret")).thenReturn(applicationToken("token1", expires));
+        long renewIn = sessionManager.logon();
+        assertEquals(credentialStore.getUserAdminServiceTokenId(), "token1");
+        assertEquals(sessionManager.getExpires().getTime(), expires);
+        assertTrue(renewIn <= TimeUnit.MINUTES.toMillis(18) && renewIn > TimeUnit.MINUTES.toMillis(17), "renewIn " + renewIn);
+    }
+
+    @Test
+    public void failedRenewalKeepsCurrentToken() throws Exception {
+        long expires = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(20);
+        when(tokenServiceConnection.logonApplication("12", "UserAdminService", "secret"))
+                .thenReturn(applicationToken("token1", expires))
+                .thenThrow(new ConnectionFailedException("STS down"));
+        sessionManager.logon();
+        assertEquals(sessionManager.logon(), TimeUnit.SECONDS.toMillis(10));
+        assertEquals(credentialStore.getUserAdminServiceTokenId(), "token1");
+    }
+
+    @Test
+    public void expiredTokenIsNotPublished() throws Exception {
+        when(tokenServiceConnection.logonApplication("12", "UserAdminService", "secret"))
+                .thenReturn(applicationToken("token1", System.currentTimeMillis() - 1000));
+        assertEquals(sessionManager.logon(), TimeUnit.SECONDS.toMillis(10));
+        assertNull(credentialStore.getUserAdminServiceTokenId());
+    }
+
+    @Test
+    public void renewalIsNeverSoonerThanOneSecond() throws Exception {
+        when(tokenServiceConnection.logonApplication("12", "UserAdminService", "secret"))
+                .thenReturn(applicationToken("token1", System.currentTimeMillis() + 30000));
+        assertEquals(sessionManager.logon(), 1000);
+    }
+
+    @Test(expectedExceptions = ServiceUnavailableException.class)
+    public void uibCallsAreUnavailableBeforeTheFirstLogon() throws Exception {
+        credentialStore.requireUserAdminServiceTokenId();
+    }
+
+    private static String applicationToken(String tokenId, long expires) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+                "<applicationtoken>\n" +
+                "    <params>\n" +
+                "        <applicationtokenID>" + tokenId + "</applicationtokenID>\n" +
+                "        <applicationid>12</applicationid>\n" +
+                "        <applicationname>UserAdminService</applicationname>\n" +
+                "        <expires>" + expires + "</expires>\n" +
+                "    </params>\n" +
+                "</applicationtoken>";
+    }
+}
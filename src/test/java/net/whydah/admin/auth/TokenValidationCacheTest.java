@@ -0,0 +1,131 @@
+package net.whydah.admin.auth;
+
+import com.google.common.base.Ticker;
+import net.whydah.admin.ConnectionFailedException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TokenValidationCacheTest {
+    private static final long NOW = TimeUnit.DAYS.toMillis(20000);
+
+    private TokenServiceConnection tokenServiceConnection;
+    private FakeTicker ticker;
+    private TokenValidationCache tokenValidationCache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        tokenServiceConnection = mock(TokenServiceConnection.class);
+        ticker = new FakeTicker();
+        ticker.advance(NOW, TimeUnit.MILLISECONDS);
+        tokenValidationCache = new TokenValidationCache(tokenServiceConnection, ticker, 100, 3600, 300, 10);
+    }
+
+    @Test
+    public void applicationTokenCachedUntilExpires() throws Exception {
+        when(tokenServiceConnection.validateApplicationToken("app1")).thenReturn(token("app1", NOW + 60000));
+        assertTrue(tokenValidationCache.isValidApplicationToken("app1"));
+        ticker.advance(59, TimeUnit.SECONDS);
+        assertTrue(tokenValidationCache.isValidApplicationToken("app1"));
+        verify(tokenServiceConnection, times(1)).validateApplicationToken("app1");
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        when(tokenServiceConnection.validateApplicationToken("app1")).thenReturn(null);
+        assertFalse(tokenValidationCache.isValidApplicationToken("app1"));
+        verify(tokenServiceConnection, times(2)).validateApplicationToken("app1");
+    }
+
+    @Test
+    public void applicationTokenWithoutExpiresCachedMaxTtl() throws Exception {
+        when(tokenServiceConnection.validateApplicationToken("app1")).thenReturn(WhydahLogonToken.withoutExpiry("app1"));
+        assertTrue(tokenValidationCache.isValidApplicationToken("app1"));
+        ticker.advance(3599, TimeUnit.SECONDS);
+        assertTrue(tokenValidationCache.isValidApplicationToken("app1"));
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertTrue(tokenValidationCache.isValidApplicationToken("app1"));
+        verify(tokenServiceConnection, times(2)).validateApplicationToken("app1");
+    }
+
+    @Test
+    public void applicationIdOfValidApplicationToken() throws Exception {
+        when(tokenServiceConnection.validateApplicationToken("app1")).thenReturn(token("app1", NOW + 60000));
+        assertEquals(tokenValidationCache.applicationIdOf("app1"), "12");
+        assertNull(tokenValidationCache.applicationIdOf("unknown"));
+    }
+
+    @Test
+    public void invalidTokenCachedBriefly() throws Exception {
+        when(tokenServiceConnection.validateApplicationToken("bad")).thenReturn(null);
+        assertFalse(tokenValidationCache.isValidApplicationToken("bad"));
+        ticker.advance(9, TimeUnit.SECONDS);
+        assertFalse(tokenValidationCache.isValidApplicationToken("bad"));
+        verify(tokenServiceConnection, times(1)).validateApplicationToken("bad");
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertFalse(tokenValidationCache.isValidApplicationToken("bad"));
+        verify(tokenServiceConnection, times(2)).validateApplicationToken("bad");
+    }
+
+    @Test
+    public void userTokenNeverOutlivesApplicationToken() throws Exception {
+        when(tokenServiceConnection.validateApplicationToken("app1")).thenReturn(token("app1", NOW + 60000));
+        when(tokenServiceConnection.validateUserToken("app1", "user1")).thenReturn(true);
+        assertTrue(tokenValidationCache.isValidUserToken("app1", "user1"));
+        assertTrue(tokenValidationCache.isValidUserToken("app1", "user1"));
+        verify(tokenServiceConnection, times(1)).validateUserToken("app1", "user1");
+
+        ticker.advance(60, TimeUnit.SECONDS);
+        when(tokenServiceConnection.validateApplicationToken("app1")).thenReturn(token("app1", NOW + 600000));
+        assertTrue(tokenValidationCache.isValidUserToken("app1", "user1"));
+        verify(tokenServiceConnection, times(2)).validateUserToken("app1", "user1");
+    }
+
+    @Test
+    public void userTokenNotCheckedWithInvalidApplicationToken() throws Exception {
+        when(tokenServiceConnection.validateApplicationToken("bad")).thenReturn(null);
+        assertFalse(tokenValidationCache.isValidUserToken("bad", "user1"));
+        verify(tokenServiceConnection, times(0)).validateUserToken("bad", "user1");
+    }
+
+    @Test
+    public void connectionFailureIsNotCached() throws Exception {
+        when(tokenServiceConnection.validateApplicationToken("app1")).thenThrow(new ConnectionFailedException("down"));
+        try {
+            tokenValidationCache.isValidApplicationToken("app1");
+            fail("Expected ConnectionFailedException");
+        } catch (ConnectionFailedException e) {
+            assertEquals(e.getMessage(), "down");
+        }
+        assertEquals(tokenValidationCache.size(), 0);
+    }
+
+    private static WhydahLogonToken token(String applicationTokenId, long expires) {
+        return WhydahLogonToken.fromXml("<applicationtoken><params><applicationtokenID>" + applicationTokenId
+                + "</applicationtokenID><applicationid>12</applicationid><applicationname>test</applicationname>"
+                + "<expires>" + expires + "</expires></params></applicationtoken>");
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
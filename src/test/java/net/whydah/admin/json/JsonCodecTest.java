@@ -0,0 +1,27 @@
+package net.whydah.admin.json;
+
+import net.whydah.admin.application.Application;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class JsonCodecTest {
+
+    @Test
+    public void readerAndWriterAreReused() throws Exception {
+        assertSame(JsonCodec.reader(Application.class), JsonCodec.reader(Application.class));
+        assertSame(JsonCodec.writer(Application.class), JsonCodec.writer(Application.class));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Application application = new Application("id1", "mockApp", "defRoleid", "deforgid", Arrays.asList("aoi1", "aoi2"));
+        Application verifyApplication = Application.fromJson(application.toJson());
+        assertEquals(verifyApplication.getId(), "id1");
+        assertEquals(verifyApplication.getName(), "mockApp");
+        assertEquals(verifyApplication.getAvailableOrgIds(), Arrays.asList("aoi1", "aoi2"));
+    }
+}
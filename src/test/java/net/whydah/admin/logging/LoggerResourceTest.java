@@ -0,0 +1,69 @@
+package net.whydah.admin.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import net.whydah.admin.auth.TokenValidationCache;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class LoggerResourceTest {
+    private static final String LOGGER = "net.whydah.admin.logging.test\"quoted";
+
+    private LoggerResource loggerResource;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        TokenValidationCache tokenValidationCache = mock(TokenValidationCache.class);
+        when(tokenValidationCache.applicationIdOf("uasToken")).thenReturn("12");
+        when(tokenValidationCache.applicationIdOf("otherToken")).thenReturn("100");
+        loggerResource = new LoggerResource(tokenValidationCache, Arrays.asList("12"));
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        loggerResource.shutdown();
+        ((Logger) LoggerFactory.getLogger(LOGGER)).setLevel(null);
+    }
+
+    @Test
+    public void onlyAdminApplicationsMayChangeLevels() throws Exception {
+        assertEquals(loggerResource.setLevel("otherToken", LOGGER, "TRACE", 0).getStatus(), 403);
+        assertEquals(loggerResource.setLevel("unknownToken", LOGGER, "TRACE", 0).getStatus(), 403);
+        assertEquals(loggerResource.getLevels("otherToken").getStatus(), 403);
+        assertNull(((Logger) LoggerFactory.getLogger(LOGGER)).getLevel());
+
+        assertEquals(loggerResource.setLevel("uasToken", LOGGER, "TRACE", 0).getStatus(), 200);
+        assertEquals(((Logger) LoggerFactory.getLogger(LOGGER)).getLevel(), Level.TRACE);
+    }
+
+    @Test
+    public void closedWithoutTokenValidation() throws Exception {
+        LoggerResource closed = new LoggerResource(null, Arrays.asList("12"));
+        assertEquals(closed.setLevel("uasToken", LOGGER, "TRACE", 0).getStatus(), 403);
+        assertEquals(new LoggerResource(mock(TokenValidationCache.class), Collections.<String>emptyList())
+                .getLevels("uasToken").getStatus(), 403);
+        closed.shutdown();
+    }
+
+    @Test
+    public void loggerNameIsEscaped() throws Exception {
+        assertEquals(loggerResource.setLevel("uasToken", LOGGER, "DEBUG", 0).getEntity(),
+                "{\"net.whydah.admin.logging.test\\\"quoted\":\"DEBUG\"}");
+    }
+
+    @Test
+    public void rootCanNotInherit() throws Exception {
+        assertEquals(loggerResource.setLevel("uasToken", Logger.ROOT_LOGGER_NAME, "INHERITED", 0).getStatus(), 400);
+        assertEquals(loggerResource.setLevel("uasToken", "root", "INHERITED", 0).getStatus(), 400);
+    }
+}
@@ -0,0 +1,55 @@
+package net.whydah.admin.logging;
+
+import com.google.common.base.Strings;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class PayloadLogTest {
+
+    @Test
+    public void passwordsAndSecretsInXmlAreRedacted() throws Exception {
+        String xml = "<usercredential><params><username>admin</username><password>s3cr3t</password></params></usercredential>" +
+                "<application><applicationSecret type=\"plain\">abc</applicationSecret></application>";
+
+        assertEquals(PayloadLog.redact(xml), "<usercredential><params><username>admin</username><password>***</password></params></usercredential>" +
+                "<application><applicationSecret type=\"plain\">***</applicationSecret></application>");
+    }
+
+    @Test
+    public void passwordsInJsonAreRedacted() throws Exception {
+        String json = "{\"username\":\"admin\",\"password\" : \"with \\\"quote\\\"\",\"newpassword\":\"x\"}";
+
+        assertEquals(PayloadLog.redact(json), "{\"username\":\"admin\",\"password\" : \"***\",\"newpassword\":\"***\"}");
+    }
+
+    @Test
+    public void facebookAccessTokenIsRedacted() throws Exception {
+        // As posted to CreateLogonUserController
+        String fbUserXml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+                "<user>\n" +
+                "    <params>\n" +
+                "        <fbAccessToken>accessMe1234567</fbAccessToken>\n" +
+                "        <userId>null</userId>\n" +
+                "        <firstName>null</firstName>\n" +
+                "        <username>null</username>\n" +
+                "    </params>\n" +
+                "</user>";
+
+        String redacted = PayloadLog.redact(fbUserXml);
+
+        assertTrue(redacted.contains("<fbAccessToken>***</fbAccessToken>"), redacted);
+        assertFalse(redacted.contains("accessMe1234567"), redacted);
+        assertTrue(redacted.contains("<userId>null</userId>"), redacted);
+    }
+
+    @Test
+    public void longPayloadsAreTruncated() throws Exception {
+        String redacted = PayloadLog.of(Strings.repeat("a", PayloadLog.MAX_CHARS + 10)).toString();
+
+        assertTrue(redacted.endsWith("...(" + (PayloadLog.MAX_CHARS + 10) + " chars)"), redacted);
+        assertEquals(redacted.indexOf("..."), PayloadLog.MAX_CHARS);
+    }
+}
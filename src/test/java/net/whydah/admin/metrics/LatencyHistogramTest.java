@@ -0,0 +1,91 @@
+package net.whydah.admin.metrics;
+
+import org.testng.annotations.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void everyValueFallsInABucketNotBelowIt() throws Exception {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 33, 1000, 1023, 1024, 123456789, 1L << 40};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket < LatencyHistogram.BUCKETS, "bucket of " + value);
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(highest >= value, value + " above its bucket " + highest);
+            assertTrue(highest - value <= Math.max(0, value / 16), value + " too far from its bucket " + highest);
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.highestValueOf(bucket - 1) < value, value + " below bucket");
+            }
+        }
+    }
+
+    @Test
+    public void quantilesAreWithinTheBucketPrecision() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        assertEquals(histogram.getCount(), 1000);
+        assertEquals(histogram.getMaxMicros(), 1000000);
+        assertWithin(histogram.valueAtQuantile(0.5), 500000);
+        assertWithin(histogram.valueAtQuantile(0.99), 990000);
+        assertEquals(histogram.valueAtQuantile(0.999), 999000, 999000 / 16);
+        assertEquals(histogram.valueAtQuantile(1.0), 1000000);
+    }
+
+    @Test
+    public void quantilesCoverOnlyTheCurrentAndThePreviousWindow() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(null, 200);
+        for (int i = 0; i < 100; i++) {
+            histogram.record(TimeUnit.SECONDS.toNanos(1));
+        }
+        Thread.sleep(250);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        assertWithin(histogram.valueAtQuantile(0.99), 1000000);
+
+        Thread.sleep(450);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(histogram.valueAtQuantile(0.99), 1000);
+        assertEquals(histogram.getCount(), 102);
+        assertEquals(histogram.getMaxMicros(), 1000000);
+    }
+
+    @Test
+    public void timerRecordsWhenClosed() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        try (LatencyHistogram.Timer timer = histogram.time()) {
+            assertEquals(histogram.getCount(), 0);
+        }
+        assertEquals(histogram.getCount(), 1);
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() throws Exception {
+        assertEquals(new LatencyHistogram().valueAtQuantile(0.99), 0);
+    }
+
+    @Test
+    public void prometheusOutputHasQuantilesSumAndCount() throws Exception {
+        Metrics.histogram("uas_test_seconds", "method", "getUser", "status", "200").record(TimeUnit.MILLISECONDS.toNanos(2));
+        Metrics.counter("uas_test_total", "reason", "say \"hi\"").incrementAndGet();
+
+        StringWriter out = new StringWriter();
+        Metrics.writePrometheus(out);
+        String text = out.toString();
+
+        assertTrue(text.contains("# TYPE uas_test_seconds summary\n"), text);
+        assertTrue(text.contains("uas_test_seconds{method=\"getUser\",status=\"200\",quantile=\"0.99\"} 0.002\n"), text);
+        assertTrue(text.contains("uas_test_seconds_count{method=\"getUser\",status=\"200\"} 1\n"), text);
+        assertTrue(text.contains("uas_test_total{reason=\"say \\\"hi\\\"\"} 1\n"), text);
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16, actual + " not within 1/16 above " + expected);
+    }
+}
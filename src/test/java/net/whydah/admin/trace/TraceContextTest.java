@@ -0,0 +1,64 @@
+package net.whydah.admin.trace;
+
+import org.slf4j.MDC;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TraceContextTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void serverTimingAddsUpSpansOfTheSameName() throws Exception {
+        TraceContext trace = new TraceContext("abc", 0);
+        trace.addSpan("uib.getUser", 1 * MS, 10 * MS);
+        trace.addSpan("UserAggregate.toJson", 11 * MS, MS / 2);
+        trace.addSpan("UserAggregate.toJson", 12 * MS, MS / 2);
+
+        assertEquals(trace.serverTiming(15 * MS), "total;dur=15.0, uib.getUser;dur=10.0, UserAggregate.toJson;dur=1.0;desc=\"x2\"");
+    }
+
+    @Test
+    public void describeListsEverySpanWithItsOffset() throws Exception {
+        TraceContext trace = new TraceContext("abc", 0);
+        trace.setRequest("GET", "/useradminservice/app/token/user/1");
+        trace.setStatus(200);
+        trace.addSpan("uib.getUser", 1 * MS, 1500 * MS);
+
+        String description = trace.describe(1502 * MS);
+
+        assertEquals(description, "GET /useradminservice/app/token/user/1 200 1502.0ms correlationId=abc spans=[uib.getUser +1.0ms 1500.0ms]");
+    }
+
+    @Test
+    public void executorRunsTasksInTheContext() throws Exception {
+        final TraceContext trace = new TraceContext("abc", System.nanoTime());
+        final TraceContext[] seen = new TraceContext[1];
+        final String[] mdc = new String[1];
+        trace.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                seen[0] = TraceContext.current();
+                mdc[0] = MDC.get(TraceContext.MDC_KEY);
+                TraceContext.span("UserAggregate.fromXML", MS);
+            }
+        });
+
+        assertSame(seen[0], trace);
+        assertEquals(mdc[0], "abc");
+        assertNull(TraceContext.current());
+        assertNull(MDC.get(TraceContext.MDC_KEY));
+        assertTrue(trace.serverTiming(System.nanoTime()).contains("UserAggregate.fromXML;dur=1.0"));
+    }
+
+    @Test
+    public void spansOutsideARequestAreIgnored() throws Exception {
+        assertNull(TraceContext.current());
+        TraceContext.span("UserAggregate.fromXML", MS);
+    }
+}
@@ -0,0 +1,32 @@
+package net.whydah.admin.trace;
+
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.UriInfo;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class TraceFilterTest {
+
+    @Test
+    public void requestIsDescribedByPathTemplateWithoutTokens() throws Exception {
+        ExtendedUriInfo uriInfo = mock(ExtendedUriInfo.class);
+        when(uriInfo.getMatchedTemplates()).thenReturn(Arrays.asList(new UriTemplate("/{userId}"),
+                new UriTemplate("/{applicationtokenid}/{userTokenId}/user")));
+        assertEquals(TraceFilter.pathTemplate(uriInfo), "/{applicationtokenid}/{userTokenId}/user/{userId}");
+    }
+
+    @Test
+    public void unmatchedRequest() throws Exception {
+        ExtendedUriInfo uriInfo = mock(ExtendedUriInfo.class);
+        when(uriInfo.getMatchedTemplates()).thenReturn(Collections.<UriTemplate>emptyList());
+        assertEquals(TraceFilter.pathTemplate(uriInfo), "(unmatched)");
+        assertEquals(TraceFilter.pathTemplate(mock(UriInfo.class)), "(unmatched)");
+    }
+}
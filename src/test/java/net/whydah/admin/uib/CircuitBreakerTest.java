@@ -0,0 +1,101 @@
+package net.whydah.admin.uib;
+
+import com.google.common.base.Ticker;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private FakeTicker ticker;
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        ticker = new FakeTicker();
+        circuitBreaker = new CircuitBreaker("test", 3, 30, TimeUnit.SECONDS, ticker);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws Exception {
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+        circuitBreaker.onFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(circuitBreaker.getRejectedCount(), 1);
+        assertEquals(circuitBreaker.getRetryAfterSeconds(), 30);
+    }
+
+    @Test
+    public void singleProbeAfterOpenDuration() throws Exception {
+        open();
+        ticker.advance(30, TimeUnit.SECONDS);
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        assertFalse(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onSuccess();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void failedProbeOpensAgain() throws Exception {
+        open();
+        ticker.advance(31, TimeUnit.SECONDS);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+        assertEquals(circuitBreaker.getOpenedCount(), 2);
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void lateSuccessDoesNotCloseOpenCircuit() throws Exception {
+        open();
+        circuitBreaker.onSuccess();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void bulkheadRejectsOverLimit() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(2);
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        assertEquals(bulkhead.getInFlight(), 2);
+        bulkhead.release();
+        assertTrue(bulkhead.tryAcquire());
+        assertEquals(bulkhead.getRejectedCount(), 1);
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
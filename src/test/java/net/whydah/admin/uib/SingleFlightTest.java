@@ -0,0 +1,230 @@
+package net.whydah.admin.uib;
+
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.config.AppConfig;
+import net.whydah.admin.trace.TraceContext;
+import net.whydah.admin.trace.TraceFilter;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void concurrentCallsShareOneResult() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight(10000);
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Object result = new Object();
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return singleFlight.call("getUser:uid:token", new Supplier<Object>() {
+                        @Override
+                        public Object get() {
+                            calls.incrementAndGet();
+                            awaitUninterruptibly(release);
+                            return result;
+                        }
+                    });
+                }
+            }));
+        }
+        while (singleFlight.getCollapsedCount() < 4) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<Object> future : futures) {
+            assertSame(future.get(5, TimeUnit.SECONDS), result);
+        }
+        executor.shutdown();
+        assertEquals(calls.get(), 1);
+        assertEquals(singleFlight.getCallCount(), 1);
+        assertEquals(singleFlight.getInFlightCount(), 0);
+    }
+
+    @Test
+    public void asyncFailureIsSharedAndKeyReleased() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(10000);
+        final SettableFuture<String> uibCall = SettableFuture.create();
+        Supplier<ListenableFuture<String>> call = new Supplier<ListenableFuture<String>>() {
+            @Override
+            public ListenableFuture<String> get() {
+                return uibCall;
+            }
+        };
+        ListenableFuture<String> first = singleFlight.callAsync("getApplication:1:token", call);
+        ListenableFuture<String> second = singleFlight.callAsync("getApplication:1:token", call);
+        assertEquals(singleFlight.getCollapsedCount(), 1);
+
+        uibCall.setException(new IllegalStateException("UIB down"));
+        for (ListenableFuture<String> future : new ListenableFuture[]{first, second}) {
+            try {
+                future.get();
+                fail("Expected failure");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals(singleFlight.getInFlightCount(), 0);
+    }
+
+    @Test
+    public void differentKeysAreNotCollapsed() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(10000);
+        final SettableFuture<String> uibCall = SettableFuture.create();
+        Supplier<ListenableFuture<String>> call = new Supplier<ListenableFuture<String>>() {
+            @Override
+            public ListenableFuture<String> get() {
+                return uibCall;
+            }
+        };
+        singleFlight.callAsync(SingleFlight.key("getUser", "uid", "token1"), call);
+        singleFlight.callAsync(SingleFlight.key("getUser", "uid", "token2"), call);
+        assertEquals(singleFlight.getCollapsedCount(), 0);
+        assertEquals(singleFlight.getCallCount(), 2);
+    }
+
+    @Test
+    public void everyCallerGetsItsOwnCopy() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(10000);
+        final SettableFuture<List<String>> uibCall = SettableFuture.create();
+        Supplier<ListenableFuture<List<String>>> call = new Supplier<ListenableFuture<List<String>>>() {
+            @Override
+            public ListenableFuture<List<String>> get() {
+                return uibCall;
+            }
+        };
+        Function<List<String>, List<String>> copy = new Function<List<String>, List<String>>() {
+            @Override
+            public List<String> apply(List<String> roles) {
+                return new ArrayList<>(roles);
+            }
+        };
+        ListenableFuture<List<String>> first = singleFlight.callAsync("getUser:uid:token", call, copy);
+        ListenableFuture<List<String>> second = singleFlight.callAsync("getUser:uid:token", call, copy);
+
+        uibCall.set(new ArrayList<>(Arrays.asList("admin")));
+        first.get().add("user");
+
+        assertEquals(second.get(), Arrays.asList("admin"));
+        assertEquals(uibCall.get(), Arrays.asList("admin"));
+    }
+
+    @Test
+    public void waitForCallInFlightIsBounded() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight(50);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Supplier<String> call = new Supplier<String>() {
+            @Override
+            public String get() {
+                awaitUninterruptibly(release);
+                return "user";
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> first = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return singleFlight.call("getUser:uid:token", call);
+            }
+        });
+        while (singleFlight.getInFlightCount() == 0) {
+            Thread.sleep(5);
+        }
+        try {
+            singleFlight.call("getUser:uid:token", call);
+            fail("Expected ConnectionFailedException");
+        } catch (ConnectionFailedException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        release.countDown();
+        assertEquals(first.get(5, TimeUnit.SECONDS), "user");
+        executor.shutdown();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void listenersRunWithTheTraceOfTheirOwnCaller() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight(10000);
+        final SettableFuture<Object> uibCall = SettableFuture.create();
+        final Supplier<ListenableFuture<Object>> call = new Supplier<ListenableFuture<Object>>() {
+            @Override
+            public ListenableFuture<Object> get() {
+                return uibCall;
+            }
+        };
+        final TraceFilter traceFilter = new TraceFilter(mock(AppConfig.class));
+        final List<TraceContext> callerTraces = new ArrayList<>();
+        final List<AtomicReference<TraceContext>> listenerTraces = new ArrayList<>();
+        // A request thread of its own, so the TraceContext attached by the filter does not stay on the test thread
+        ExecutorService requestThread = Executors.newSingleThreadExecutor();
+        requestThread.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (int i = 0; i < 2; i++) {
+                    traceFilter.filter(request());
+                    callerTraces.add(TraceContext.current());
+                    final AtomicReference<TraceContext> listenerTrace = new AtomicReference<>();
+                    listenerTraces.add(listenerTrace);
+                    singleFlight.callAsync("key", call).addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            listenerTrace.set(TraceContext.current());
+                        }
+                    }, MoreExecutors.directExecutor());
+                }
+                return null;
+            }
+        }).get();
+        requestThread.shutdown();
+
+        uibCall.set(new Object());
+
+        assertNotNull(callerTraces.get(0));
+        assertSame(listenerTraces.get(0).get(), callerTraces.get(0));
+        assertSame(listenerTraces.get(1).get(), callerTraces.get(1));
+    }
+
+    private static ContainerRequestContext request() {
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        when(request.getMethod()).thenReturn("GET");
+        return request;
+    }
+}
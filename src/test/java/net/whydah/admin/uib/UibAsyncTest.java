@@ -0,0 +1,27 @@
+package net.whydah.admin.uib;
+
+import net.whydah.admin.ConnectionFailedException;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.ProcessingException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import static org.testng.Assert.assertEquals;
+
+public class UibAsyncTest {
+
+    @Test
+    public void readTimeoutIsGatewayTimeout() throws Exception {
+        ConnectionFailedException e = new ConnectionFailedException("Request to UIB failed",
+                new ProcessingException(new SocketTimeoutException("Read timed out")));
+        assertEquals(UibAsync.unavailable(e).getStatus(), 504);
+    }
+
+    @Test
+    public void connectionRefusedIsServiceUnavailable() throws Exception {
+        ConnectionFailedException e = new ConnectionFailedException("Request to UIB failed",
+                new ProcessingException(new ConnectException("Connection refused")));
+        assertEquals(UibAsync.unavailable(e).getStatus(), 503);
+    }
+}
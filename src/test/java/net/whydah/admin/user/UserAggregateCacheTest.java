@@ -0,0 +1,108 @@
+package net.whydah.admin.user;
+
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+
+public class UserAggregateCacheTest {
+    private static final String TOKEN = "userToken1";
+    private UserAggregateCache cache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        cache = new UserAggregateCache(2, 60);
+    }
+
+    @Test
+    public void hitAndMissAreCounted() throws Exception {
+        UserAggregate user = buildUser("uid1", "user1");
+        assertNull(cache.get("uid1", TOKEN));
+        put("uid1", user);
+        assertEquals(cache.get("uid1", TOKEN).getUsername(), "user1");
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getMissCount(), 1);
+    }
+
+    @Test
+    public void cachedUserIsACopy() throws Exception {
+        UserAggregate user = buildUser("uid1", "user1");
+        user.addRole(new UserPropertyAndRole("r1", "uid1", "12", "Whydah Admin", "Whydah", "admin", "true"));
+        put("uid1", user);
+        user.setFirstName("changed");
+
+        UserAggregate cached = cache.get("uid1", TOKEN);
+        assertNotSame(cached, cache.get("uid1", TOKEN));
+        assertEquals(cached.getFirstName(), "first");
+        assertEquals(cached.getRoles().get(0), user.getRoles().get(0));
+        cached.getRoles().clear();
+        assertEquals(cache.get("uid1", TOKEN).getRoles().size(), 1);
+    }
+
+    @Test
+    public void userIsOnlyServedToCallersItWasFetchedFor() throws Exception {
+        put("uid1", buildUser("uid1", "user1"));
+        assertNull(cache.get("uid1", "userToken2"));
+
+        cache.put("uid1", "userToken2", buildUser("uid1", "user1"), cache.generation("uid1"));
+        assertEquals(cache.get("uid1", "userToken2").getUsername(), "user1");
+        assertEquals(cache.get("uid1", TOKEN).getUsername(), "user1");
+    }
+
+    @Test
+    public void readStartedBeforeInvalidateIsNotCached() throws Exception {
+        long generation = cache.generation("uid1");
+        cache.invalidate("uid1");
+        cache.put("uid1", TOKEN, buildUser("uid1", "user1"), generation);
+        assertNull(cache.get("uid1", TOKEN));
+
+        generation = cache.generation("uid1");
+        cache.invalidateByUsername("user1");
+        cache.put("uid1", TOKEN, buildUser("uid1", "user1"), generation);
+        assertNull(cache.get("uid1", TOKEN));
+
+        cache.put("uid1", TOKEN, buildUser("uid1", "user1"), cache.generation("uid1"));
+        assertEquals(cache.get("uid1", TOKEN).getUsername(), "user1");
+    }
+
+    @Test
+    public void invalidateRemovesEntry() throws Exception {
+        put("uid1", buildUser("uid1", "user1"));
+        cache.invalidate("uid1");
+        assertNull(cache.get("uid1", TOKEN));
+    }
+
+    @Test
+    public void invalidateByUsernameRemovesEntry() throws Exception {
+        put("uid1", buildUser("uid1", "user1"));
+        put("uid2", buildUser("uid2", "user2"));
+        cache.invalidateByUsername("user1");
+        assertNull(cache.get("uid1", TOKEN));
+        assertEquals(cache.get("uid2", TOKEN).getUsername(), "user2");
+    }
+
+    @Test
+    public void maxSizeEvicts() throws Exception {
+        put("uid1", buildUser("uid1", "user1"));
+        put("uid2", buildUser("uid2", "user2"));
+        put("uid3", buildUser("uid3", "user3"));
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getEvictionCount(), 1);
+    }
+
+    private void put(String uid, UserAggregate user) {
+        cache.put(uid, TOKEN, user, cache.generation(uid));
+    }
+
+    private UserAggregate buildUser(String uid, String username) {
+        UserIdentity identity = new UserIdentity(uid, username, "first", "last", "ref", username + "@example.com", "12345678", null);
+        return new UserAggregate(identity, new ArrayList<UserPropertyAndRole>());
+    }
+}
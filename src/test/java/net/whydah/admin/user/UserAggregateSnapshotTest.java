@@ -0,0 +1,54 @@
+package net.whydah.admin.user;
+
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+public class UserAggregateSnapshotTest {
+
+    @Test
+    public void convertsBackToTheSameUser() throws Exception {
+        UserAggregate user = buildUser("uid1", new String("Whydah Admin"));
+
+        UserAggregate copy = UserAggregateSnapshot.of(user).toUserAggregate();
+
+        assertEquals(copy.getIdentity(), user.getIdentity());
+        assertEquals(copy.getRoles(), user.getRoles());
+        assertEquals(copy.getRoles().get(0).getId(), "r-uid1");
+        assertEquals(copy.toXML(), user.toXML());
+    }
+
+    @Test
+    public void roleValuesAreSharedBetweenUsers() throws Exception {
+        UserAggregate first = UserAggregateSnapshot.of(buildUser("uid1", new String("Whydah Admin"))).toUserAggregate();
+        UserAggregate second = UserAggregateSnapshot.of(buildUser("uid2", new String("Whydah Admin"))).toUserAggregate();
+
+        assertSame(first.getRoles().get(0).getApplicationName(), second.getRoles().get(0).getApplicationName());
+        assertSame(first.getRoles().get(0).getUid(), first.getUid());
+    }
+
+    @Test
+    public void userWithoutIdentityOrRoles() throws Exception {
+        UserAggregateSnapshot snapshot = UserAggregateSnapshot.of(new UserAggregate(null, null));
+
+        assertNull(snapshot.getUsername());
+        assertEquals(snapshot.getRoleCount(), 0);
+        assertNull(snapshot.toUserAggregate().getIdentity());
+        assertNull(snapshot.toUserAggregate().getRoles());
+    }
+
+    private UserAggregate buildUser(String uid, String applicationName) {
+        UserIdentity identity = new UserIdentity(uid, "user-" + uid, "first", "last", "ref", uid + "@example.com", "12345678", null);
+        List<UserPropertyAndRole> roles = new ArrayList<>();
+        roles.add(new UserPropertyAndRole("r-" + uid, new String(uid), "12", applicationName, "Whydah", "admin", "true"));
+        return new UserAggregate(identity, roles);
+    }
+}
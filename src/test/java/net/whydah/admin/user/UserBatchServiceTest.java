@@ -0,0 +1,112 @@
+package net.whydah.admin.user;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import net.whydah.admin.ConnectionFailedException;
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.ProcessingException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class UserBatchServiceTest {
+    private UserService userService;
+    private UserAggregateCache cache;
+    private UserBatchService userBatchService;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        userService = mock(UserService.class);
+        when(userService.hasAccess(anyString(), anyString())).thenReturn(true);
+        cache = new UserAggregateCache(100, 60);
+        userBatchService = new UserBatchService(userService, cache, 3, 2, 1000);
+    }
+
+    @Test
+    public void cachedUsersAreNotFetched() throws Exception {
+        UserAggregate cached = buildUser("uid1");
+        cache.put("uid1", "token", cached, cache.generation("uid1"));
+        UserAggregate fetched = buildUser("uid2");
+        when(userService.getUserAsync("app", "token", "uid2")).thenReturn(Futures.immediateFuture(fetched));
+
+        UserBatchResult result = userBatchService.getUsers("app", "token", Arrays.asList("uid1", "uid2", "uid1"));
+
+        assertEquals(result.getUsers().size(), 2);
+        assertEquals(result.getUsers().get(0).getUid(), "uid1");
+        assertSame(result.getUsers().get(1), fetched);
+        assertEquals(result.getErrors().size(), 0);
+        verify(userService, never()).getUserAsync(anyString(), anyString(), eq("uid1"));
+    }
+
+    @Test
+    public void usersCachedForAnotherCallerAreFetched() throws Exception {
+        cache.put("uid1", "otherToken", buildUser("uid1"), cache.generation("uid1"));
+        UserAggregate fetched = buildUser("uid1");
+        when(userService.getUserAsync("app", "token", "uid1")).thenReturn(Futures.immediateFuture(fetched));
+
+        UserBatchResult result = userBatchService.getUsers("app", "token", Arrays.asList("uid1"));
+
+        assertSame(result.getUsers().get(0), fetched);
+    }
+
+    @Test
+    public void failuresAreReportedPerUser() throws Exception {
+        ListenableFuture<UserAggregate> notFound = Futures.immediateFuture(null);
+        ListenableFuture<UserAggregate> unreachable = Futures.immediateFailedFuture(
+                new ConnectionFailedException("Request to UIB failed", new ProcessingException(new ConnectException())));
+        when(userService.getUserAsync("app", "token", "uid1")).thenReturn(Futures.immediateFuture(buildUser("uid1")));
+        when(userService.getUserAsync("app", "token", "uid2")).thenReturn(notFound);
+        when(userService.getUserAsync("app", "token", "uid3")).thenReturn(unreachable);
+
+        UserBatchResult result = userBatchService.getUsers("app", "token", Arrays.asList("uid1", "uid2", "uid3"));
+
+        assertEquals(result.getUsers().size(), 1);
+        assertEquals(result.getErrors().size(), 2);
+        assertEquals(result.getErrors().get(0).getUid(), "uid2");
+        assertEquals(result.getErrors().get(0).getStatus(), 404);
+        assertEquals(result.getErrors().get(1).getUid(), "uid3");
+        assertEquals(result.getErrors().get(1).getStatus(), 503);
+    }
+
+    @Test
+    public void slowUserTimesOut() throws Exception {
+        SettableFuture<UserAggregate> neverCompleted = SettableFuture.create();
+        when(userService.getUserAsync("app", "token", "uid1")).thenReturn(neverCompleted);
+        userBatchService = new UserBatchService(userService, cache, 3, 2, 50);
+
+        UserBatchResult result = userBatchService.getUsers("app", "token", Arrays.asList("uid1"));
+
+        assertEquals(result.getErrors().size(), 1);
+        assertEquals(result.getErrors().get(0).getStatus(), 504);
+    }
+
+    @Test(expectedExceptions = BatchTooLargeException.class)
+    public void tooManyUsersIsRejected() throws Exception {
+        userBatchService.getUsers("app", "token", Arrays.asList("uid1", "uid2", "uid3", "uid4"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void nullUidIsRejected() throws Exception {
+        userBatchService.getUsers("app", "token", Arrays.asList("uid1", null));
+    }
+
+    private static UserAggregate buildUser(String uid) {
+        UserIdentity identity = new UserIdentity(uid, "user-" + uid, "first", "last", "", "first.last@example.com", "12345678", "");
+        return new UserAggregate(identity, new ArrayList<UserPropertyAndRole>());
+    }
+}
@@ -0,0 +1,126 @@
+package net.whydah.admin.user;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import net.whydah.admin.ConflictExeption;
+import net.whydah.admin.user.uib.RoleRepresentation;
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+import net.whydah.admin.user.uib.UserIdentity;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class UserImportServiceTest {
+    private UserService userService;
+    private UserImportService userImportService;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        userService = mock(UserService.class);
+        when(userService.hasAccess(anyString(), anyString())).thenReturn(true);
+        userImportService = new UserImportService(userService, MoreExecutors.newDirectExecutorService(), 2);
+    }
+
+    @Test
+    public void ndjsonRecordsAreReportedPerLine() throws Exception {
+        when(userService.createUser(eq("app"), eq("token"), contains("\"username\":\"jd\"")))
+                .thenReturn(new UserIdentity("uid-jd", "jd", "John", "Doe", "", "jd@example.com", "12345678", ""));
+        when(userService.createUser(eq("app"), eq("token"), contains("\"username\":\"ab\"")))
+                .thenThrow(new ConflictExeption("exists"));
+        when(userService.addUserRole(eq("app"), eq("token"), eq("uid-jd"), any(RoleRepresentationRequest.class)))
+                .thenReturn(new RoleRepresentation());
+        String ndjson = "{\"username\":\"jd\",\"firstName\":\"John\",\"lastName\":\"Doe\",\"email\":\"jd@example.com\"," +
+                "\"roles\":[{\"applicationId\":\"12\",\"applicationRoleName\":\"user\",\"applicationRoleValue\":\"true\"}]}\n" +
+                "\n" +
+                "{\"username\":\"JD\",\"email\":\"other@example.com\"}\n" +
+                "not json\n" +
+                "{\"username\":\"ab\",\"email\":\"ab@example.com\"}\n";
+
+        String[] lines = importUsers(new NdjsonUserImportReader(stream(ndjson)));
+
+        assertEquals(lines.length, 5);
+        assertEquals(lines[0], "{\"record\":1,\"username\":\"jd\",\"status\":\"created\",\"uid\":\"uid-jd\",\"roles\":1}");
+        assertEquals(lines[1], "{\"record\":2,\"username\":\"JD\",\"status\":\"duplicate\"}");
+        assertTrue(lines[2].startsWith("{\"record\":3,\"status\":\"invalid\""), lines[2]);
+        assertEquals(lines[3], "{\"record\":4,\"username\":\"ab\",\"status\":\"conflict\"}");
+        assertEquals(lines[4], "{\"summary\":{\"records\":4,\"created\":1,\"duplicate\":1,\"conflict\":1,\"invalid\":1,\"failed\":0,\"rolesFailed\":0}}");
+        verify(userService, times(2)).createUser(eq("app"), eq("token"), anyString());
+    }
+
+    @Test
+    public void xmlUsersAreReadOneAtATime() throws Exception {
+        when(userService.createUser(eq("app"), eq("token"), anyString()))
+                .thenReturn(new UserIdentity("uid-1", "jd", "John", "Doe", "", "jd@example.com", "12345678", ""));
+        String xml = "<whydahusers>" +
+                "<whydahuser><identity><username>jd</username><email>jd@example.com</email></identity>" +
+                "<applications><application><appId>12</appId><roleName>user</roleName><roleValue>true</roleValue></application></applications>" +
+                "</whydahuser>" +
+                "<whydahuser><identity><email>missing@example.com</email></identity></whydahuser>" +
+                "<whydahuser><identity><username>broken";
+
+        String[] lines = importUsers(new XmlUserImportReader(stream(xml)));
+
+        assertEquals(lines.length, 4);
+        assertEquals(lines[0], "{\"record\":1,\"username\":\"jd\",\"status\":\"created\",\"uid\":\"uid-1\",\"roles\":1}");
+        assertTrue(lines[1].startsWith("{\"record\":2,\"status\":\"invalid\""), lines[1]);
+        assertTrue(lines[2].startsWith("{\"record\":3,\"status\":\"invalid\""), lines[2]);
+        assertTrue(lines[3].startsWith("{\"summary\":{\"records\":3,\"created\":1,"), lines[3]);
+    }
+
+    @Test
+    public void ndjsonUserWithoutUsernameIsInvalid() throws Exception {
+        String[] lines = importUsers(new NdjsonUserImportReader(stream("{\"email\":\"jd@example.com\"}\n")));
+
+        assertEquals(lines[0], "{\"record\":1,\"status\":\"invalid\",\"message\":\"Missing username\"}");
+        verify(userService, never()).createUser(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void unreadableRecordIsReportedWithItsOwnIndex() throws Exception {
+        ExecutorService workers = Executors.newSingleThreadExecutor();
+        userImportService = new UserImportService(userService, workers, 2);
+        when(userService.createUser(eq("app"), eq("token"), anyString())).then(new Answer<UserIdentity>() {
+            @Override
+            public UserIdentity answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(200);
+                return new UserIdentity("uid-1", "jd", "John", "Doe", "", "jd@example.com", "12345678", "");
+            }
+        });
+        String xml = "<whydahusers><whydahuser><identity><username>jd</username></identity></whydahuser>" +
+                "<whydahuser><identity><username>broken";
+
+        String[] lines = importUsers(new XmlUserImportReader(stream(xml)));
+        workers.shutdown();
+
+        assertTrue(lines[0].startsWith("{\"record\":2,\"status\":\"invalid\""), lines[0]);
+        assertTrue(lines[1].startsWith("{\"record\":1,\"username\":\"jd\",\"status\":\"created\""), lines[1]);
+    }
+
+    private String[] importUsers(UserImportReader reader) throws Exception {
+        StringWriter output = new StringWriter();
+        userImportService.importUsers("app", "token", reader, output);
+        return output.toString().split("\n");
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
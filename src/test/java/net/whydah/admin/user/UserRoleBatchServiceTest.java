@@ -0,0 +1,156 @@
+package net.whydah.admin.user;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+import net.whydah.admin.ConflictExeption;
+import net.whydah.admin.user.uib.RoleRepresentation;
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.BadRequestException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class UserRoleBatchServiceTest {
+    private UserService userService;
+    private UserRoleBatchService userRoleBatchService;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        userService = mock(UserService.class);
+        when(userService.hasAccess(anyString(), anyString())).thenReturn(true);
+        userRoleBatchService = new UserRoleBatchService(userService, MoreExecutors.newDirectExecutorService(), RateLimiter.create(1000), 5, 2, 10000);
+    }
+
+    @Test
+    public void outcomePerItem() throws Exception {
+        RoleRepresentation created = new RoleRepresentation();
+        created.setId("r9");
+        when(userService.addUserRole(eq("app"), eq("token"), eq("u1"), any(RoleRepresentationRequest.class))).thenReturn(created);
+        when(userService.addUserRole(eq("app"), eq("token"), eq("u2"), any(RoleRepresentationRequest.class))).thenThrow(new ConflictExeption("exists"));
+        doThrow(new BadRequestException("no such role")).when(userService).deleteUserRole("app", "token", "u3", "r404");
+        UserRoleBatch batch = UserRoleBatch.fromJson("{\"grants\":[" +
+                "{\"uid\":\"u1\",\"role\":{\"applicationId\":\"12\",\"applicationRoleName\":\"user\",\"applicationRoleValue\":\"true\"}}," +
+                "{\"uid\":\"u2\",\"role\":{\"applicationId\":\"12\",\"applicationRoleName\":\"user\",\"applicationRoleValue\":\"true\"}}," +
+                "{\"uid\":\"u4\"}]," +
+                "\"revokes\":[{\"uid\":\"u3\",\"roleId\":\"r1\"},{\"uid\":\"u3\",\"roleId\":\"r404\"}]}");
+
+        UserRoleBatchResult result = userRoleBatchService.execute("app", "token", batch);
+
+        assertEquals(result.getGrant(0).getStatus(), 201);
+        assertEquals(result.getGrant(0).getRoleId(), "r9");
+        assertEquals(result.getGrant(1).getStatus(), 409);
+        assertEquals(result.getGrant(2).getStatus(), 400);
+        assertEquals(result.getRevoke(0).getStatus(), 204);
+        assertNull(result.getRevoke(0).getMessage());
+        assertEquals(result.getRevoke(1).getStatus(), 400);
+        assertEquals(result.getGranted(), 1);
+        assertEquals(result.getRevoked(), 1);
+        assertEquals(result.getFailed(), 3);
+
+        StringWriter json = new StringWriter();
+        result.writeJson(json);
+        assertTrue(json.toString().startsWith("{\"granted\":1,\"revoked\":1,\"failed\":3,\"grants\":[{\"uid\":\"u1\",\"status\":201,\"roleId\":\"r9\"}"), json.toString());
+    }
+
+    @Test
+    public void operationsOfOneUidRunInOrder() throws Exception {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        when(userService.addUserRole(eq("app"), eq("token"), anyString(), any(RoleRepresentationRequest.class))).then(new Answer<RoleRepresentation>() {
+            @Override
+            public RoleRepresentation answer(InvocationOnMock invocation) throws Throwable {
+                RoleRepresentationRequest role = (RoleRepresentationRequest) invocation.getArguments()[3];
+                if ("first".equals(role.getApplicationRoleName())) {
+                    Thread.sleep(100);
+                }
+                calls.add("grant " + role.getApplicationRoleName());
+                return new RoleRepresentation();
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                calls.add("revoke " + invocation.getArguments()[3]);
+                return null;
+            }
+        }).when(userService).deleteUserRole(eq("app"), eq("token"), anyString(), anyString());
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        userRoleBatchService = new UserRoleBatchService(userService, workers, RateLimiter.create(1000), 5, 2, 10000);
+
+        userRoleBatchService.execute("app", "token", UserRoleBatch.fromJson("{\"grants\":[" +
+                "{\"uid\":\"u1\",\"role\":{\"applicationId\":\"12\",\"applicationRoleName\":\"first\"}}," +
+                "{\"uid\":\"u1\",\"role\":{\"applicationId\":\"12\",\"applicationRoleName\":\"second\"}}]," +
+                "\"revokes\":[{\"uid\":\"u1\",\"roleId\":\"r1\"}]}"));
+        workers.shutdown();
+
+        assertEquals(calls, Arrays.asList("grant first", "grant second", "revoke r1"));
+    }
+
+    @Test
+    public void operationsNotStartedWithinTheTimeoutAreReported() throws Exception {
+        userRoleBatchService = new UserRoleBatchService(userService, MoreExecutors.newDirectExecutorService(), RateLimiter.create(1), 5, 2, 100);
+
+        UserRoleBatchResult result = userRoleBatchService.execute("app", "token", UserRoleBatch.fromJson("{\"revokes\":[" +
+                "{\"uid\":\"u1\",\"roleId\":\"1\"},{\"uid\":\"u2\",\"roleId\":\"2\"},{\"uid\":\"u3\",\"roleId\":\"3\"}]}"));
+
+        assertEquals(result.getRevoke(0).getStatus(), 204);
+        assertEquals(result.getRevoke(1).getStatus(), 503);
+        assertEquals(result.getRevoke(2).getStatus(), 503);
+        verify(userService, never()).deleteUserRole("app", "token", "u3", "3");
+    }
+
+    @Test
+    public void operationsReportedAsNotStartedNeverRun() throws Exception {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(300);
+                return null;
+            }
+        }).when(userService).deleteUserRole("app", "token", "u1", "1");
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        userRoleBatchService = new UserRoleBatchService(userService, workers, RateLimiter.create(1000), 5, 2, 100);
+
+        UserRoleBatchResult result = userRoleBatchService.execute("app", "token", UserRoleBatch.fromJson("{\"revokes\":[" +
+                "{\"uid\":\"u1\",\"roleId\":\"1\"},{\"uid\":\"u1\",\"roleId\":\"2\"}]}"));
+        Thread.sleep(400);
+        workers.shutdown();
+
+        assertEquals(result.getRevoke(0).getStatus(), 504);
+        assertEquals(result.getRevoke(1).getStatus(), 503);
+        verify(userService, never()).deleteUserRole("app", "token", "u1", "2");
+    }
+
+    @Test(expectedExceptions = BatchTooLargeException.class)
+    public void tooLargeBatchIsRejected() throws Exception {
+        userRoleBatchService.execute("app", "token", UserRoleBatch.fromJson("{\"revokes\":[" +
+                "{\"uid\":\"u\",\"roleId\":\"1\"},{\"uid\":\"u\",\"roleId\":\"2\"},{\"uid\":\"u\",\"roleId\":\"3\"}," +
+                "{\"uid\":\"u\",\"roleId\":\"4\"},{\"uid\":\"u\",\"roleId\":\"5\"},{\"uid\":\"u\",\"roleId\":\"6\"}]}"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidJsonIsRejected() throws Exception {
+        UserRoleBatch.fromJson("{\"grants\":");
+    }
+}
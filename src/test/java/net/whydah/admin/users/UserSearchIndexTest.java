@@ -0,0 +1,157 @@
+package net.whydah.admin.users;
+
+import com.google.common.base.Charsets;
+import net.whydah.admin.CredentialStore;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.users.uib.UibUsersConnection;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class UserSearchIndexTest {
+    private UserSearchIndex index;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        index = new UserSearchIndex();
+        index.put(new UserIdentity("1", "anna.berg", "Anna", "Berg", "ref-1", "anna@example.com", "+47 900 11 222", ""));
+        index.put(new UserIdentity("2", "bob", "Bob", "Annassen", "ref-2", "bob@example.com", "91122333", ""));
+        index.put(new UserIdentity("3", "carl", "Carl", "Berg", "ref-3", "carl@berg.no", "92233444", ""));
+    }
+
+    @Test
+    public void prefixOfAnyFieldMatches() throws Exception {
+        assertEquals(uids(index.search("ann", 0, 10)), "1,2");
+        assertEquals(uids(index.search("4790011", 0, 10)), "1");
+        assertEquals(uids(index.search("REF-3", 0, 10)), "3");
+    }
+
+    @Test
+    public void allQueryWordsMustMatch() throws Exception {
+        assertEquals(uids(index.search("berg ca", 0, 10)), "3");
+        assertEquals(uids(index.search("berg bob", 0, 10)), "");
+    }
+
+    @Test
+    public void rankedAndPaged() throws Exception {
+        // "berg" in the username ranks above "berg" in the email domain
+        UserSearchIndex.Hits hits = index.search("berg", 0, 1);
+        assertEquals(hits.getTotal(), 2);
+        assertEquals(uids(hits), "1");
+        assertEquals(uids(index.search("berg", 1, 1)), "3");
+    }
+
+    @Test
+    public void removedAndUpdatedUsersAreReindexed() throws Exception {
+        index.remove("2");
+        assertEquals(uids(index.search("bob", 0, 10)), "");
+        index.put(new UserIdentity("3", "carl", "Carl", "Dahl", "ref-3", "carl@dahl.no", "92233444", ""));
+        assertEquals(uids(index.search("berg", 0, 10)), "1");
+        assertEquals(uids(index.search("dahl", 0, 10)), "3");
+    }
+
+    @Test
+    public void servedOnlyToCallersUibReturnedTheSameUsersTo() throws Exception {
+        UibUsersConnection uib = mock(UibUsersConnection.class);
+        UserSearchIndex loaded = new UserSearchIndex(uib, credentialStore(), "*", 60);
+        when(uib.findUsersAsStream("uas", "token-a", "*")).thenReturn(usersJson("1", "2"));
+        when(uib.findUsersAsStream("uas", "token-b", "*")).thenReturn(usersJson("2", "1"));
+        when(uib.findUsersAsStream("uas", "token-c", "*")).thenReturn(usersJson("1"));
+
+        assertFalse(loaded.isReadyFor("token-a"));
+        loaded.refresh("token-a");
+        assertTrue(loaded.isReadyFor("token-a"));
+        assertFalse(loaded.isReadyFor("token-b"));
+
+        loaded.refresh("token-b");
+        assertTrue(loaded.isReadyFor("token-a"));
+        assertTrue(loaded.isReadyFor("token-b"));
+
+        loaded.refresh("token-c");
+        assertFalse(loaded.isReadyFor("token-a"));
+        assertTrue(loaded.isReadyFor("token-c"));
+        assertEquals(loaded.size(), 1);
+    }
+
+    @Test
+    public void callerWithOtherUsersSearchesUibWithoutReloading() throws Exception {
+        UibUsersConnection uib = mock(UibUsersConnection.class);
+        UserSearchIndex loaded = new UserSearchIndex(uib, credentialStore(), "*", 60);
+        when(uib.findUsersAsStream("uas", "token-a", "*")).thenReturn(usersJson("1", "2"));
+        when(uib.findUsersAsStream("uas", "token-c", "*")).thenReturn(usersJson("1"));
+        loaded.refresh("token-a");
+        loaded.refresh("token-c");
+
+        assertFalse(loaded.isReadyFor("token-a"));
+        assertFalse(loaded.isLoadRequested());
+
+        assertFalse(loaded.isReadyFor("token-d"));
+        assertTrue(loaded.isLoadRequested());
+    }
+
+    @Test
+    public void userDeletedDuringRefreshIsNotIndexedAgain() throws Exception {
+        UibUsersConnection uib = mock(UibUsersConnection.class);
+        final UserSearchIndex loaded = new UserSearchIndex(uib, credentialStore(), "*", 60);
+        final InputStream users = usersJson("1", "2");
+        // UserService deletes user 2 after UIB has returned it, while the refresh is reading the result
+        InputStream deleteWhileReading = new InputStream() {
+            private boolean deleted;
+
+            @Override
+            public int read() throws IOException {
+                if (!deleted) {
+                    deleted = true;
+                    loaded.remove("2");
+                }
+                return users.read();
+            }
+        };
+        when(uib.findUsersAsStream("uas", "token-a", "*")).thenReturn(deleteWhileReading);
+
+        loaded.refresh("token-a");
+
+        assertEquals(loaded.size(), 1);
+        assertEquals(uids(loaded.search("user", 0, 10)), "1");
+    }
+
+    private static CredentialStore credentialStore() {
+        CredentialStore credentialStore = mock(CredentialStore.class);
+        when(credentialStore.getUserAdminServiceTokenId()).thenReturn("uas");
+        return credentialStore;
+    }
+
+    private static InputStream usersJson(String... uids) {
+        StringBuilder json = new StringBuilder("{\"rows\":" + uids.length + ",\"result\":[");
+        for (int i = 0; i < uids.length; i++) {
+            json.append(i > 0 ? "," : "").append("{\"uid\":\"").append(uids[i]).append("\",\"username\":\"user").append(uids[i]).append("\"}");
+        }
+        return new ByteArrayInputStream(json.append("]}").toString().getBytes(Charsets.UTF_8));
+    }
+
+    private static String uids(UserSearchIndex.Hits hits) {
+        List<String> uids = new ArrayList<>();
+        for (IndexedUser user : hits.getUsers()) {
+            uids.add(user.getUid());
+        }
+        StringBuilder joined = new StringBuilder();
+        for (String uid : uids) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(uid);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package net.whydah.admin.users;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.assertEquals;
+
+public class UserSearchPageTest {
+    private static final String UIB_RESULT = "{\"rows\":4,\"result\":[" +
+            "{\"uid\":\"1\",\"roles\":[{\"roleName\":\"a\"}]},{\"uid\":\"2\"},{\"uid\":\"3\"},{\"uid\":\"4\"}]}";
+
+    @Test
+    public void middlePageHasNext() throws Exception {
+        assertEquals(page(UIB_RESULT, 1, 2),
+                "{\"offset\":1,\"limit\":2,\"result\":[{\"uid\":\"2\"},{\"uid\":\"3\"}],\"total\":4,\"next\":3}");
+    }
+
+    @Test
+    public void lastPageHasNoNext() throws Exception {
+        assertEquals(page(UIB_RESULT, 0, 4),
+                "{\"offset\":0,\"limit\":4,\"result\":[{\"uid\":\"1\",\"roles\":[{\"roleName\":\"a\"}]},{\"uid\":\"2\"},{\"uid\":\"3\"},{\"uid\":\"4\"}],\"total\":4}");
+    }
+
+    @Test
+    public void topLevelArrayAndEmptyResult() throws Exception {
+        assertEquals(page("[{\"uid\":\"1\"},{\"uid\":\"2\"}]", 5, 10),
+                "{\"offset\":5,\"limit\":10,\"result\":[],\"total\":2}");
+        assertEquals(page("", 0, 10),
+                "{\"offset\":0,\"limit\":10,\"result\":[],\"total\":0}");
+    }
+
+    private static String page(String uibResult, int offset, int limit) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new UserSearchPage(new ByteArrayInputStream(uibResult.getBytes(StandardCharsets.UTF_8)), offset, limit).write(output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,64 @@
+package net.whydah.admin.xml;
+
+import net.whydah.admin.application.Application;
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class DomainXmlWriterTest {
+
+    @Test
+    public void userXmlHasSameLayoutAsBefore() throws Exception {
+        UserIdentity identity = new UserIdentity("uid1", "jdoe", "John", "Doe", null, "jdoe@example.com", null, null);
+        List<UserPropertyAndRole> roles = new ArrayList<>();
+        roles.add(new UserPropertyAndRole("r1", "uid1", "app1", "Application One", "Org One", "member", "true"));
+        String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+                "<whydahuser>\n" +
+                "    <identity>\n" +
+                "        <username>jdoe</username>\n" +
+                "        <cellPhone></cellPhone>\n" +
+                "        <email>jdoe@example.com</email>\n" +
+                "        <firstname>John</firstname>\n" +
+                "        <lastname>Doe</lastname>\n" +
+                "        <personRef></personRef>\n" +
+                "        <UID>uid1</UID>\n" +
+                "    </identity>\n" +
+                "    <applications>\n" +
+                "        <application>\n" +
+                "            <appId>app1</appId>\n" +
+                "            <applicationName>Application One</applicationName>\n" +
+                "            <roleName>member</roleName>\n" +
+                "            <roleValue>true</roleValue>\n" +
+                "        </application>\n" +
+                "    </applications>\n" +
+                "</whydahuser>";
+        assertEquals(new UserAggregate(identity, roles).toXML(), expected);
+    }
+
+    @Test
+    public void valuesAreEscaped() throws Exception {
+        UserIdentity identity = new UserIdentity("uid1", "jdoe", "Tom & <Jerry>", "Doe", "ref1", "jdoe@example.com", "123", null);
+        UserAggregate userAggregate = new UserAggregate(identity, new ArrayList<UserPropertyAndRole>());
+        String xml = userAggregate.toXML();
+        assertTrue(xml.contains("<firstname>Tom &amp; &lt;Jerry&gt;</firstname>"), xml);
+        assertEquals(UserAggregate.fromXML(xml).getFirstName(), "Tom & <Jerry>");
+    }
+
+    @Test
+    public void streamingGivesSameDocumentAsToXml() throws Exception {
+        Application application = new Application("id1", "Bl\u00e5b\u00e6r", "defRoleid", "deforgid", Arrays.asList("aoi1", "aoi2"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DomainXmlWriter.streaming(application).write(output);
+        assertEquals(output.toString("UTF-8"), application.toXML());
+        assertEquals(Application.fromXml(application.toXML()).getAvailableOrgIds(), Arrays.asList("aoi1", "aoi2"));
+    }
+}
@@ -0,0 +1,155 @@
+package net.whydah.admin.xml;
+
+import net.whydah.admin.application.Application;
+import net.whydah.admin.auth.WhydahLogonToken;
+import net.whydah.admin.user.uib.RoleRepresentationRequest;
+import net.whydah.admin.user.uib.UserAggregate;
+import net.whydah.admin.user.uib.UserIdentity;
+import net.whydah.admin.user.uib.UserIdentityRequest;
+import net.whydah.admin.user.uib.UserPropertyAndRole;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+/**
+ * The StAX and DOM implementations of fromXml must give the same result.
+ */
+public class XmlParsingTest {
+
+    private static final String roleXml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+            "<application>\n" +
+            "    <appId>app1</appId>\n" +
+            "    <applicationName>Application One</applicationName>\n" +
+            "    <orgID>org1</orgID>\n" +
+            "    <orgName>Org One</orgName>\n" +
+            "    <roleName>member</roleName>\n" +
+            "    <roleValue>true</roleValue>\n" +
+            "</application>";
+
+    private static final String logonXml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+            "<applicationtoken>\n" +
+            "    <params>\n" +
+            "        <applicationtokenID>token1</applicationtokenID>\n" +
+            "        <applicationid>app1</applicationid>\n" +
+            "        <applicationname>UserAdminService</applicationname>\n" +
+            "        <expires>1420070400000</expires>\n" +
+            "    </params>\n" +
+            "</applicationtoken>";
+
+    private static final String identityXml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+            "<identity>\n" +
+            "    <username>jdoe</username>\n" +
+            "    <cellPhone>12345678</cellPhone>\n" +
+            "    <email>jdoe@example.com</email>\n" +
+            "    <firstname>John</firstname>\n" +
+            "    <lastname>Doe</lastname>\n" +
+            "    <personRef>ref1</personRef>\n" +
+            "</identity>";
+
+    @AfterMethod
+    public void resetMode() throws Exception {
+        XmlParsing.setMode(XmlParsing.Mode.STAX);
+    }
+
+    @Test
+    public void applicationIsEqual() throws Exception {
+        String xml = new Application("id1", "mockApp", "defRoleid", "deforgid", Arrays.asList("aoi1", "aoi2")).toXML();
+        Application stax = parse(XmlParsing.Mode.STAX, xml, Application.class);
+        Application dom = parse(XmlParsing.Mode.DOM, xml, Application.class);
+        assertNotNull(stax);
+        assertEquals(stax.getId(), dom.getId());
+        assertEquals(stax.getName(), dom.getName());
+        assertEquals(stax.getDefaultRole(), dom.getDefaultRole());
+        assertEquals(stax.getDefaultOrgid(), dom.getDefaultOrgid());
+        assertEquals(stax.getAvailableOrgIds(), dom.getAvailableOrgIds());
+        assertEquals(stax.getAvailableOrgIds().size(), 2);
+    }
+
+    @Test
+    public void userAggregateIsEqual() throws Exception {
+        UserIdentity identity = new UserIdentity("uid1", "jdoe", "John", "Doe", "ref1", "jdoe@example.com", "12345678", null);
+        List<UserPropertyAndRole> roles = new ArrayList<>();
+        roles.add(new UserPropertyAndRole("r1", "uid1", "app1", "Application One", "Org One", "member", "true"));
+        String xml = new UserAggregate(identity, roles).toXML();
+        UserAggregate stax = parse(XmlParsing.Mode.STAX, xml, UserAggregate.class);
+        UserAggregate dom = parse(XmlParsing.Mode.DOM, xml, UserAggregate.class);
+        assertNotNull(stax);
+        assertEquals(stax.getUid(), "uid1");
+        assertEquals(stax.getUid(), dom.getUid());
+        assertEquals(stax.getUsername(), dom.getUsername());
+        assertEquals(stax.getFirstName(), dom.getFirstName());
+        assertEquals(stax.getLastName(), dom.getLastName());
+        assertEquals(stax.getEmail(), dom.getEmail());
+        assertEquals(stax.getPersonRef(), dom.getPersonRef());
+    }
+
+    @Test
+    public void rolesAreEqual() throws Exception {
+        UserPropertyAndRole stax = parse(XmlParsing.Mode.STAX, roleXml, UserPropertyAndRole.class);
+        UserPropertyAndRole dom = parse(XmlParsing.Mode.DOM, roleXml, UserPropertyAndRole.class);
+        assertNotNull(stax);
+        assertEquals(stax.getId(), "app1");
+        assertEquals(stax.getId(), dom.getId());
+        assertEquals(stax.getApplicationName(), dom.getApplicationName());
+        assertEquals(stax.getApplicationRoleName(), dom.getApplicationRoleName());
+        assertEquals(stax.getApplicationRoleValue(), dom.getApplicationRoleValue());
+
+        RoleRepresentationRequest staxRequest = parse(XmlParsing.Mode.STAX, roleXml, RoleRepresentationRequest.class);
+        RoleRepresentationRequest domRequest = parse(XmlParsing.Mode.DOM, roleXml, RoleRepresentationRequest.class);
+        assertNotNull(staxRequest);
+        assertEquals(staxRequest.toJson(), domRequest.toJson());
+    }
+
+    @Test
+    public void identityRequestIsEqual() throws Exception {
+        UserIdentityRequest stax = parse(XmlParsing.Mode.STAX, identityXml, UserIdentityRequest.class);
+        UserIdentityRequest dom = parse(XmlParsing.Mode.DOM, identityXml, UserIdentityRequest.class);
+        assertNotNull(stax);
+        assertEquals(stax.getUsername(), "jdoe");
+        assertEquals(stax.toJson(), dom.toJson());
+    }
+
+    @Test
+    public void logonTokenIsEqual() throws Exception {
+        WhydahLogonToken stax = parse(XmlParsing.Mode.STAX, logonXml, WhydahLogonToken.class);
+        WhydahLogonToken dom = parse(XmlParsing.Mode.DOM, logonXml, WhydahLogonToken.class);
+        assertEquals(stax.getApplicationtokenID(), "token1");
+        assertEquals(stax.getApplicationtokenID(), dom.getApplicationtokenID());
+        assertEquals(stax.getApplicationid(), dom.getApplicationid());
+        assertEquals(stax.getApplicationname(), dom.getApplicationname());
+        assertEquals(stax.getExpires(), dom.getExpires());
+    }
+
+    @Test
+    public void missingElementIsEmpty() throws Exception {
+        StaxXmlDocument doc = StaxXmlDocument.parse(roleXml);
+        assertEquals(doc.evaluate("/application/missing"), "");
+        assertEquals(doc.evaluate("//roleName"), "member");
+        assertEquals(doc.evaluateAll("/application/missing").size(), 0);
+    }
+
+    private <T> T parse(XmlParsing.Mode mode, String xml, Class<T> type) {
+        XmlParsing.setMode(mode);
+        Object parsed;
+        if (type == Application.class) {
+            parsed = Application.fromXml(xml);
+        } else if (type == UserAggregate.class) {
+            parsed = UserAggregate.fromXML(xml);
+        } else if (type == UserPropertyAndRole.class) {
+            parsed = UserPropertyAndRole.fromXml(xml);
+        } else if (type == RoleRepresentationRequest.class) {
+            parsed = RoleRepresentationRequest.fromXml(xml);
+        } else if (type == UserIdentityRequest.class) {
+            parsed = UserIdentityRequest.fromXML(xml);
+        } else {
+            parsed = WhydahLogonToken.fromXml(xml);
+        }
+        return type.cast(parsed);
+    }
+}